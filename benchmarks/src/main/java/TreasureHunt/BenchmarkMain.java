@@ -0,0 +1,29 @@
+package TreasureHunt;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar. Accepts the usual JMH command line options, but writes the results as JSON to
+ * jmh-result.json unless a different result format or file is given, so runs from different releases can be compared.
+ */
+public class BenchmarkMain
+{
+    public static void main(String[] args) throws Exception
+    {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue())
+        {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue())
+        {
+            options.result("jmh-result.json");
+        }
+        new Runner(options.build()).run();
+    }
+}
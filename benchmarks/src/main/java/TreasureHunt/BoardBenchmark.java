@@ -0,0 +1,119 @@
+package TreasureHunt;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the GameButton grid and resetting it after a typical game of twenty guesses, as happens when the
+ * window opens and on every RESET. Runs in a headless AWT toolkit, so the grid is built into a JPanel with the same SpringLayout the
+ * GameScreen frame uses, followed by one layout pass. The grid panel built by GameScreen is compared against the
+ * earlier approach of giving every button its own pair of SpringLayout constraints. Clearing the BoardState is
+ * measured alongside.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class BoardBenchmark
+{
+    @Param({"10", "20"})
+    int boardSize;
+
+    GameButton[][] buttons;
+    BoardState board;
+
+    @Setup(Level.Trial)
+    public void Setup()
+    {
+        buttons = BuildGrid().buttons;
+        board = new BoardState(boardSize, boardSize);
+    }
+
+    /**
+     * A grid of buttons and the panel they were laid out in.
+     */
+    static class Grid
+    {
+        JPanel panel;
+        GameButton[][] buttons;
+    }
+
+    Grid BuildGrid()
+    {
+        Grid grid = new Grid();
+        SpringLayout layout = new SpringLayout();
+        grid.panel = new JPanel(layout);
+        grid.buttons = GameScreen.BuildGameButtonGrid(boardSize, boardSize, e -> { }, layout, grid.panel);
+        grid.panel.setSize(80 + boardSize * GameScreen.CELL_SIZE, 80 + boardSize * GameScreen.CELL_SIZE);
+        grid.panel.doLayout();
+        //Lay out the grid panel's buttons too, which the frame does as part of the same validation pass.
+        grid.panel.getComponent(0).doLayout();
+        return grid;
+    }
+
+    @Benchmark
+    public Grid BuildGameButtonGrid()
+    {
+        return BuildGrid();
+    }
+
+    /**
+     * The grid as it was built before the grid panel, with two SpringLayout constraints for every button.
+     */
+    @Benchmark
+    public JPanel BuildGameButtonGridWithSprings()
+    {
+        SpringLayout layout = new SpringLayout();
+        JPanel panel = new JPanel(layout);
+        for (int x = 0; x < boardSize; x++)
+        {
+            for (int y = 0; y < boardSize; y++)
+            {
+                GameButton button = new GameButton();
+                button.setPreferredSize(new Dimension(GameScreen.CELL_SIZE, GameScreen.CELL_SIZE));
+                layout.putConstraint(SpringLayout.WEST,button,40 + x * GameScreen.CELL_SIZE,SpringLayout.WEST,panel);
+                layout.putConstraint(SpringLayout.NORTH,button,40 + y * GameScreen.CELL_SIZE,SpringLayout.NORTH,panel);
+                panel.add(button);
+                button.Reset();
+            }
+        }
+        panel.setSize(80 + boardSize * GameScreen.CELL_SIZE, 80 + boardSize * GameScreen.CELL_SIZE);
+        panel.doLayout();
+        return panel;
+    }
+
+    @Benchmark
+    public GameButton[][] ResetButtonsToDefault()
+    {
+        PlayTwentyGuesses();
+        GameScreen.ResetButtons(buttons, board);
+        return buttons;
+    }
+
+    @Benchmark
+    public BoardState ClearBoardState()
+    {
+        PlayTwentyGuesses();
+        board.Clear();
+        return board;
+    }
+
+    /**
+     * Marks twenty cells along the diagonals as guessed, both on the board and on the buttons.
+     */
+    void PlayTwentyGuesses()
+    {
+        for (int i = 0; i < 20; i++)
+        {
+            int x = i % boardSize;
+            int y = (i / boardSize + i) % boardSize;
+            board.SetCell(x, y, CellState.COLD, i + 1);
+            buttons[x][y].ShowCell(CellState.COLD, Integer.toString(i + 1));
+        }
+    }
+}
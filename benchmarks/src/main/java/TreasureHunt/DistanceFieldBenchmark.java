@@ -0,0 +1,56 @@
+package TreasureHunt;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how quickly the distance measures of a whole board are filled in, comparing the DistanceField kernel with
+ * asking the metric for each cell in turn.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DistanceFieldBenchmark
+{
+    @Param({"20", "500"})
+    int boardSize;
+
+    @Param({"EUCLIDEAN", "CHEBYSHEV", "TOROIDAL"})
+    DistanceMetric metric;
+
+    long[] field;
+    int treasureX;
+    int treasureY;
+
+    @Setup(Level.Trial)
+    public void Setup()
+    {
+        field = new long[boardSize * boardSize];
+        treasureX = boardSize / 3;
+        treasureY = boardSize * 2 / 3;
+    }
+
+    @Benchmark
+    public long[] FillBoard()
+    {
+        DistanceField.Fill(metric, treasureX, treasureY, boardSize, boardSize, 0, 0, boardSize, boardSize, field);
+        return field;
+    }
+
+    @Benchmark
+    public long[] MeasureEachCell()
+    {
+        for (int x = 0; x < boardSize; x++)
+        {
+            for (int y = 0; y < boardSize; y++)
+            {
+                field[x * boardSize + y] = metric.Measure(treasureX, treasureY, x, y, boardSize, boardSize);
+            }
+        }
+        return field;
+    }
+}
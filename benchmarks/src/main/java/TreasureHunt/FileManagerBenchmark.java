@@ -0,0 +1,76 @@
+package TreasureHunt;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a save and a load of a game through the FileManager across a range of board sizes. Each board has one
+ * guess per row placed at random, which is roughly how a played game looks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class FileManagerBenchmark
+{
+    @Param({"10", "100", "1000"})
+    int boardSize;
+
+    FileManager file;
+    GameData game;
+    Path directory;
+    Path savePath;
+
+    @Setup(Level.Trial)
+    public void Setup() throws IOException
+    {
+        directory = Files.createTempDirectory("treasure-hunt-bench");
+        savePath = directory.resolve("GameSave.dat");
+        file = new FileManager();
+        file.saveFile = savePath.toString();
+
+        Random rand = new Random(42);
+        game = new GameData();
+        game.boardWidth = boardSize;
+        game.boardHeight = boardSize;
+        game.treasurePosition = new Dimension(rand.nextInt(boardSize), rand.nextInt(boardSize));
+        game.board = new BoardState(boardSize, boardSize);
+        for (int guess = 1; guess <= boardSize; guess++)
+        {
+            CellState state = rand.nextBoolean() ? CellState.HOT : CellState.COLD;
+            game.board.SetCell(rand.nextInt(boardSize), rand.nextInt(boardSize), state, guess);
+        }
+        game.guessNumber = boardSize + 1;
+        game.lastGuessDistance = 1;
+
+        //Writes the save once so the load benchmark has something to read.
+        file.WriteSnapshot(game);
+    }
+
+    @TearDown(Level.Trial)
+    public void TearDown() throws IOException
+    {
+        Files.deleteIfExists(savePath);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public void Save() throws IOException
+    {
+        file.WriteSnapshot(game);
+    }
+
+    @Benchmark
+    public GameData Load() throws IOException
+    {
+        return file.ReadDataFromFile(savePath);
+    }
+}
@@ -0,0 +1,72 @@
+package TreasureHunt;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how quickly the GameEngine evaluates guesses, both the distance calculation on its own and a full guess
+ * including the hot/cold verdict and win check, under each DistanceMetric. Guesses cycle through a fixed set of random
+ * cells. A depth above 1 plays on a 3D board of that many slices, with guesses spread through every slice.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class GuessBenchmark
+{
+    static final int GUESS_COUNT = 1024;
+
+    @Param({"10", "1000"})
+    int boardSize;
+
+    @Param({"EUCLIDEAN", "MANHATTAN", "CHEBYSHEV", "TOROIDAL"})
+    DistanceMetric metric;
+
+    @Param({"1", "50"})
+    int depth;
+
+    GameEngine engine;
+    int[] guessX = new int[GUESS_COUNT];
+    int[] guessY = new int[GUESS_COUNT];
+    long[] guessCell = new long[GUESS_COUNT];
+    int next = 0;
+
+    @Setup(Level.Trial)
+    public void Setup()
+    {
+        Random rand = new Random(42);
+        BoardShape shape = depth == 1 ? BoardShape.Plane(boardSize, boardSize)
+                : new BoardShape(boardSize, boardSize, depth);
+        engine = new GameEngine(shape, new SplittableRandom(42));
+        engine.setMetric(metric);
+        for (int i = 0; i < GUESS_COUNT; i++)
+        {
+            guessX[i] = rand.nextInt(boardSize);
+            guessY[i] = rand.nextInt(boardSize);
+            guessCell[i] = shape.Key(guessX[i], guessY[i]);
+            if (depth > 1)
+            {
+                guessCell[i] = shape.With(guessCell[i], 2, rand.nextInt(depth));
+            }
+        }
+    }
+
+    @Benchmark
+    public double CalculateDistanceToTarget()
+    {
+        int i = next++ & (GUESS_COUNT - 1);
+        return engine.CalculateDistanceToTarget(guessX[i], guessY[i]);
+    }
+
+    @Benchmark
+    public GuessResult MakeGuess()
+    {
+        int i = next++ & (GUESS_COUNT - 1);
+        return engine.MakeGuess(guessCell[i]);
+    }
+}
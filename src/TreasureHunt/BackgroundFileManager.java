@@ -0,0 +1,163 @@
+package TreasureHunt;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs saving and loading away from the Event Dispatch Thread. Each request is handed to a single background worker
+ * and a CompletableFuture is returned that completes with the result, or exceptionally with the cause of any failure
+ * or cancellation. A single worker is used rather than a thread per request so that saves and loads always reach the
+ * disk in the order they were requested.
+ */
+public class BackgroundFileManager
+{
+    GuessJournal journal;
+    ExecutorService worker = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "TreasureHunt file worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param journal The journal whose snapshot and records hold the saved game.
+     */
+    public BackgroundFileManager(GuessJournal journal)
+    {
+        this.journal = journal;
+    }
+
+    /**
+     * Saves a snapshot of the game in the background, folding the journal into it. The journal is marked at the
+     * moment of the call, so guesses recorded while the save waits for the worker are kept in the new journal.
+     *
+     * @param snapshot A copy of the game taken on the calling thread just before this call, which is not touched
+     *                 again by the caller.
+     * @param progress Told about progress and asked whether to carry on.
+     * @return A future that completes once the save is safely on disk.
+     */
+    public CompletableFuture<Void> SaveAsync(GameData snapshot, FileProgress progress)
+    {
+        long mark = journal.BeginSnapshot();
+        return CompletableFuture.runAsync(() -> {
+            long start = System.nanoTime();
+            try
+            {
+                journal.Compact(snapshot, mark, progress);
+                GameMetrics.INSTANCE.RecordSave(System.nanoTime() - start);
+            }
+            catch(Exception ex)
+            {
+                throw new CompletionException(ex);
+            }
+        }, worker);
+    }
+
+    /**
+     * Loads the saved game in the background from the snapshot and journal.
+     *
+     * @param progress Told about progress and asked whether to carry on.
+     * @return A future that completes with the loaded game.
+     */
+    public CompletableFuture<GameData> LoadAsync(FileProgress progress)
+    {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            try
+            {
+                GameData gameData = journal.Recover(progress);
+                GameMetrics.INSTANCE.RecordLoad(System.nanoTime() - start);
+                return gameData;
+            }
+            catch(Exception ex)
+            {
+                throw new CompletionException(ex);
+            }
+        }, worker);
+    }
+
+    /**
+     * Saves a snapshot of the game into a named slot of a save library in the background.
+     *
+     * @param library The library holding the slot.
+     * @param name The name of the slot.
+     * @param snapshot A copy of the game taken on the calling thread, which is not touched again by the caller.
+     * @return A future that completes once the slot and the library index are on disk.
+     */
+    public CompletableFuture<Void> SaveSlotAsync(SaveLibrary library, String name, GameData snapshot)
+    {
+        return CompletableFuture.runAsync(() -> {
+            long start = System.nanoTime();
+            try
+            {
+                library.Save(name, snapshot, FileProgress.NONE);
+                GameMetrics.INSTANCE.RecordSave(System.nanoTime() - start);
+            }
+            catch(Exception ex)
+            {
+                throw new CompletionException(ex);
+            }
+        }, worker);
+    }
+
+    /**
+     * Loads the game held in a named slot of a save library in the background.
+     *
+     * @param library The library holding the slot.
+     * @param name The name of the slot.
+     * @return A future that completes with the loaded game.
+     */
+    public CompletableFuture<GameData> LoadSlotAsync(SaveLibrary library, String name)
+    {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            try
+            {
+                GameData gameData = library.Load(name, FileProgress.NONE);
+                GameMetrics.INSTANCE.RecordLoad(System.nanoTime() - start);
+                return gameData;
+            }
+            catch(Exception ex)
+            {
+                throw new CompletionException(ex);
+            }
+        }, worker);
+    }
+
+    /**
+     * Records a finished game in the statistics store in the background.
+     */
+    public CompletableFuture<Void> RecordFinishedGameAsync(StatsStore stats, int boardWidth, int boardHeight,
+                                                           int guesses, long seed)
+    {
+        return CompletableFuture.runAsync(() -> {
+            try
+            {
+                stats.Record(boardWidth, boardHeight, guesses, seed);
+            }
+            catch(Exception ex)
+            {
+                throw new CompletionException(ex);
+            }
+        }, worker);
+    }
+
+    /**
+     * Waits for any queued saves to finish and then closes the journal.
+     */
+    public void Close()
+    {
+        worker.shutdown();
+        try
+        {
+            worker.awaitTermination(10, TimeUnit.SECONDS);
+            journal.Close();
+        }
+        catch(Exception ex)
+        {
+            System.out.println(ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package TreasureHunt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays large numbers of seeded games headlessly using the GameEngine, spreading the work across every available
+ * processor. Each game is played by picking cells in a random order until the treasure is found, which gives a
+ * baseline for how many guesses a game of a given board size takes. No Swing or AWT objects are created, so this
+ * can be run on machines without a display.
+ *
+ * The seed of game n is taken from position n of the SplitMix64 sequence starting at the base seed, and every random
+ * choice within the game is drawn from that seed. Each game therefore plays out the same way however the games are
+ * divided between threads, and any single game can be replayed from its seed.
+ */
+public class BatchSimulator
+{
+    int boardWidth;
+    int boardHeight;
+    long baseSeed;
+
+    /**
+     * @param boardWidth The number of cells along the X-axis of every simulated board.
+     * @param boardHeight The number of cells along the Y-axis of every simulated board.
+     * @param baseSeed The seed from which the seed of every game is derived.
+     */
+    public BatchSimulator(int boardWidth, int boardHeight, long baseSeed)
+    {
+        this.boardWidth = boardWidth;
+        this.boardHeight = boardHeight;
+        this.baseSeed = baseSeed;
+    }
+
+    /**
+     * Totals collected from a run of simulated games.
+     */
+    public static class Result
+    {
+        public long games = 0;
+        public long totalGuesses = 0;
+        public int fewestGuesses = Integer.MAX_VALUE;
+        public int mostGuesses = 0;
+
+        /**
+         * Adds the totals of another result into this one.
+         *
+         * @param other The result being merged in.
+         */
+        void Merge(Result other)
+        {
+            games += other.games;
+            totalGuesses += other.totalGuesses;
+            fewestGuesses = Math.min(fewestGuesses, other.fewestGuesses);
+            mostGuesses = Math.max(mostGuesses, other.mostGuesses);
+        }
+
+        public double AverageGuesses()
+        {
+            return games == 0 ? 0 : (double) totalGuesses / games;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "games=" + games + " average=" + AverageGuesses() + " fewest=" + fewestGuesses + " most=" + mostGuesses;
+        }
+    }
+
+    /**
+     * Plays the requested number of games split evenly over one worker per available processor and merges the
+     * results once every worker has finished.
+     *
+     * @param games The total number of games to play.
+     * @return The combined totals of every game played.
+     */
+    public Result Run(long games) throws Exception
+    {
+        int workers = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try
+        {
+            List<Future<Result>> futures = new ArrayList<>();
+            long perWorker = games / workers;
+            long first = 0;
+            for (int i = 0; i < workers; i++)
+            {
+                long start = first;
+                long count = (i == workers - 1) ? games - first : perWorker;
+                futures.add(executor.submit(() -> PlayGames(start, count)));
+                first += count;
+            }
+
+            Result total = new Result();
+            for (Future<Result> future : futures)
+            {
+                total.Merge(future.get());
+            }
+            return total;
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Plays a consecutive range of games on the calling thread. The engine, which places each game's treasures in
+     * the index it already holds, and the array of remaining cells are created once and reused for every game, and
+     * random values come from mixing a counter, so the loop does not allocate.
+     *
+     * @param firstGame The index of the first game, used to derive its seed.
+     * @param count The number of games to play.
+     * @return The totals for this range of games.
+     */
+    Result PlayGames(long firstGame, long count)
+    {
+        Result result = new Result();
+        GameEngine engine = new GameEngine(boardWidth, boardHeight, new SplittableRandom(baseSeed));
+        int cellCount = boardWidth * boardHeight;
+        int[] cells = new int[cellCount];
+
+        for (long game = firstGame; game < firstGame + count; game++)
+        {
+            long gameSeed = GameSeed(baseSeed, game);
+            engine.StartGame(gameSeed);
+            long state = gameSeed;
+            for (int i = 0; i < cellCount; i++)
+            {
+                cells[i] = i;
+            }
+
+            //Pick unguessed cells at random by shuffling the remaining cells one step at a time.
+            int guesses = 0;
+            for (int remaining = cellCount; remaining > 0; remaining--)
+            {
+                state += GameEngine.GOLDEN_GAMMA;
+                int pick = (int) ((GameEngine.Mix64(state) >>> 1) % remaining);
+                int cell = cells[pick];
+                cells[pick] = cells[remaining - 1];
+                guesses++;
+                if (engine.MakeGuess(cell % boardWidth, cell / boardWidth) == GuessResult.TREASURE)
+                {
+                    break;
+                }
+            }
+
+            result.games++;
+            result.totalGuesses += guesses;
+            result.fewestGuesses = Math.min(result.fewestGuesses, guesses);
+            result.mostGuesses = Math.max(result.mostGuesses, guesses);
+        }
+        return result;
+    }
+
+    /**
+     * @return The seed of the given game within a batch, so that a game reported from a batch can be replayed.
+     */
+    public static long GameSeed(long baseSeed, long game)
+    {
+        return GameEngine.Mix64(baseSeed + (game + 1) * GameEngine.GOLDEN_GAMMA);
+    }
+}
@@ -0,0 +1,50 @@
+package TreasureHunt;
+
+/**
+ * A single change to a game as published on a BoardEventStream. Events are copied out of the stream into an instance
+ * owned by each reader, which is reused for every event the reader sees, so reading events never allocates. Handlers
+ * must copy out anything they want to keep.
+ */
+public class BoardEvent
+{
+    //Event kinds.
+    //The first game of a window or server session started. x and y hold the board size.
+    public static final byte START = 1;
+    //The current game was replaced by a new one. x and y hold the board size.
+    public static final byte RESET = 2;
+    //A guess was made at x, y and given the result.
+    public static final byte GUESS = 3;
+    //The guess at x, y found the last hidden treasure.
+    public static final byte WIN = 4;
+    //A saved game was loaded. x and y hold the board size and guess the number of the next guess.
+    public static final byte LOAD = 5;
+    //The current game was restarted from its seed to replay its recorded guesses, which are published again as
+    //guesses but do not start a new game. x and y hold the board size.
+    public static final byte REPLAY = 6;
+
+    static final String[] KIND_NAMES = { "?", "START", "RESET", "GUESS", "WIN", "LOAD", "REPLAY" };
+
+    //Position of the event in its stream.
+    public long sequence;
+    public byte kind;
+    //Identifies the game, the seed in the game window and the session id on the server.
+    public long game;
+    public int x;
+    public int y;
+    public int guess;
+    //GuessResult ordinal for GUESS events, otherwise 0.
+    public byte result;
+    //System.nanoTime() when the event was published.
+    public long time;
+
+    /**
+     * @return The event as a single line of text, as sent to watchers of the GameServer.
+     */
+    @Override
+    public String toString()
+    {
+        String name = kind > 0 && kind < KIND_NAMES.length ? KIND_NAMES[kind] : KIND_NAMES[0];
+        String text = "EVENT " + sequence + " " + name + " " + game + " " + x + " " + y + " " + guess;
+        return kind == GUESS ? text + " " + GuessResult.values()[result] : text;
+    }
+}
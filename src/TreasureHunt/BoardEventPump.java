@@ -0,0 +1,85 @@
+package TreasureHunt;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives consumers of BoardEventStreams from a single background thread, so observers that do not have a thread of
+ * their own, such as the metrics recorder, never run on the thread publishing the events. Each consumer has its own
+ * reader and so goes at its own pace. While there is nothing to read the thread backs off, parking for a little longer
+ * each time up to a millisecond, so an idle game costs next to nothing.
+ */
+public class BoardEventPump
+{
+    //Most events handed to one consumer before moving on to the next.
+    static final int BATCH = 256;
+    static final long MAX_PARK_NANOS = 1000000;
+
+    CopyOnWriteArrayList<Consumer> consumers = new CopyOnWriteArrayList<>();
+    volatile boolean running = true;
+    Thread thread;
+
+    static class Consumer
+    {
+        BoardEventStream.Reader reader;
+        BoardEventStream.Handler handler;
+    }
+
+    public BoardEventPump()
+    {
+        thread = new Thread(this::Run, "TreasureHunt event pump");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Hands every event published on the stream from now on to the handler, on the pump's thread.
+     */
+    public void Subscribe(BoardEventStream stream, BoardEventStream.Handler handler)
+    {
+        Consumer consumer = new Consumer();
+        consumer.reader = stream.NewReader();
+        consumer.handler = handler;
+        consumers.add(consumer);
+    }
+
+    private void Run()
+    {
+        long park = 0;
+        while (running)
+        {
+            int handled = 0;
+            for (Consumer consumer : consumers)
+            {
+                try
+                {
+                    handled += consumer.reader.Poll(consumer.handler, BATCH);
+                }
+                catch(Exception ex)
+                {
+                    System.out.println(ex.getMessage());
+                }
+                if (consumer.reader.IsDrained())
+                {
+                    consumers.remove(consumer);
+                }
+            }
+            if (handled > 0)
+            {
+                park = 0;
+                continue;
+            }
+            park = Math.min(MAX_PARK_NANOS, Math.max(1000, park * 2));
+            LockSupport.parkNanos(this, park);
+        }
+    }
+
+    /**
+     * Stops the pump. Events not yet handed over are dropped.
+     */
+    public void Close()
+    {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+}
@@ -0,0 +1,221 @@
+package TreasureHunt;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A ring buffer of BoardEvents written by a single thread and read by any number of Readers, each at its own pace.
+ * Every entry is allocated up front as a set of primitive arrays, one per event field, so publishing never allocates
+ * and never takes a lock.
+ *
+ * The writer never waits for readers, which keeps the Event Dispatch Thread or a server connection from being held up
+ * by a slow observer. A reader that falls a whole ring behind has been lapped: it skips forward to the oldest event
+ * still held and counts the events it missed. Each entry records the sequence of the event it holds, cleared while the
+ * writer replaces it, and a reader checks it before and after copying the entry out, so an entry overwritten part way
+ * through being read is noticed and counted as missed rather than handed on torn.
+ *
+ * Only one thread may publish at a time. A stream may be handed from one thread to another as long as the hand over
+ * happens before the next publish, such as under a lock.
+ */
+public class BoardEventStream
+{
+    static final int DEFAULT_CAPACITY = 4096;
+    static final VarHandle SEQUENCES = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /**
+     * Told about each event a Reader polls. The event is reused for the next one once the call returns.
+     */
+    public interface Handler
+    {
+        void OnEvent(BoardEvent event);
+    }
+
+    int capacity;
+    int mask;
+    byte[] kinds;
+    byte[] results;
+    long[] games;
+    int[] xs;
+    int[] ys;
+    int[] guesses;
+    long[] times;
+    //Sequence of the event each entry holds, or -1 while the writer is replacing it.
+    long[] sequences;
+
+    //Sequence the next event will be given. Only touched by the writer.
+    long next = 0;
+    //Sequence of the next event to be published, as seen by readers.
+    AtomicLong cursor = new AtomicLong(0);
+    //Set once the writer will publish nothing more, so readers can drop the stream once they have read it all.
+    volatile boolean closed = false;
+
+    public BoardEventStream()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity The number of events held, rounded up to a power of two.
+     */
+    public BoardEventStream(int capacity)
+    {
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        mask = this.capacity - 1;
+        kinds = new byte[this.capacity];
+        results = new byte[this.capacity];
+        games = new long[this.capacity];
+        xs = new int[this.capacity];
+        ys = new int[this.capacity];
+        guesses = new int[this.capacity];
+        times = new long[this.capacity];
+        sequences = new long[this.capacity];
+        Arrays.fill(sequences, -1);
+    }
+
+    /**
+     * Publishes an event. Must only be called by the stream's writer.
+     *
+     * @param kind One of the BoardEvent kinds.
+     * @param game Identifies the game.
+     * @param result The verdict of a guess, or null.
+     */
+    public void Publish(byte kind, long game, int x, int y, int guess, GuessResult result)
+    {
+        long sequence = next;
+        int slot = (int) sequence & mask;
+        //Readers seeing -1 know the entry is being replaced. The fence keeps the field writes after it.
+        SEQUENCES.setOpaque(sequences, slot, -1L);
+        VarHandle.storeStoreFence();
+        kinds[slot] = kind;
+        results[slot] = result == null ? 0 : (byte) result.ordinal();
+        games[slot] = game;
+        xs[slot] = x;
+        ys[slot] = y;
+        guesses[slot] = guess;
+        times[slot] = System.nanoTime();
+        SEQUENCES.setRelease(sequences, slot, sequence);
+        next = sequence + 1;
+        cursor.setRelease(sequence + 1);
+    }
+
+    /**
+     * Marks the stream as finished. Must only be called by the stream's writer.
+     */
+    public void Close()
+    {
+        closed = true;
+    }
+
+    /**
+     * @return A reader that starts with the next event published.
+     */
+    public Reader NewReader()
+    {
+        return new Reader(cursor.getAcquire());
+    }
+
+    /**
+     * @return A reader that starts with the oldest event still held.
+     */
+    public Reader NewReaderFromOldest()
+    {
+        return new Reader(Math.max(0, cursor.getAcquire() - capacity + 1));
+    }
+
+    public boolean IsClosed()
+    {
+        return closed;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Reads the events of the stream in order. A reader belongs to a single consuming thread.
+     */
+    public class Reader
+    {
+        //Sequence of the next event to read.
+        long position;
+        long missed = 0;
+        BoardEvent event = new BoardEvent();
+
+        Reader(long position)
+        {
+            this.position = position;
+        }
+
+        /**
+         * Hands the events published since the last poll to the handler, up to the given number.
+         *
+         * @param handler Told about each event in turn.
+         * @param limit The most events to hand over in this call.
+         * @return The number of events handed over.
+         */
+        public int Poll(Handler handler, int limit)
+        {
+            int count = 0;
+            long available = cursor.getAcquire();
+            while (position < available && count < limit)
+            {
+                int slot = (int) position & mask;
+                if ((long) SEQUENCES.getAcquire(sequences, slot) == position)
+                {
+                    event.kind = kinds[slot];
+                    event.result = results[slot];
+                    event.game = games[slot];
+                    event.x = xs[slot];
+                    event.y = ys[slot];
+                    event.guess = guesses[slot];
+                    event.time = times[slot];
+                    //The copy only counts if the entry still holds the same event once it has been taken.
+                    VarHandle.loadLoadFence();
+                    if ((long) SEQUENCES.getAcquire(sequences, slot) == position)
+                    {
+                        event.sequence = position;
+                        position++;
+                        count++;
+                        handler.OnEvent(event);
+                        continue;
+                    }
+                }
+                //Lapped by the writer. The entry at the cursor's slot may be being replaced, so the oldest event
+                //that can still be read is the one after it.
+                available = cursor.getAcquire();
+                long oldest = available - capacity + 1;
+                if (position < oldest)
+                {
+                    missed += oldest - position;
+                    position = oldest;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * @return true if the writer has finished and every event has been read.
+         */
+        public boolean IsDrained()
+        {
+            return closed && position >= cursor.getAcquire();
+        }
+
+        /**
+         * @return The number of events this reader was lapped past and never saw.
+         */
+        public long getMissed() {
+            return missed;
+        }
+
+        public long getPosition() {
+            return position;
+        }
+
+        public BoardEventStream getStream() {
+            return BoardEventStream.this;
+        }
+    }
+}
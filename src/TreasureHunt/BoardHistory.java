@@ -0,0 +1,209 @@
+package TreasureHunt;
+
+import java.util.Arrays;
+
+/**
+ * Every step of the current game, kept so guesses can be undone and redone and the board scrubbed back and forth
+ * along a timeline. Each step holds a PersistentCellMap of the board along with the engine counters at that point.
+ * As a step shares everything but the changed cell with the step before it, recording a guess costs a few small
+ * nodes and moving between steps costs time in proportion to the number of cells that differ.
+ *
+ * The memory held by the history is estimated from the nodes each step allocated. Once the estimate passes the budget
+ * the oldest steps are dropped, so the earliest part of a long game can no longer be reached. The budget is set in
+ * megabytes with the treasurehunt.history.budgetMB system property.
+ */
+public class BoardHistory
+{
+    static final long DEFAULT_BUDGET_MB = 16;
+    //Rough heap cost of a step apart from the trie nodes it allocated.
+    static final int STEP_BYTES = 64;
+
+    //Steps held in a ring, oldest first starting at firstStep.
+    PersistentCellMap[] boards = new PersistentCellMap[64];
+    int[] guessNumbers = new int[64];
+    double[] lastGuessDistances = new double[64];
+    long[] stepBytes = new long[64];
+    int firstStep = 0;
+    int stepCount = 0;
+    //Position of the step currently shown on the board, from 0 for the oldest step held.
+    int current = -1;
+    long usedBytes = 0;
+    long budgetBytes;
+
+    public BoardHistory()
+    {
+        this(Long.getLong("treasurehunt.history.budgetMB", DEFAULT_BUDGET_MB) * 1024 * 1024);
+    }
+
+    /**
+     * @param budgetBytes The estimated number of bytes the history may hold before the oldest steps are dropped.
+     */
+    public BoardHistory(long budgetBytes)
+    {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Forgets every step and starts again from the given board, such as a newly started or loaded game.
+     *
+     * @param board The board the history starts from.
+     * @param guessNumber The number the engine will give to the next guess.
+     * @param lastGuessDistance The distance of the most recent guess from the treasure.
+     */
+    public void Start(BoardState board, int guessNumber, double lastGuessDistance)
+    {
+        Arrays.fill(boards, null);
+        firstStep = 0;
+        stepCount = 0;
+        current = -1;
+        usedBytes = 0;
+
+        PersistentCellMap start = PersistentCellMap.EMPTY;
+        long bytes = STEP_BYTES;
+        for (long key : board.TouchedCells())
+        {
+            start = start.Put(key, board.GetPackedAt(key));
+            bytes += start.getAllocatedBytes();
+        }
+        Append(start, guessNumber, lastGuessDistance, bytes);
+    }
+
+    /**
+     * Records a cell changed by a guess as a new step. Any steps that had been undone are dropped.
+     *
+     * @param key The key of the changed cell.
+     * @param value The new value of the cell, in the encoding used by the BoardState.
+     * @param guessNumber The number the engine will give to the next guess.
+     * @param lastGuessDistance The distance of this guess from the treasure.
+     */
+    public void Record(long key, int value, int guessNumber, double lastGuessDistance)
+    {
+        //Drop the redo steps.
+        while (stepCount > current + 1)
+        {
+            int slot = Slot(stepCount - 1);
+            usedBytes -= stepBytes[slot];
+            boards[slot] = null;
+            stepCount--;
+        }
+        PersistentCellMap next = boards[Slot(current)].Put(key, value);
+        Append(next, guessNumber, lastGuessDistance, STEP_BYTES + next.getAllocatedBytes());
+        EvictOverBudget();
+    }
+
+    private void Append(PersistentCellMap board, int guessNumber, double lastGuessDistance, long bytes)
+    {
+        if (stepCount == boards.length)
+        {
+            Grow();
+        }
+        int slot = Slot(stepCount);
+        boards[slot] = board;
+        guessNumbers[slot] = guessNumber;
+        lastGuessDistances[slot] = lastGuessDistance;
+        stepBytes[slot] = bytes;
+        usedBytes += bytes;
+        stepCount++;
+        current = stepCount - 1;
+    }
+
+    /**
+     * Drops the oldest steps until the history fits its budget, always keeping the step currently shown.
+     */
+    private void EvictOverBudget()
+    {
+        while (usedBytes > budgetBytes && current > 0)
+        {
+            usedBytes -= stepBytes[firstStep];
+            boards[firstStep] = null;
+            firstStep = (firstStep + 1) % boards.length;
+            stepCount--;
+            current--;
+        }
+    }
+
+    private void Grow()
+    {
+        int length = boards.length;
+        PersistentCellMap[] newBoards = new PersistentCellMap[length * 2];
+        int[] newGuessNumbers = new int[length * 2];
+        double[] newDistances = new double[length * 2];
+        long[] newBytes = new long[length * 2];
+        for (int i = 0; i < stepCount; i++)
+        {
+            int slot = Slot(i);
+            newBoards[i] = boards[slot];
+            newGuessNumbers[i] = guessNumbers[slot];
+            newDistances[i] = lastGuessDistances[slot];
+            newBytes[i] = stepBytes[slot];
+        }
+        boards = newBoards;
+        guessNumbers = newGuessNumbers;
+        lastGuessDistances = newDistances;
+        stepBytes = newBytes;
+        firstStep = 0;
+    }
+
+    private int Slot(int step)
+    {
+        return (firstStep + step) % boards.length;
+    }
+
+    /**
+     * Moves to another step, bringing the board into line with it. Only the cells that differ between the current
+     * step and the target are written to the board.
+     *
+     * @param step The step to move to, from 0 for the oldest step held.
+     * @param board The board to update, which must show the current step.
+     * @return The keys of the cells that changed on the board.
+     */
+    public long[] MoveTo(int step, BoardState board)
+    {
+        if (step < 0 || step >= stepCount)
+        {
+            throw new IndexOutOfBoundsException("No history step " + step);
+        }
+        long[][] changed = { new long[16] };
+        int[] changedCount = { 0 };
+        boards[Slot(current)].Diff(boards[Slot(step)], (key, value) -> {
+            board.SetCellAt(key, (byte) (value & 3), value >>> 2);
+            if (changedCount[0] == changed[0].length)
+            {
+                changed[0] = Arrays.copyOf(changed[0], changedCount[0] * 2);
+            }
+            changed[0][changedCount[0]++] = key;
+        });
+        current = step;
+        return Arrays.copyOf(changed[0], changedCount[0]);
+    }
+
+    public boolean CanUndo()
+    {
+        return current > 0;
+    }
+
+    public boolean CanRedo()
+    {
+        return current < stepCount - 1;
+    }
+
+    public int getCurrentStep() {
+        return current;
+    }
+
+    public int getStepCount() {
+        return stepCount;
+    }
+
+    public int getGuessNumber() {
+        return guessNumbers[Slot(current)];
+    }
+
+    public double getLastGuessDistance() {
+        return lastGuessDistances[Slot(current)];
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+}
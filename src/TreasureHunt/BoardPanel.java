@@ -0,0 +1,248 @@
+package TreasureHunt;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+/**
+ * A single custom painted component that draws the whole game board, used in place of the GameButton grid for large
+ * boards. Only the cells inside the visible clip area are painted, and mouse clicks are turned back into cell
+ * coordinates, so the cost of the board no longer grows with the number of cells. It is intended to be placed inside
+ * a JScrollPane which provides the scrollable viewport.
+ *
+ * A heat map can be laid over the untouched cells, tinting each by its distance from the treasure. The distances of
+ * the cells in the clip area are filled in by the GameEngine in one pass before any cell is painted.
+ *
+ * A board with more than two axes is drawn one slice at a time, the slice the BoardState is currently showing.
+ */
+public class BoardPanel extends JComponent implements Scrollable
+{
+    BoardState board;
+    int boardWidth;
+    int boardHeight;
+    int cellSize;
+    //Game whose distances the heat map overlay shows, null while the heat map is hidden.
+    GameEngine heatEngine;
+    long heatMaxMeasure;
+    //Reused between paints, grown when a larger clip area is painted.
+    long[] heatField = new long[0];
+
+    /**
+     * Creates a board panel that draws the given board and forwards clicks on cells to the given listener.
+     *
+     * @param board The board state being drawn, shared with the GameScreen.
+     * @param cellSize The height and width in pixels of each cell.
+     * @param listener The listener told about each cell the player clicks.
+     */
+    public BoardPanel(BoardState board, int cellSize, CellClickListener listener)
+    {
+        this.board = board;
+        this.boardWidth = board.getBoardWidth();
+        this.boardHeight = board.getBoardHeight();
+        this.cellSize = cellSize;
+
+        setOpaque(true);
+        setFont(new Font("Arial", Font.PLAIN, 11));
+        setPreferredSize(new Dimension(boardWidth * cellSize, boardHeight * cellSize));
+
+        //Hit-tests each click against the cell grid and passes the cell coordinates on.
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                int x = e.getX() / cellSize;
+                int y = e.getY() / cellSize;
+                if (x >= 0 && x < boardWidth && y >= 0 && y < boardHeight)
+                {
+                    listener.CellClicked(x, y);
+                }
+            }
+        });
+    }
+
+    /**
+     * Repaints just the area of a single cell after its state has changed.
+     *
+     * @param x The X coordinate of the cell.
+     * @param y The Y coordinate of the cell.
+     */
+    public void RepaintCell(int x, int y)
+    {
+        repaint(x * cellSize, y * cellSize, cellSize, cellSize);
+    }
+
+    /**
+     * Shows the heat map of the distances to the nearest hidden treasure over the untouched cells. Must be called
+     * again whenever the treasures change.
+     *
+     * @param engine The game whose treasures are shown.
+     */
+    public void SetHeatMap(GameEngine engine)
+    {
+        heatEngine = engine;
+        heatMaxMeasure = engine.HeatMapMaxMeasure(board.getSlice());
+        repaint();
+    }
+
+    /**
+     * Hides the heat map.
+     */
+    public void ClearHeatMap()
+    {
+        if (heatEngine != null)
+        {
+            heatEngine = null;
+            repaint();
+        }
+    }
+
+    /**
+     * Repaints the area covering a set of cells with a single repaint request. Cells on other slices than the one
+     * shown are left out.
+     *
+     * @param keys The board keys of the cells that changed.
+     */
+    public void RepaintCells(long[] keys)
+    {
+        BoardShape shape = board.getShape();
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = -1, maxY = -1;
+        for (long key : keys)
+        {
+            if (shape.SliceOf(key) != board.getSlice())
+            {
+                continue;
+            }
+            int x = shape.XOf(key);
+            int y = shape.YOf(key);
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+        if (maxX < 0)
+        {
+            return;
+        }
+        repaint(minX * cellSize, minY * cellSize, (maxX - minX + 1) * cellSize, (maxY - minY + 1) * cellSize);
+    }
+
+    /**
+     * Paints only the cells that fall inside the current clip area.
+     */
+    @Override
+    protected void paintComponent(Graphics g)
+    {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null)
+        {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        int firstX = Math.max(0, clip.x / cellSize);
+        int firstY = Math.max(0, clip.y / cellSize);
+        int lastX = Math.min(boardWidth - 1, (clip.x + clip.width) / cellSize);
+        int lastY = Math.min(boardHeight - 1, (clip.y + clip.height) / cellSize);
+
+        int columns = lastX - firstX + 1;
+        int rows = lastY - firstY + 1;
+        if (heatEngine != null && columns > 0 && rows > 0)
+        {
+            if (heatField.length < columns * rows)
+            {
+                heatField = new long[columns * rows];
+            }
+            heatEngine.FillDistanceField(board.getSlice(), firstX, firstY, columns, rows, heatField);
+        }
+
+        FontMetrics metrics = g.getFontMetrics();
+        for (int y = firstY; y <= lastY; y++)
+        {
+            for (int x = firstX; x <= lastX; x++)
+            {
+                int left = x * cellSize;
+                int top = y * cellSize;
+
+                CellState state = board.GetState(x, y);
+                if (heatEngine != null && state == CellState.UNTOUCHED)
+                {
+                    g.setColor(HeatColour(heatField[(x - firstX) * rows + (y - firstY)], heatMaxMeasure));
+                }
+                else
+                {
+                    g.setColor(ColourForState(state));
+                }
+                g.fillRect(left, top, cellSize, cellSize);
+                g.setColor(Color.gray);
+                g.drawRect(left, top, cellSize - 1, cellSize - 1);
+
+                String text = board.GetCellText(x, y);
+                if (!text.isEmpty())
+                {
+                    g.setColor(Color.black);
+                    int textX = left + (cellSize - metrics.stringWidth(text)) / 2;
+                    int textY = top + (cellSize + metrics.getAscent() - metrics.getDescent()) / 2;
+                    g.drawString(text, textX, textY);
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts a cell state into the same colours used by the GameButton grid.
+     */
+    static Color ColourForState(CellState state)
+    {
+        if (state == CellState.HOT)
+        {
+            return Color.red;
+        }
+        else if (state == CellState.COLD)
+        {
+            return Color.cyan;
+        }
+        else if (state == CellState.TREASURE)
+        {
+            return Color.yellow;
+        }
+        return Color.white;
+    }
+
+    /**
+     * Tints an untouched cell by its distance from the treasure, from deep pink on the treasure to white at the far
+     * corner, staying pale enough for guessed cells to stand out.
+     *
+     * @param measure The distance measure of the cell.
+     * @param maxMeasure The largest distance measure on the board.
+     */
+    static Color HeatColour(long measure, long maxMeasure)
+    {
+        int shade = (int) (180 - Math.min(measure, maxMeasure) * 180 / Math.max(1, maxMeasure));
+        return new Color(255, 255 - shade, 255 - shade);
+    }
+
+    //Scrollable implementation so the viewport scrolls a whole cell per unit and a screen per block.
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return cellSize;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        int visible = orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+        return Math.max(cellSize, visible - cellSize);
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return false;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+}
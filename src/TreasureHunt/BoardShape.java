@@ -0,0 +1,318 @@
+package TreasureHunt;
+
+import java.util.Arrays;
+
+/**
+ * The size of a board along each of its axes. X and Y are always the first two axes, and a board may have further
+ * axes after them, so a 3D board is a stack of 2D boards and the game window shows it one 2D slice at a time.
+ *
+ * Every cell of a board is addressed by a single long with its coordinates packed into bit fields, X highest. A 2D
+ * board gives each axis 32 bits, which is exactly the key BoardState.Key has always made, so 2D saves, journals and
+ * histories read the same as before. Boards with more axes give each axis only the bits its size needs, and must fit
+ * in 63 bits altogether. Packing and unpacking are a shift and a mask, so nothing that works with cells allocates.
+ */
+public class BoardShape
+{
+    //The most axes a board may have. Saves record the number of axes after Y in four bits of the header flags.
+    public static final int MAX_DIMENSIONS = 2 + 15;
+
+    int[] sizes;
+    //Position of the lowest bit of each axis within a cell.
+    int[] shifts;
+    //Largest coordinate each axis can hold, before shifting.
+    long[] masks;
+    //Bits holding the X and Y coordinates of a cell, so the rest hold the slice it lies in.
+    long planeMask;
+    //Bits holding any coordinate at all.
+    long usedMask;
+
+    /**
+     * @param sizes The number of cells along each axis, X and Y first.
+     */
+    public BoardShape(int... sizes)
+    {
+        if (sizes.length < 2 || sizes.length > MAX_DIMENSIONS)
+        {
+            throw new IllegalArgumentException("A board has between 2 and " + MAX_DIMENSIONS + " axes");
+        }
+        this.sizes = sizes.clone();
+        shifts = new int[sizes.length];
+        masks = new long[sizes.length];
+        int shift = 0;
+        for (int axis = sizes.length - 1; axis >= 0; axis--)
+        {
+            if (sizes[axis] < 1)
+            {
+                throw new IllegalArgumentException("Every axis of a board needs at least one cell");
+            }
+            int bits = sizes.length == 2 ? 32 : Math.max(1, 32 - Integer.numberOfLeadingZeros(sizes[axis] - 1));
+            shifts[axis] = shift;
+            masks[axis] = (1L << bits) - 1;
+            shift += bits;
+        }
+        if (shift > 64 || (sizes.length > 2 && shift > 63))
+        {
+            throw new IllegalArgumentException("A board of " + this + " cells is too large to address");
+        }
+        planeMask = (masks[0] << shifts[0]) | (masks[1] << shifts[1]);
+        for (int axis = 0; axis < sizes.length; axis++)
+        {
+            usedMask |= masks[axis] << shifts[axis];
+        }
+    }
+
+    /**
+     * @return The shape of a flat board, as every board was before boards could have more axes.
+     */
+    public static BoardShape Plane(int boardWidth, int boardHeight)
+    {
+        return new BoardShape(boardWidth, boardHeight);
+    }
+
+    /**
+     * @return The shape of a saved game. Games without a shape are flat.
+     */
+    public static BoardShape Of(GameData gameData)
+    {
+        return gameData.shape != null ? gameData.shape : Plane(gameData.boardWidth, gameData.boardHeight);
+    }
+
+    /**
+     * Reads a shape written as the size of each axis separated by x, such as 10x10x5.
+     */
+    public static BoardShape Parse(String text)
+    {
+        String[] parts = text.trim().toLowerCase().split("x");
+        int[] sizes = new int[parts.length];
+        for (int axis = 0; axis < parts.length; axis++)
+        {
+            sizes[axis] = Integer.parseInt(parts[axis].trim());
+        }
+        return new BoardShape(sizes);
+    }
+
+    /**
+     * @return The cell with the given coordinates, X and Y first.
+     */
+    public long Pack(int[] coordinates)
+    {
+        long cell = 0;
+        for (int axis = 0; axis < sizes.length; axis++)
+        {
+            cell = With(cell, axis, coordinates[axis]);
+        }
+        return cell;
+    }
+
+    /**
+     * @return The cell at X and Y on the first slice of the board.
+     */
+    public long Key(int x, int y)
+    {
+        return ((long) x << shifts[0]) | ((long) y << shifts[1]);
+    }
+
+    /**
+     * @return The coordinate of a cell along the given axis.
+     */
+    public int Coordinate(long cell, int axis)
+    {
+        return (int) ((cell >>> shifts[axis]) & masks[axis]);
+    }
+
+    /**
+     * @return The cell with its coordinate along the given axis replaced.
+     */
+    public long With(long cell, int axis, int coordinate)
+    {
+        return (cell & ~(masks[axis] << shifts[axis])) | (((long) coordinate & masks[axis]) << shifts[axis]);
+    }
+
+    public int XOf(long cell)
+    {
+        return Coordinate(cell, 0);
+    }
+
+    public int YOf(long cell)
+    {
+        return Coordinate(cell, 1);
+    }
+
+    /**
+     * @return The slice a cell lies in: the cell with its X and Y coordinates cleared.
+     */
+    public long SliceOf(long cell)
+    {
+        return cell & ~planeMask;
+    }
+
+    /**
+     * @return true if every coordinate of the cell lies on the board.
+     */
+    public boolean Contains(long cell)
+    {
+        for (int axis = 0; axis < sizes.length; axis++)
+        {
+            int coordinate = Coordinate(cell, axis);
+            if (coordinate < 0 || coordinate >= sizes[axis])
+            {
+                return false;
+            }
+        }
+        return (cell & ~usedMask) == 0;
+    }
+
+    /**
+     * @return The number of 2D slices the board is made of, 1 for a flat board.
+     */
+    public long SliceCount()
+    {
+        long count = 1;
+        for (int axis = 2; axis < sizes.length; axis++)
+        {
+            count *= sizes[axis];
+        }
+        return count;
+    }
+
+    /**
+     * @return The slice with the given index, counting through the axes after Y with the last axis fastest.
+     */
+    public long SliceAt(long index)
+    {
+        long slice = 0;
+        for (int axis = sizes.length - 1; axis >= 2; axis--)
+        {
+            slice = With(slice, axis, (int) (index % sizes[axis]));
+            index /= sizes[axis];
+        }
+        return slice;
+    }
+
+    /**
+     * @return The index of the slice a cell lies in, the reverse of SliceAt.
+     */
+    public long SliceIndex(long cell)
+    {
+        long index = 0;
+        for (int axis = 2; axis < sizes.length; axis++)
+        {
+            index = index * sizes[axis] + Coordinate(cell, axis);
+        }
+        return index;
+    }
+
+    /**
+     * @return The number of cells on the board.
+     */
+    public long Volume()
+    {
+        return (long) sizes[0] * sizes[1] * SliceCount();
+    }
+
+    /**
+     * Measures the distance between two cells along every axis, combining the axis terms the way the metric combines
+     * the X and Y terms. On a flat board this is the same as DistanceMetric.Measure.
+     *
+     * @return The exact integer measure of the distance, smaller for closer cells.
+     */
+    public long Measure(DistanceMetric metric, long first, long second)
+    {
+        long measure = metric.AxisTerm(Coordinate(first, 0) - Coordinate(second, 0), sizes[0]);
+        for (int axis = 1; axis < sizes.length; axis++)
+        {
+            measure = metric.Combine(measure, metric.AxisTerm(Coordinate(first, axis) - Coordinate(second, axis),
+                    sizes[axis]));
+        }
+        return measure;
+    }
+
+    /**
+     * @return The largest measure between any two cells of the board, the length of its diagonal under the metric.
+     */
+    public long FarthestMeasure(DistanceMetric metric)
+    {
+        long measure = metric.FarthestAxisTerm(sizes[0]);
+        for (int axis = 1; axis < sizes.length; axis++)
+        {
+            measure = metric.Combine(measure, metric.FarthestAxisTerm(sizes[axis]));
+        }
+        return measure;
+    }
+
+    /**
+     * The part of the measure between two cells contributed by the axes after Y, which is the same for every cell of
+     * a slice. Combining it with the X and Y measure gives the full measure.
+     */
+    public long SliceTerm(DistanceMetric metric, long first, long second)
+    {
+        long measure = 0;
+        for (int axis = 2; axis < sizes.length; axis++)
+        {
+            measure = metric.Combine(measure, metric.AxisTerm(Coordinate(first, axis) - Coordinate(second, axis),
+                    sizes[axis]));
+        }
+        return measure;
+    }
+
+    /**
+     * @return The coordinates of a cell written as they are shown to the player, such as (3, 4, 1).
+     */
+    public String Describe(long cell)
+    {
+        StringBuilder text = new StringBuilder("(");
+        for (int axis = 0; axis < sizes.length; axis++)
+        {
+            text.append(axis == 0 ? "" : ", ").append(Coordinate(cell, axis));
+        }
+        return text.append(')').toString();
+    }
+
+    public boolean IsFlat()
+    {
+        return sizes.length == 2;
+    }
+
+    //Default Getters.
+    public int getDimensions() {
+        return sizes.length;
+    }
+
+    public int getSize(int axis) {
+        return sizes[axis];
+    }
+
+    public int getWidth() {
+        return sizes[0];
+    }
+
+    public int getHeight() {
+        return sizes[1];
+    }
+
+    @Override
+    public boolean equals(Object other)
+    {
+        return other instanceof BoardShape && Arrays.equals(sizes, ((BoardShape) other).sizes);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Arrays.hashCode(sizes);
+    }
+
+    /**
+     * @return The size of each axis separated by x, as Parse reads it.
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder text = new StringBuilder();
+        for (int axis = 0; axis < sizes.length; axis++)
+        {
+            text.append(axis == 0 ? "" : "x").append(sizes[axis]);
+        }
+        return text.toString();
+    }
+}
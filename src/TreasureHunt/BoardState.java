@@ -0,0 +1,257 @@
+package TreasureHunt;
+
+import java.util.Arrays;
+
+/**
+ * Sparse representation of the cells on the board, shared by the GameScreen, GameData and FileManager. Only cells
+ * that have been touched are stored, in a CellMap keyed by the cell's X and Y coordinates packed into a long, so a
+ * 100000 x 100000 board costs no more than a 10 x 10 one until the player starts guessing. The value stored for each
+ * cell holds the ordinal of its CellState in the low two bits and the guess number shown on it above them.
+ *
+ * Memory use and the cost of clearing, copying and saving the board all depend on the number of guesses made rather
+ * than on the size of the board.
+ *
+ * A board with more than two axes keys its cells by their packed BoardShape cell instead. The methods taking X and Y
+ * then address the slice the board is currently showing, so the game window and the BoardPanel draw one slice at a
+ * time without knowing how many axes there are.
+ */
+public class BoardState
+{
+    BoardShape shape;
+    int boardWidth;
+    int boardHeight;
+    //The slice the X and Y methods address, 0 on a flat board.
+    long slice = 0;
+    //Touched cells, packed as (guess << 2) | state.
+    CellMap cells = new CellMap();
+
+    /**
+     * Creates an empty board with every cell untouched.
+     *
+     * @param boardWidth The number of cells along the X-axis.
+     * @param boardHeight The number of cells along the Y-axis.
+     */
+    public BoardState(int boardWidth, int boardHeight)
+    {
+        this(BoardShape.Plane(boardWidth, boardHeight));
+    }
+
+    /**
+     * Creates an empty board of any number of axes with every cell untouched.
+     *
+     * @param shape The size of the board along each axis.
+     */
+    public BoardState(BoardShape shape)
+    {
+        this.shape = shape;
+        this.boardWidth = shape.getWidth();
+        this.boardHeight = shape.getHeight();
+    }
+
+    /**
+     * @return The key of the given cell, its X coordinate in the high half and its Y coordinate in the low half.
+     */
+    public static long Key(int x, int y)
+    {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    public static int XFromKey(long key)
+    {
+        return (int) (key >>> 32);
+    }
+
+    public static int YFromKey(long key)
+    {
+        return (int) key;
+    }
+
+    /**
+     * @return The key of the cell at X and Y on the slice being shown.
+     */
+    public long KeyOf(int x, int y)
+    {
+        return shape.Key(x, y) | slice;
+    }
+
+    public CellState GetState(int x, int y)
+    {
+        return CellState.FromByte(GetStateAt(KeyOf(x, y)));
+    }
+
+    /**
+     * @return The ordinal of the CellState of the cell with the given key.
+     */
+    public byte GetStateAt(long key)
+    {
+        return (byte) (cells.Get(key, 0) & 3);
+    }
+
+    public int GetGuess(int x, int y)
+    {
+        return GetGuessAt(KeyOf(x, y));
+    }
+
+    public int GetGuessAt(long key)
+    {
+        return cells.Get(key, 0) >>> 2;
+    }
+
+    /**
+     * @return The cell with the given key packed as (guess << 2) | state, 0 for an untouched cell.
+     */
+    public int GetPackedAt(long key)
+    {
+        return cells.Get(key, 0);
+    }
+
+    /**
+     * Sets the state and guess number of a single cell.
+     *
+     * @param x The X coordinate of the cell.
+     * @param y The Y coordinate of the cell.
+     * @param state The new state of the cell.
+     * @param guess The guess number shown on the cell, 0 for none.
+     */
+    public void SetCell(int x, int y, CellState state, int guess)
+    {
+        SetCellAt(KeyOf(x, y), (byte) state.ordinal(), guess);
+    }
+
+    /**
+     * Sets the state and guess number of the cell with the given key. Setting a cell back to untouched removes it.
+     *
+     * @param key The key of the cell.
+     * @param state The ordinal of the new CellState.
+     * @param guess The guess number shown on the cell, 0 for none.
+     */
+    void SetCellAt(long key, byte state, int guess)
+    {
+        if (state == 0)
+        {
+            cells.Remove(key);
+            return;
+        }
+        cells.Put(key, (guess << 2) | state);
+    }
+
+    /**
+     * Returns every touched cell to untouched.
+     */
+    public void Clear()
+    {
+        cells.Clear();
+    }
+
+    /**
+     * Replaces the cells of this board with those of another board of the same size, visiting only the cells touched
+     * on either board.
+     *
+     * @param other The board being copied from.
+     * @return The keys of every cell whose state or guess number changed.
+     */
+    public long[] CopyFrom(BoardState other)
+    {
+        long[] mine = cells.Keys();
+        long[] theirs = other.cells.Keys();
+        long[] changed = new long[mine.length + theirs.length];
+        int changedCount = 0;
+
+        //Cells touched here but not on the other board go back to untouched.
+        for (long key : mine)
+        {
+            if (!other.cells.ContainsKey(key))
+            {
+                cells.Remove(key);
+                changed[changedCount++] = key;
+            }
+        }
+        //Cells touched on the other board are copied over when they differ.
+        for (long key : theirs)
+        {
+            int value = other.cells.Get(key, 0);
+            if (cells.Get(key, 0) != value)
+            {
+                cells.Put(key, value);
+                changed[changedCount++] = key;
+            }
+        }
+        return Arrays.copyOf(changed, changedCount);
+    }
+
+    /**
+     * @return The number of cells touched since the board was last cleared.
+     */
+    public int getTouchedCount()
+    {
+        return cells.Size();
+    }
+
+    /**
+     * @return An estimate of the memory held by the touched cells, in bytes.
+     */
+    public long getAllocatedBytes()
+    {
+        return cells.getAllocatedBytes();
+    }
+
+    /**
+     * @return The keys of every cell touched since the board was last cleared, in no particular order.
+     */
+    public long[] TouchedCells()
+    {
+        return cells.Keys();
+    }
+
+    /**
+     * @return An independent copy of this board, used to take a snapshot of the game for saving.
+     */
+    public BoardState Copy()
+    {
+        BoardState copy = new BoardState(shape);
+        copy.slice = slice;
+        copy.cells = cells.Copy();
+        return copy;
+    }
+
+    /**
+     * @return The text shown on a cell: its guess number, a dollar sign ($) for the treasure or nothing if untouched.
+     */
+    public String GetCellText(int x, int y)
+    {
+        int value = cells.Get(KeyOf(x, y), 0);
+        int state = value & 3;
+        if (state == CellState.TREASURE.ordinal())
+        {
+            return "$";
+        }
+        return state == CellState.UNTOUCHED.ordinal() ? "" : Integer.toString(value >>> 2);
+    }
+
+    /**
+     * Chooses the slice the X and Y methods address.
+     *
+     * @param slice A cell of the slice, as made by BoardShape.SliceAt. Its X and Y coordinates are ignored.
+     */
+    public void setSlice(long slice)
+    {
+        this.slice = shape.SliceOf(slice);
+    }
+
+    //Default Getters.
+    public long getSlice() {
+        return slice;
+    }
+
+    public BoardShape getShape() {
+        return shape;
+    }
+
+    public int getBoardWidth() {
+        return boardWidth;
+    }
+
+    public int getBoardHeight() {
+        return boardHeight;
+    }
+}
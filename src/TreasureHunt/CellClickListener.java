@@ -0,0 +1,9 @@
+package TreasureHunt;
+
+/**
+ * Receives the board coordinates of a cell the player has clicked on a BoardPanel.
+ */
+public interface CellClickListener
+{
+    void CellClicked(int x, int y);
+}
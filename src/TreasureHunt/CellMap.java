@@ -0,0 +1,257 @@
+package TreasureHunt;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from long keys to int values, used by the BoardState to hold only the cells that have been
+ * touched. Keys and values live in two primitive arrays probed linearly, so nothing is boxed and looking up a cell is
+ * a multiply, a shift and usually a single array read. Removal shifts the following entries back into the gap rather
+ * than leaving markers behind, so the map never slows down however many cells are removed.
+ *
+ * A key of 0 marks an empty slot, so an entry with the key 0 is held to one side.
+ */
+public class CellMap
+{
+    static final int DEFAULT_CAPACITY = 16;
+    //Capacity above which clearing the map hands back fresh arrays rather than emptying the large ones.
+    static final int SHRINK_CAPACITY = 1024;
+
+    long[] keys;
+    int[] values;
+    int size = 0;
+    //Number of bits of the spread hash used to pick a slot, so that capacity is 1 << (64 - shift).
+    int shift;
+    boolean hasZeroKey = false;
+    int zeroValue;
+
+    public CellMap()
+    {
+        Allocate(DEFAULT_CAPACITY);
+    }
+
+    private void Allocate(int capacity)
+    {
+        keys = new long[capacity];
+        values = new int[capacity];
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    /**
+     * Fibonacci hashing, which spreads keys that differ only in their low bits, such as neighbouring cells, across the
+     * whole table.
+     */
+    private int Slot(long key)
+    {
+        return (int) ((key * GameEngine.GOLDEN_GAMMA) >>> shift);
+    }
+
+    /**
+     * @return The value stored for the key, or the given default if there is none.
+     */
+    public int Get(long key, int missing)
+    {
+        if (key == 0)
+        {
+            return hasZeroKey ? zeroValue : missing;
+        }
+        int mask = keys.length - 1;
+        for (int slot = Slot(key); ; slot = (slot + 1) & mask)
+        {
+            long stored = keys[slot];
+            if (stored == key)
+            {
+                return values[slot];
+            }
+            if (stored == 0)
+            {
+                return missing;
+            }
+        }
+    }
+
+    public boolean ContainsKey(long key)
+    {
+        if (key == 0)
+        {
+            return hasZeroKey;
+        }
+        int mask = keys.length - 1;
+        for (int slot = Slot(key); keys[slot] != 0; slot = (slot + 1) & mask)
+        {
+            if (keys[slot] == key)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stores a value for the key, replacing any value already stored. The table doubles once it is half full.
+     */
+    public void Put(long key, int value)
+    {
+        if (key == 0)
+        {
+            if (!hasZeroKey)
+            {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return;
+        }
+        int mask = keys.length - 1;
+        int slot = Slot(key);
+        while (keys[slot] != 0)
+        {
+            if (keys[slot] == key)
+            {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if (size * 2 > keys.length)
+        {
+            Resize(keys.length * 2);
+        }
+    }
+
+    /**
+     * Removes the key if it is present, moving back any entries that had probed past its slot.
+     *
+     * @return true if the key was present.
+     */
+    public boolean Remove(long key)
+    {
+        if (key == 0)
+        {
+            if (!hasZeroKey)
+            {
+                return false;
+            }
+            hasZeroKey = false;
+            size--;
+            return true;
+        }
+        int mask = keys.length - 1;
+        int slot = Slot(key);
+        while (keys[slot] != key)
+        {
+            if (keys[slot] == 0)
+            {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        //Walk the run after the gap, moving back every entry whose home slot is not between the gap and itself.
+        int gap = slot;
+        for (int next = (gap + 1) & mask; keys[next] != 0; next = (next + 1) & mask)
+        {
+            int home = Slot(keys[next]);
+            if (((next - home) & mask) >= ((next - gap) & mask))
+            {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+        }
+        keys[gap] = 0;
+        size--;
+        return true;
+    }
+
+    private void Resize(int capacity)
+    {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        Allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            long key = oldKeys[i];
+            if (key != 0)
+            {
+                int slot = Slot(key);
+                while (keys[slot] != 0)
+                {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Removes every entry. The cost depends on the capacity the map grew to, which is at most four times the number of
+     * entries it held, and a map that grew large is given fresh small arrays.
+     */
+    public void Clear()
+    {
+        if (keys.length > SHRINK_CAPACITY)
+        {
+            Allocate(DEFAULT_CAPACITY);
+        }
+        else
+        {
+            Arrays.fill(keys, 0);
+        }
+        size = 0;
+        hasZeroKey = false;
+    }
+
+    public int Size()
+    {
+        return size;
+    }
+
+    /**
+     * @return The memory held by the key and value arrays, in bytes.
+     */
+    public long getAllocatedBytes()
+    {
+        return keys.length * 12L;
+    }
+
+    /**
+     * @return Every key in the map, in no particular order.
+     */
+    public long[] Keys()
+    {
+        long[] result = new long[size];
+        int count = 0;
+        if (hasZeroKey)
+        {
+            result[count++] = 0;
+        }
+        for (long key : keys)
+        {
+            if (key != 0)
+            {
+                result[count++] = key;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return An independent copy of the map.
+     */
+    public CellMap Copy()
+    {
+        CellMap copy = new CellMap();
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        copy.size = size;
+        copy.shift = shift;
+        copy.hasZeroKey = hasZeroKey;
+        copy.zeroValue = zeroValue;
+        return copy;
+    }
+}
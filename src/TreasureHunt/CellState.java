@@ -0,0 +1,40 @@
+package TreasureHunt;
+
+/**
+ * The state of a single cell of the board. The ordinal of each value is what is stored in the BoardState cell array
+ * and in save files, so new values must only ever be added at the end.
+ */
+public enum CellState
+{
+    UNTOUCHED,
+    HOT,
+    COLD,
+    TREASURE;
+
+    //Cached copy of values() so converting a stored byte back does not allocate.
+    static final CellState[] VALUES = values();
+
+    /**
+     * @return The state a cell is left in after a guess with the given result.
+     */
+    public static CellState FromResult(GuessResult result)
+    {
+        if (result == GuessResult.HOTTER)
+        {
+            return HOT;
+        }
+        else if (result == GuessResult.COLDER)
+        {
+            return COLD;
+        }
+        return TREASURE;
+    }
+
+    /**
+     * @return The state stored as the given byte.
+     */
+    public static CellState FromByte(byte value)
+    {
+        return VALUES[value];
+    }
+}
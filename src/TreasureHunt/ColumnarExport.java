@@ -0,0 +1,357 @@
+package TreasureHunt;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes games out column by column for analytics, one file for each column of fixed width little endian values, so
+ * a scan reads only the columns it needs and can map them straight into memory. There are two tables:
+ *
+ * games, one row for each game: game.width, game.height, game.treasure.x and game.treasure.y as ints, game.guesses
+ * as an int and game.won as a byte, plus game.source.txt holding the file each game came from, one line each.
+ *
+ * guesses, one row for each guess in the order they were made: guess.game, the row of its game, guess.number, guess.x
+ * and guess.y as ints, guess.distance as a float, the distance to the nearest treasure still hidden when the guess
+ * was made, and guess.outcome as a byte, the CellState ordinal the guess left on its cell.
+ *
+ * An export is made of parts, each a directory written by one thread, so threads never share a file. A manifest in
+ * each part records its row counts once the part is closed, and parts without one are skipped when scanning.
+ */
+public class ColumnarExport
+{
+    static final String MANIFEST = "manifest.txt";
+    static final String PART_PREFIX = "part-";
+    //Bytes buffered for each column before it is written.
+    static final int COLUMN_BUFFER = 64 * 1024;
+    //Every file a part is made of.
+    static final String[] PART_FILES = {MANIFEST, "game.width", "game.height", "game.treasure.x", "game.treasure.y",
+            "game.guesses", "game.won", "game.source.txt", "guess.game", "guess.number", "guess.x", "guess.y",
+            "guess.distance", "guess.outcome"};
+
+    Path directory;
+    long games = 0;
+    long guesses = 0;
+
+    Column gameWidth;
+    Column gameHeight;
+    Column gameTreasureX;
+    Column gameTreasureY;
+    Column gameGuesses;
+    Column gameWon;
+    Writer gameSource;
+
+    Column guessGame;
+    Column guessNumber;
+    Column guessX;
+    Column guessY;
+    Column guessDistance;
+    Column guessOutcome;
+
+    /**
+     * One column file, written through a buffer.
+     */
+    static class Column
+    {
+        FileChannel channel;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(COLUMN_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+
+        Column(Path path) throws IOException
+        {
+            channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void PutInt(int value) throws IOException
+        {
+            Reserve(4);
+            buffer.putInt(value);
+        }
+
+        void PutFloat(float value) throws IOException
+        {
+            Reserve(4);
+            buffer.putFloat(value);
+        }
+
+        void PutByte(byte value) throws IOException
+        {
+            Reserve(1);
+            buffer.put(value);
+        }
+
+        private void Reserve(int bytes) throws IOException
+        {
+            if (buffer.remaining() < bytes)
+            {
+                Flush();
+            }
+        }
+
+        void Flush() throws IOException
+        {
+            buffer.flip();
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void Close() throws IOException
+        {
+            Flush();
+            channel.close();
+        }
+    }
+
+    /**
+     * Starts a new part of an export.
+     *
+     * @param exportDirectory The directory of the whole export.
+     * @param part The number of the part, unique within the export.
+     */
+    public ColumnarExport(Path exportDirectory, int part) throws IOException
+    {
+        directory = exportDirectory.resolve(PART_PREFIX + part);
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve(MANIFEST));
+        gameWidth = new Column(directory.resolve("game.width"));
+        gameHeight = new Column(directory.resolve("game.height"));
+        gameTreasureX = new Column(directory.resolve("game.treasure.x"));
+        gameTreasureY = new Column(directory.resolve("game.treasure.y"));
+        gameGuesses = new Column(directory.resolve("game.guesses"));
+        gameWon = new Column(directory.resolve("game.won"));
+        gameSource = Files.newBufferedWriter(directory.resolve("game.source.txt"), StandardCharsets.UTF_8);
+        guessGame = new Column(directory.resolve("guess.game"));
+        guessNumber = new Column(directory.resolve("guess.number"));
+        guessX = new Column(directory.resolve("guess.x"));
+        guessY = new Column(directory.resolve("guess.y"));
+        guessDistance = new Column(directory.resolve("guess.distance"));
+        guessOutcome = new Column(directory.resolve("guess.outcome"));
+    }
+
+    /**
+     * Adds a game and each of its guesses. The guesses are replayed in order against the game's treasures, so every
+     * distance is the one the player was shown, even once some treasures of a game with several had been found.
+     *
+     * @param gameData The game to add.
+     * @param source Where the game came from, recorded alongside it.
+     */
+    public void Add(GameData gameData, String source) throws IOException
+    {
+        int game = (int) games;
+        BoardState board = gameData.board;
+        BoardShape shape = board.getShape();
+        DistanceMetric metric = gameData.metric;
+        GuessRecording recording = GuessRecording.FromBoard(board);
+
+        //A game with a single treasure, which is every CSV save, needs no index to measure against.
+        TreasureIndex treasures = gameData.treasures == null ? null : gameData.treasures.Copy();
+        if (treasures != null)
+        {
+            for (int id = 0; id < treasures.getCount(); id++)
+            {
+                treasures.Restore(id);
+            }
+        }
+        int treasureX = gameData.treasurePosition.width;
+        int treasureY = gameData.treasurePosition.height;
+
+        boolean won = false;
+        for (int i = 0; i < recording.getCount(); i++)
+        {
+            long cell = recording.getCell(i);
+            int x = shape.XOf(cell);
+            int y = shape.YOf(cell);
+            byte outcome = board.GetStateAt(cell);
+            double distance;
+            if (treasures == null)
+            {
+                distance = metric.Distance(x, y, treasureX, treasureY, gameData.boardWidth, gameData.boardHeight);
+                won |= outcome == CellState.TREASURE.ordinal();
+            }
+            else
+            {
+                long measure = treasures.NearestMeasure(cell, metric);
+                distance = measure == Long.MAX_VALUE ? Double.NaN : metric.DistanceOfMeasure(measure);
+                int found = treasures.FindAt(cell);
+                if (found >= 0)
+                {
+                    treasures.Remove(found);
+                }
+                won = treasures.getRemaining() == 0;
+            }
+            guessGame.PutInt(game);
+            guessNumber.PutInt(board.GetGuessAt(cell));
+            guessX.PutInt(x);
+            guessY.PutInt(y);
+            guessDistance.PutFloat((float) distance);
+            guessOutcome.PutByte(outcome);
+        }
+        guesses += recording.getCount();
+
+        gameWidth.PutInt(gameData.boardWidth);
+        gameHeight.PutInt(gameData.boardHeight);
+        gameTreasureX.PutInt(treasureX);
+        gameTreasureY.PutInt(treasureY);
+        gameGuesses.PutInt(recording.getCount());
+        gameWon.PutByte((byte) (won ? 1 : 0));
+        gameSource.write(source.replace('\n', ' '));
+        gameSource.write('\n');
+        games++;
+    }
+
+    /**
+     * Writes out everything buffered and then the manifest, which marks the part as complete.
+     */
+    public void Close() throws IOException
+    {
+        for (Column column : new Column[] {gameWidth, gameHeight, gameTreasureX, gameTreasureY, gameGuesses, gameWon,
+                guessGame, guessNumber, guessX, guessY, guessDistance, guessOutcome})
+        {
+            column.Close();
+        }
+        gameSource.close();
+        Files.writeString(directory.resolve(MANIFEST), "games=" + games + "\nguesses=" + guesses + "\n");
+    }
+
+    //Default Getters.
+    public long getGames() {
+        return games;
+    }
+
+    public long getGuesses() {
+        return guesses;
+    }
+
+    /**
+     * Removes the parts left in an export directory by an earlier export, so a new export made by fewer threads is
+     * not scanned along with them. Only the files a part is made of are deleted, and a part directory holding
+     * anything else is left in place.
+     *
+     * @param exportDirectory The directory of the whole export, which need not exist.
+     */
+    public static void Clear(Path exportDirectory) throws IOException
+    {
+        if (!Files.isDirectory(exportDirectory))
+        {
+            return;
+        }
+        try (DirectoryStream<Path> parts = Files.newDirectoryStream(exportDirectory, PART_PREFIX + "*"))
+        {
+            for (Path part : parts)
+            {
+                if (!Files.isDirectory(part))
+                {
+                    continue;
+                }
+                //The manifest goes first, so a part that cannot be removed entirely is at least no longer scanned.
+                for (String file : PART_FILES)
+                {
+                    Files.deleteIfExists(part.resolve(file));
+                }
+                try
+                {
+                    Files.delete(part);
+                }
+                catch(DirectoryNotEmptyException ex)
+                {
+                    System.out.println("Left " + part + " in place as it holds other files");
+                }
+            }
+        }
+    }
+
+    /**
+     * Totals over every complete part of an export, worked out by mapping just the columns needed.
+     */
+    public static class Summary
+    {
+        long parts = 0;
+        long games = 0;
+        long won = 0;
+        long guesses = 0;
+        long wonGuesses = 0;
+        long hot = 0;
+        double distanceTotal = 0;
+
+        @Override
+        public String toString()
+        {
+            return "parts=" + parts + " games=" + games + " won=" + won + " guesses=" + guesses
+                    + " guessesPerWin=" + (won == 0 ? 0 : String.format("%.2f", (double) wonGuesses / won))
+                    + " hot=" + (guesses == 0 ? 0 : String.format("%.3f", (double) hot / guesses))
+                    + " meanDistance=" + (guesses == 0 ? 0 : String.format("%.3f", distanceTotal / guesses));
+        }
+    }
+
+    /**
+     * Scans an export, reading the game outcome and guess count columns and the guess outcome and distance columns.
+     *
+     * @param exportDirectory The directory of the whole export.
+     * @return The totals over every complete part.
+     */
+    public static Summary Scan(Path exportDirectory) throws IOException
+    {
+        Summary summary = new Summary();
+        try (DirectoryStream<Path> parts = Files.newDirectoryStream(exportDirectory, PART_PREFIX + "*"))
+        {
+            for (Path part : parts)
+            {
+                if (Files.exists(part.resolve(MANIFEST)))
+                {
+                    ScanPart(part, summary);
+                }
+            }
+        }
+        return summary;
+    }
+
+    private static void ScanPart(Path part, Summary summary) throws IOException
+    {
+        summary.parts++;
+        ByteBuffer won = Map(part.resolve("game.won"));
+        ByteBuffer gameGuesses = Map(part.resolve("game.guesses"));
+        int games = won.limit();
+        for (int game = 0; game < games; game++)
+        {
+            if (won.get(game) != 0)
+            {
+                summary.won++;
+                summary.wonGuesses += gameGuesses.getInt(game * 4);
+            }
+        }
+        summary.games += games;
+
+        ByteBuffer outcome = Map(part.resolve("guess.outcome"));
+        ByteBuffer distance = Map(part.resolve("guess.distance"));
+        int guesses = outcome.limit();
+        byte hot = (byte) CellState.HOT.ordinal();
+        for (int guess = 0; guess < guesses; guess++)
+        {
+            summary.hot += outcome.get(guess) == hot ? 1 : 0;
+            float value = distance.getFloat(guess * 4);
+            summary.distanceTotal += Float.isNaN(value) ? 0 : value;
+        }
+        summary.guesses += guesses;
+    }
+
+    private static ByteBuffer Map(Path column) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(column, StandardOpenOption.READ))
+        {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+}
@@ -165,4 +165,102 @@ public class ComponentBuilder
         frame.add(myNewTextField);
         return myNewTextField;
     }
+
+    /**
+     * This method takes the parameters given within the method call to generate a JPanel that lays out its children
+     * in a fixed grid of equal cells, filled a row at a time from the top left, and locates the panel using a
+     * SpringLayout. It is intended for building many components at once, such as the board of game buttons: only the
+     * panel itself takes SpringLayout constraints, and the grid is laid out in a single cheap pass however many
+     * components are added to it, rather than the SpringLayout solving two springs for every component.
+     *
+     * @param columns   the number of cells along each row of the grid
+     * @param rows      the number of rows in the grid
+     * @param cellWidth the width in pixels of each cell
+     * @param cellHeight the height in pixels of each cell
+     * @param xPos      the distance in pixels from the top left corner along the X-axis of the container
+     * @param yPos      the distance in pixels from the top left corner along the Y-axis of the container
+     * @param layout    the SpringLayout component used for positioning the panel
+     * @param container the container the panel is being added to which is also acting as the reference for the positioning.
+     *
+     * @return          the empty panel is returned to the caller, ready for components to be added in row order.
+     */
+    public static JPanel CreateAGridPanel(int columns, int rows, int cellWidth, int cellHeight, int xPos, int yPos,
+                                          SpringLayout layout, Container container)
+    {
+        JPanel myNewPanel = new JPanel(new GridLayout(rows, columns, 0, 0));
+        myNewPanel.setPreferredSize(new Dimension(columns * cellWidth, rows * cellHeight));
+        layout.putConstraint(SpringLayout.WEST,myNewPanel,xPos,SpringLayout.WEST,container);
+        layout.putConstraint(SpringLayout.NORTH,myNewPanel,yPos,SpringLayout.NORTH,container);
+        container.add(myNewPanel);
+        return myNewPanel;
+    }
+
+    /**
+     * This method takes the parameters given within the method call to generate a JPanel with no layout manager, in
+     * which components are placed at fixed positions with the CreateAButton and PlaceAComponent variations that take
+     * a panel, and locates the panel using a SpringLayout. Laying out the panel costs nothing, as every component
+     * already has its final bounds.
+     *
+     * @param width     the width of the panel in pixels
+     * @param height    the height of the panel in pixels
+     * @param xPos      the distance in pixels from the top left corner along the X-axis of the container
+     * @param yPos      the distance in pixels from the top left corner along the Y-axis of the container
+     * @param layout    the SpringLayout component used for positioning the panel
+     * @param container the container the panel is being added to which is also acting as the reference for the positioning.
+     *
+     * @return          the empty panel is returned to the caller.
+     */
+    public static JPanel CreateAnAbsolutePanel(int width, int height, int xPos, int yPos, SpringLayout layout,
+                                               Container container)
+    {
+        JPanel myNewPanel = new JPanel(null);
+        myNewPanel.setPreferredSize(new Dimension(width, height));
+        layout.putConstraint(SpringLayout.WEST,myNewPanel,xPos,SpringLayout.WEST,container);
+        layout.putConstraint(SpringLayout.NORTH,myNewPanel,yPos,SpringLayout.NORTH,container);
+        container.add(myNewPanel);
+        return myNewPanel;
+    }
+
+    /**
+     * This method takes the parameters given within the method call to generate a JButton and place it at a fixed
+     * position inside a panel made by CreateAnAbsolutePanel. No layout constraints are created.
+     *
+     * @param text      the text to be written on the button
+     * @param width     the desired width of the button in units
+     * @param height    the desired height of the button in units
+     * @param xPos      the distance in pixels from the top left corner of the panel along the X-axis
+     * @param yPos      the distance in pixels from the top left corner of the panel along the Y-axis
+     * @param listener  the ActionListener that the button sends messages to when pressed.
+     * @param panel     the panel with no layout manager the button is being added to.
+     *
+     * @return          the completed button is returned to the caller once configured.
+     */
+    public static JButton CreateAButton(String text, int width, int height, int xPos, int yPos,
+                                        ActionListener listener, JPanel panel)
+    {
+        JButton myNewButton = new JButton(text);
+        myNewButton.addActionListener(listener);
+        PlaceAComponent(myNewButton, width, height, xPos, yPos, panel);
+        return myNewButton;
+    }
+
+    /**
+     * This method places any component at a fixed position and size inside a panel made by CreateAnAbsolutePanel.
+     *
+     * @param component the component being placed
+     * @param width     the width of the component in pixels
+     * @param height    the height of the component in pixels
+     * @param xPos      the distance in pixels from the top left corner of the panel along the X-axis
+     * @param yPos      the distance in pixels from the top left corner of the panel along the Y-axis
+     * @param panel     the panel with no layout manager the component is being added to.
+     *
+     * @return          the component is returned to the caller once placed.
+     */
+    public static <T extends Component> T PlaceAComponent(T component, int width, int height, int xPos, int yPos,
+                                                          JPanel panel)
+    {
+        component.setBounds(xPos, yPos, width, height);
+        panel.add(component);
+        return component;
+    }
 }
@@ -0,0 +1,401 @@
+package TreasureHunt;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads saves written in the original CSV format: the treasure position as x,y, the guess number, the distance of the
+ * last guess, then a line of col,row,text,colour for each touched cell, where the text is the guess number or $ for
+ * the treasure. That format does not record the board size, so the board is taken to be the standard 10 x 10 unless
+ * a cell or the treasure lies beyond it.
+ *
+ * The file is read whole into a buffer and parsed byte by byte, numbers included, without building a String for each
+ * line or field. A parser keeps its buffer and cell arrays between files, so one parser for each thread reads any
+ * number of saves with almost no garbage. A parser is not safe to share between threads.
+ */
+public class CsvSaveParser
+{
+    static final int DEFAULT_BOARD_SIZE = 10;
+    static final byte[] GOLD = "GOLD".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] RED = "RED".getBytes(StandardCharsets.US_ASCII);
+
+    byte[] bytes = new byte[8192];
+    int length = 0;
+    int position = 0;
+    Path path;
+
+    //Cells read so far, kept until the board size is known.
+    int[] cols = new int[64];
+    int[] rows = new int[64];
+    int[] guesses = new int[64];
+    byte[] states = new byte[64];
+    int cellCount = 0;
+    //Board size needed to hold the cells read so far, and the highest guess number among them.
+    int width;
+    int height;
+    int lastGuess;
+
+    /**
+     * Reads and parses a CSV save.
+     *
+     * @param path The CSV save file.
+     * @return The game data held in the file.
+     */
+    public GameData Parse(Path path) throws IOException
+    {
+        return Parse(bytes, Read(path), path);
+    }
+
+    /**
+     * Reads a whole file into the parser's buffer, growing it if the file does not fit.
+     *
+     * @return The number of bytes read.
+     */
+    int Read(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8)
+            {
+                throw new IOException("Save file is too large: " + path);
+            }
+            if (bytes.length < size)
+            {
+                bytes = new byte[(int) Math.max(size, bytes.length * 2L)];
+            }
+            //Reading stops at the size rather than at the end of the file, saving a read call on every small save.
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, (int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+            {
+                //Keep reading until the whole file is in.
+            }
+            length = buffer.position();
+            return length;
+        }
+    }
+
+    /**
+     * @return true if the bytes last read start with the magic number of a binary save.
+     */
+    boolean IsBinary()
+    {
+        return length >= 4 && ((bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8
+                | (bytes[3] & 0xFF)) == FileManager.MAGIC;
+    }
+
+    /**
+     * Parses a CSV save already in memory.
+     *
+     * @param bytes The contents of the save.
+     * @param length The number of bytes of the save.
+     * @param path The file the save came from, only used in error messages.
+     * @return The game data held in the save.
+     */
+    public GameData Parse(byte[] bytes, int length, Path path) throws IOException
+    {
+        return Parse(bytes, length, path, false);
+    }
+
+    /**
+     * Recovers what it can of a CSV save that fails to parse, such as one cut short by a crash. The first three lines
+     * must be intact, but the cells are kept up to the first line that is damaged, and a last line without its line
+     * break is dropped as it may have been cut short part way through.
+     *
+     * @param bytes The contents of the save.
+     * @param length The number of bytes of the save.
+     * @param path The file the save came from, only used in error messages.
+     * @return The game as far as it could be recovered.
+     */
+    public GameData Salvage(byte[] bytes, int length, Path path) throws IOException
+    {
+        int complete = length;
+        while (complete > 0 && bytes[complete - 1] != '\n')
+        {
+            complete--;
+        }
+        return Parse(bytes, complete, path, true);
+    }
+
+    private GameData Parse(byte[] bytes, int length, Path path, boolean salvaging) throws IOException
+    {
+        this.bytes = bytes;
+        this.length = length;
+        this.path = path;
+        position = 0;
+        cellCount = 0;
+
+        GameData data = new GameData();
+        int treasureX = ReadInt();
+        Expect(',');
+        int treasureY = ReadInt();
+        EndLine();
+        data.treasurePosition = new Dimension(treasureX, treasureY);
+        data.guessNumber = ReadInt();
+        EndLine();
+        data.lastGuessDistance = ReadDouble();
+        EndLine();
+
+        if (treasureX < 0 || treasureY < 0)
+        {
+            throw Malformed("a treasure off the board");
+        }
+        //The board is grown to fit the treasure as well as the cells, so a save where the treasure lies beyond every
+        //guess still converts to a binary save, which requires its treasures on the board.
+        width = Math.max(DEFAULT_BOARD_SIZE, treasureX + 1);
+        height = Math.max(DEFAULT_BOARD_SIZE, treasureY + 1);
+        lastGuess = 0;
+        while (position < length)
+        {
+            try
+            {
+                ReadCellLine();
+            }
+            catch (IOException ex)
+            {
+                if (!salvaging)
+                {
+                    throw ex;
+                }
+                break;
+            }
+        }
+
+        //The treasure cell shows $ in place of its guess number, as it was found by the last guess of the game.
+        int winningGuess = Math.max(lastGuess + 1, data.guessNumber - 1);
+        for (int i = 0; i < cellCount; i++)
+        {
+            if (guesses[i] == 0 && states[i] == CellState.TREASURE.ordinal())
+            {
+                guesses[i] = winningGuess;
+                lastGuess = winningGuess;
+            }
+        }
+
+        data.boardWidth = width;
+        data.boardHeight = height;
+        if (salvaging)
+        {
+            data.guessNumber = Math.max(data.guessNumber, lastGuess + 1);
+        }
+        BoardState board = new BoardState(width, height);
+        for (int i = 0; i < cellCount; i++)
+        {
+            board.SetCellAt(BoardState.Key(cols[i], rows[i]), states[i], guesses[i]);
+        }
+        data.board = board;
+        return data;
+    }
+
+    /**
+     * Reads one line of col,row,text,colour, growing the board to fit the cell.
+     */
+    private void ReadCellLine() throws IOException
+    {
+        if (AtLineEnd())
+        {
+            //Blank lines, such as a trailing one, hold no cell.
+            EndLine();
+            return;
+        }
+        int col = ReadInt();
+        Expect(',');
+        int row = ReadInt();
+        Expect(',');
+        if (col < 0 || row < 0)
+        {
+            throw Malformed("a cell off the board");
+        }
+
+        //The text is the guess number, $ for the treasure, or empty for a cell never guessed.
+        boolean treasure = false;
+        boolean empty = false;
+        int guess = 0;
+        if (position < length && bytes[position] == '$')
+        {
+            treasure = true;
+            position++;
+        }
+        else if (position < length && bytes[position] == ',')
+        {
+            empty = true;
+        }
+        else
+        {
+            guess = ReadInt();
+        }
+        Expect(',');
+        int colourStart = position;
+        while (!AtLineEnd())
+        {
+            position++;
+        }
+        int colourEnd = position;
+        if (colourEnd > colourStart && bytes[colourEnd - 1] == '\r')
+        {
+            colourEnd--;
+        }
+        EndLine();
+        if (empty)
+        {
+            return;
+        }
+
+        CellState state;
+        if (treasure || MatchesIgnoreCase(colourStart, colourEnd, GOLD))
+        {
+            state = CellState.TREASURE;
+        }
+        else if (MatchesIgnoreCase(colourStart, colourEnd, RED))
+        {
+            state = CellState.HOT;
+        }
+        else
+        {
+            state = CellState.COLD;
+        }
+        AddCell(col, row, state, guess);
+        width = Math.max(width, col + 1);
+        height = Math.max(height, row + 1);
+        lastGuess = Math.max(lastGuess, guess);
+    }
+
+    private void AddCell(int col, int row, CellState state, int guess)
+    {
+        if (cellCount == cols.length)
+        {
+            int capacity = cellCount * 2;
+            cols = Arrays.copyOf(cols, capacity);
+            rows = Arrays.copyOf(rows, capacity);
+            guesses = Arrays.copyOf(guesses, capacity);
+            states = Arrays.copyOf(states, capacity);
+        }
+        cols[cellCount] = col;
+        rows[cellCount] = row;
+        guesses[cellCount] = guess;
+        states[cellCount] = (byte) state.ordinal();
+        cellCount++;
+    }
+
+    /**
+     * Reads a decimal int, with an optional minus sign, straight from the bytes.
+     */
+    private int ReadInt() throws IOException
+    {
+        boolean negative = position < length && bytes[position] == '-';
+        if (negative)
+        {
+            position++;
+        }
+        int start = position;
+        long value = 0;
+        while (position < length && bytes[position] >= '0' && bytes[position] <= '9')
+        {
+            value = value * 10 + (bytes[position] - '0');
+            if (value > Integer.MAX_VALUE + 1L)
+            {
+                throw Malformed("a number that is too large");
+            }
+            position++;
+        }
+        if (position == start)
+        {
+            throw Malformed("a missing number");
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE)
+        {
+            throw Malformed("a number that is too large");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Reads the rest of the line as a double. Distances are written by Double.toString, so the slow path through a
+     * String is only taken for the one distance line of each file.
+     */
+    private double ReadDouble() throws IOException
+    {
+        int start = position;
+        while (!AtLineEnd())
+        {
+            position++;
+        }
+        int end = position > start && bytes[position - 1] == '\r' ? position - 1 : position;
+        try
+        {
+            return Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+        }
+        catch (NumberFormatException ex)
+        {
+            throw Malformed("a distance that is not a number");
+        }
+    }
+
+    private boolean AtLineEnd()
+    {
+        return position >= length || bytes[position] == '\n'
+                || (bytes[position] == '\r' && (position + 1 >= length || bytes[position + 1] == '\n'));
+    }
+
+    /**
+     * Moves past the end of the current line, which must be all that is left of it.
+     */
+    private void EndLine() throws IOException
+    {
+        if (position < length && bytes[position] == '\r')
+        {
+            position++;
+        }
+        if (position < length)
+        {
+            if (bytes[position] != '\n')
+            {
+                throw Malformed("unexpected text at the end of a line");
+            }
+            position++;
+        }
+    }
+
+    private void Expect(char separator) throws IOException
+    {
+        if (position >= length || bytes[position] != separator)
+        {
+            throw Malformed("a missing '" + separator + "'");
+        }
+        position++;
+    }
+
+    private boolean MatchesIgnoreCase(int start, int end, byte[] word)
+    {
+        if (end - start != word.length)
+        {
+            return false;
+        }
+        for (int i = 0; i < word.length; i++)
+        {
+            //The words are upper case letters, so clearing the lower case bit is enough to compare them.
+            if ((bytes[start + i] & ~0x20) != word[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private IOException Malformed(String problem)
+    {
+        int line = 1;
+        for (int i = 0; i < Math.min(position, length); i++)
+        {
+            line += bytes[i] == '\n' ? 1 : 0;
+        }
+        return new IOException("CSV save has " + problem + " on line " + line + ": " + path);
+    }
+}
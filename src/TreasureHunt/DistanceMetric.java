@@ -0,0 +1,120 @@
+package TreasureHunt;
+
+/**
+ * The ways the distance between a guess and the treasure can be measured. Each metric gives an exact integer measure
+ * which the hot/cold verdicts are worked out from, so no verdict ever depends on rounding. For the Euclidean and
+ * toroidal metrics the measure is the squared distance, for the others it is the distance itself. The ordinal of each
+ * value is stored in save files, so new values must only ever be added at the end.
+ */
+public enum DistanceMetric
+{
+    //Straight line distance.
+    EUCLIDEAN,
+    //Cells moved along the rows plus cells moved along the columns.
+    MANHATTAN,
+    //The larger of the two, as a chess king moves.
+    CHEBYSHEV,
+    //Straight line distance on a board whose edges wrap around to the opposite side.
+    TOROIDAL;
+
+    //Cached copy of values() so converting a stored ordinal back does not allocate.
+    static final DistanceMetric[] VALUES = values();
+
+    /**
+     * @return The exact integer measure of the distance between two cells, smaller for closer cells.
+     */
+    public long Measure(int x1, int y1, int x2, int y2, int boardWidth, int boardHeight)
+    {
+        return Combine(AxisTerm(x1 - x2, boardWidth), AxisTerm(y1 - y2, boardHeight));
+    }
+
+    /**
+     * The part of the measure contributed by the distance along one axis. The measure of two cells is made by
+     * combining the terms of the two axes, which is what lets the DistanceField fill a whole board with a single add
+     * or max per cell.
+     *
+     * @param difference The difference between the two coordinates along the axis.
+     * @param boardSize The number of cells along the axis, used by the toroidal metric.
+     */
+    public long AxisTerm(int difference, int boardSize)
+    {
+        long distance = Math.abs((long) difference);
+        if (this == TOROIDAL)
+        {
+            distance = Math.min(distance, boardSize - distance);
+        }
+        return SquaresTerms() ? distance * distance : distance;
+    }
+
+    /**
+     * The largest term any two cells can have along one axis: the full length of the axis, or half of it on a board
+     * whose edges wrap around.
+     *
+     * @param boardSize The number of cells along the axis.
+     */
+    public long FarthestAxisTerm(int boardSize)
+    {
+        return AxisTerm(this == TOROIDAL ? boardSize / 2 : boardSize - 1, boardSize);
+    }
+
+    /**
+     * Combines the terms of the two axes into the measure.
+     */
+    public long Combine(long xTerm, long yTerm)
+    {
+        return this == CHEBYSHEV ? Math.max(xTerm, yTerm) : xTerm + yTerm;
+    }
+
+    /**
+     * @return true if the axis terms are squared distances, so the measure is the square of the distance.
+     */
+    public boolean SquaresTerms()
+    {
+        return this == EUCLIDEAN || this == TOROIDAL;
+    }
+
+    /**
+     * @return The distance in cell units a measure stands for, as shown to players and kept in saves.
+     */
+    public double DistanceOfMeasure(long measure)
+    {
+        return SquaresTerms() ? Math.sqrt(measure) : measure;
+    }
+
+    /**
+     * Turns a distance back into a measure, such as the starting distance or a distance read from a save. Distances
+     * saved from a measure convert back to exactly the same measure.
+     */
+    public long MeasureOfDistance(double distance)
+    {
+        return SquaresTerms() ? Math.round(distance * distance) : Math.round(distance);
+    }
+
+    /**
+     * @return The distance between two cells in cell units.
+     */
+    public double Distance(int x1, int y1, int x2, int y2, int boardWidth, int boardHeight)
+    {
+        return DistanceOfMeasure(Measure(x1, y1, x2, y2, boardWidth, boardHeight));
+    }
+
+    /**
+     * @return The metric stored as the given ordinal.
+     */
+    public static DistanceMetric FromOrdinal(int ordinal)
+    {
+        if (ordinal < 0 || ordinal >= VALUES.length)
+        {
+            throw new IllegalArgumentException("Unknown distance metric " + ordinal);
+        }
+        return VALUES[ordinal];
+    }
+
+    /**
+     * @return The metric with the given name, ignoring case, as given on the command line.
+     */
+    public static DistanceMetric FromName(String name)
+    {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
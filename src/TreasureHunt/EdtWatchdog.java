@@ -0,0 +1,90 @@
+package TreasureHunt;
+
+import java.awt.*;
+
+/**
+ * Watches the Event Dispatch Thread for events that take too long. A custom EventQueue notes when each event starts
+ * and finishes, and a background thread checks on it regularly. When an event has been running for longer than the
+ * threshold the stack of the Event Dispatch Thread is captured and passed to GameMetrics, once per slow event. The
+ * threshold defaults to 200ms and can be changed with the treasurehunt.edt.stallMillis system property.
+ */
+public class EdtWatchdog extends EventQueue
+{
+    static final long DEFAULT_THRESHOLD_MILLIS = 200;
+    static boolean installed = false;
+
+    long thresholdNanos;
+    GameMetrics metrics;
+    //Start time of the event being dispatched, 0 when idle. Written by the EDT and read by the watchdog thread.
+    volatile long dispatchStart = 0;
+    volatile Thread dispatchThread;
+    //Start time of the last event reported, so a single slow event is only reported once.
+    long reportedStart = 0;
+
+    EdtWatchdog(long thresholdMillis, GameMetrics metrics)
+    {
+        this.thresholdNanos = thresholdMillis * 1000000;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Replaces the system event queue with a watched one and starts the watchdog thread. Only the first call has
+     * any effect.
+     */
+    public static synchronized void Install(GameMetrics metrics)
+    {
+        if (installed || GraphicsEnvironment.isHeadless())
+        {
+            return;
+        }
+        installed = true;
+        long threshold = Long.getLong("treasurehunt.edt.stallMillis", DEFAULT_THRESHOLD_MILLIS);
+        EdtWatchdog queue = new EdtWatchdog(threshold, metrics);
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(queue);
+
+        Thread watcher = new Thread(queue::Watch, "EDT watchdog");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event)
+    {
+        dispatchThread = Thread.currentThread();
+        dispatchStart = System.nanoTime();
+        try
+        {
+            super.dispatchEvent(event);
+        }
+        finally
+        {
+            dispatchStart = 0;
+        }
+    }
+
+    /**
+     * Checks the running event at half the threshold so a stall is caught soon after it passes the threshold.
+     */
+    void Watch()
+    {
+        long sleepMillis = Math.max(1, thresholdNanos / 2000000);
+        while (true)
+        {
+            try
+            {
+                Thread.sleep(sleepMillis);
+            }
+            catch(InterruptedException ex)
+            {
+                return;
+            }
+            long start = dispatchStart;
+            long running = System.nanoTime() - start;
+            if (start != 0 && start != reportedStart && running > thresholdNanos)
+            {
+                reportedStart = start;
+                metrics.RecordEdtStall(running / 1000000, dispatchThread.getStackTrace());
+            }
+        }
+    }
+}
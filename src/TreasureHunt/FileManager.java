@@ -1,95 +1,619 @@
 package TreasureHunt;
 
 import java.awt.*;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
 
+/**
+ * Saves and loads games. Games are written in a compact binary format made up of a header holding the board size,
+ * counters and seed, one record for each treasure, one record for each touched cell and a CRC32 checksum, so the size
+ * of a save depends on the number of treasures and guesses rather than the size of the board. Loading detects the
+ * format from the first bytes of the file, so the older CSV saves are still readable.
+ *
+ * Versions 1 and 2 of the binary format stored the state of every cell packed into two bits followed by the guess
+ * numbers of the touched cells, and version 1 had no seed. Both are still read, version 1 with a seed of 0. Versions 1
+ * to 3 held only the single treasure in the header. Versions 1 to 4 were always flat; version 5 records the number of
+ * axes after Y in the header flags and the size of each after the header, and gives every treasure a coordinate on
+ * each axis. Cell records hold the packed BoardShape cell, which on a flat board is the key they always held.
+ * Versions 1 to 5 end with a CRC32 checksum; version 6 uses CRC32C, which the JVM computes with the processor's own
+ * CRC instructions, so verifying a directory of saves costs little more than reading it.
+ */
 public class FileManager
 {
-    String saveFile = "GameSave.csv";
+    //Marks the start of a binary save file, the characters "THNT".
+    static final int MAGIC = 0x54484E54;
+    static final short VERSION = 6;
+    //Magic, version, flags, width, height, treasure x and y, guess number, last distance, seed and touched count.
+    static final int HEADER_SIZE = 4 + 2 + 2 + 4 + 4 + 4 + 4 + 4 + 8 + 8 + 4;
+    //Header of version 1 saves, which have no seed.
+    static final int VERSION_1_HEADER_SIZE = HEADER_SIZE - 8;
+    //Bits of the header flags holding the DistanceMetric ordinal. Saves made before metrics existed have 0 there,
+    //which is EUCLIDEAN, so they need no new version.
+    static final int FLAGS_METRIC_MASK = 0x0F;
+    //Bits of the header flags holding the number of axes after X and Y, from version 5.
+    static final int FLAGS_AXES_MASK = 0xF0;
+    static final int FLAGS_AXES_SHIFT = 4;
+
+    //X and Y coordinates of a treasure and whether it has been found. Boards with more axes add 4 bytes for each.
+    static final int TREASURE_RECORD_SIZE = 4 + 4 + 1;
+    //Cell key, guess number and CellState ordinal of a touched cell.
+    static final int CELL_RECORD_SIZE = 8 + 4 + 1;
+    //Two bit code of an untouched cell in the packed cells of version 1 and 2 saves.
+    static final int CELL_UNTOUCHED = 0;
+
+    String saveFile = "GameSave.dat";
+    //Save written by earlier versions of the game, only read when no binary save exists yet.
+    String legacySaveFile = "GameSave.csv";
+    //Guesses made since the last save, see GuessJournal.
+    String journalFile = "GameSave.journal";
 
     public void SaveDataToFile(GameData gameData)
     {
         try
         {
-            BufferedWriter buffer = new BufferedWriter(new FileWriter(saveFile));
+            WriteSnapshot(gameData);
+        }
+        catch(Exception ex)
+        {
+            System.out.println(ex.getMessage());
+        }
+    }
+
+    public GameData ReadDataFromFile()
+    {
+        try
+        {
+            return ReadDataFromFile(CurrentSavePath());
+        }
+        catch(Exception ex)
+        {
+            System.out.println(ex.getMessage());
+            //Return null if something went wrong.
+            return null;
+        }
+    }
+
+    /**
+     * Writes the game to the save file. The data is written to a temporary file first and then moved over the save,
+     * so a crash part way through writing never leaves a half written save behind.
+     *
+     * @param gameData The game being saved.
+     */
+    void WriteSnapshot(GameData gameData) throws IOException
+    {
+        WriteSnapshot(gameData, FileProgress.NONE);
+    }
+
+    /**
+     * Writes the game to the save file, reporting progress as the cells are packed. If the operation is cancelled
+     * the existing save is left untouched.
+     *
+     * @param gameData The game being saved.
+     * @param progress Told about progress and asked whether to carry on.
+     */
+    void WriteSnapshot(GameData gameData, FileProgress progress) throws IOException
+    {
+        Path path = Paths.get(saveFile).toAbsolutePath();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try
+        {
+            WriteBinary(gameData, temp, progress);
+        }
+        catch(CancellationException ex)
+        {
+            Files.deleteIfExists(temp);
+            throw ex;
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return The binary save if one exists, otherwise the legacy CSV save.
+     */
+    Path CurrentSavePath()
+    {
+        Path path = Paths.get(saveFile);
+        if (!Files.exists(path))
+        {
+            path = Paths.get(legacySaveFile);
+        }
+        return path;
+    }
+
+    /**
+     * Reads a save file of either format, choosing the binary or CSV reader based upon the first four bytes.
+     *
+     * @param path The save file to read.
+     * @return The game data held in the file.
+     */
+    public GameData ReadDataFromFile(Path path) throws IOException
+    {
+        return ReadDataFromFile(path, FileProgress.NONE);
+    }
 
-            buffer.write(gameData.treasurePosition.width + "," + gameData.treasurePosition.height);
-            buffer.newLine();
-            buffer.write(gameData.guessNumber +"");
-            buffer.newLine();
-            buffer.write(gameData.lastGuessDistance + "");
-            buffer.newLine();
+    /**
+     * Reads a save file of either format, reporting progress as the cells are read.
+     *
+     * @param path The save file to read.
+     * @param progress Told about progress and asked whether to carry on.
+     * @return The game data held in the file.
+     */
+    public GameData ReadDataFromFile(Path path, FileProgress progress) throws IOException
+    {
+        if (IsBinarySave(path))
+        {
+            return ReadBinary(path, progress);
+        }
+        return ReadCsv(path);
+    }
 
-            for (int x = 0; x < gameData.gameGrid.length; x++)
+    /**
+     * Passes progress on to the listener and stops the operation if it asks to cancel.
+     */
+    static void CheckProgress(FileProgress progress, long done, long total)
+    {
+        if (!progress.Report(done, total))
+        {
+            throw new CancellationException("Cancelled");
+        }
+    }
+
+    /**
+     * Checks for the binary save magic number at the start of the file.
+     */
+    static boolean IsBinarySave(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            ByteBuffer start = ByteBuffer.allocate(4);
+            while (start.hasRemaining() && channel.read(start) >= 0)
+            {
+                //Keep reading until four bytes are in or the file ends.
+            }
+            return start.position() == 4 && start.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Writes the game in the binary format through a channel and forces it to disk.
+     *
+     * @param gameData The game being saved.
+     * @param path The file to write to.
+     * @param progress Told about progress and asked whether to carry on.
+     */
+    void WriteBinary(GameData gameData, Path path, FileProgress progress) throws IOException
+    {
+        ByteBuffer buffer = EncodeBinary(gameData, progress);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Encodes the game in the binary format. The whole file is built in one buffer, with cells in key order so the
+     * same game always produces the same file.
+     *
+     * @param gameData The game being saved.
+     * @param progress Told about progress and asked whether to carry on.
+     * @return The contents of the save, ready to be written.
+     */
+    static ByteBuffer EncodeBinary(GameData gameData, FileProgress progress)
+    {
+        BoardState board = gameData.board;
+        long[] keys = board.TouchedCells();
+        Arrays.sort(keys);
+        int touched = keys.length;
+
+        TreasureIndex treasures = TreasureIndex.Of(gameData);
+        int treasureCount = treasures.getCount();
+        BoardShape shape = BoardShape.Of(gameData);
+        int extraAxes = shape.getDimensions() - 2;
+        int treasureRecordSize = TREASURE_RECORD_SIZE + extraAxes * 4;
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + extraAxes * 4 + 4 + treasureCount * treasureRecordSize
+                + touched * CELL_RECORD_SIZE + 4);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putShort((short) ((gameData.metric.ordinal() & FLAGS_METRIC_MASK)
+                | ((extraAxes << FLAGS_AXES_SHIFT) & FLAGS_AXES_MASK)));
+        buffer.putInt(gameData.boardWidth);
+        buffer.putInt(gameData.boardHeight);
+        buffer.putInt(gameData.treasurePosition.width);
+        buffer.putInt(gameData.treasurePosition.height);
+        buffer.putInt(gameData.guessNumber);
+        buffer.putDouble(gameData.lastGuessDistance);
+        buffer.putLong(gameData.seed);
+        buffer.putInt(touched);
+        for (int axis = 2; axis < shape.getDimensions(); axis++)
+        {
+            buffer.putInt(shape.getSize(axis));
+        }
+        buffer.putInt(treasureCount);
+        for (int id = 0; id < treasureCount; id++)
+        {
+            for (int axis = 0; axis < shape.getDimensions(); axis++)
             {
-                for (int y = 0; y < gameData.gameGrid[x].length; y++)
+                buffer.putInt(shape.Coordinate(treasures.getCell(id), axis));
+            }
+            buffer.put((byte) (treasures.IsFound(id) ? 1 : 0));
+        }
+        for (int i = 0; i < touched; i++)
+        {
+            if ((i & 0xFFFF) == 0)
+            {
+                CheckProgress(progress, i, touched);
+            }
+            long key = keys[i];
+            buffer.putLong(key);
+            buffer.putInt(board.GetGuessAt(key));
+            buffer.put(board.GetStateAt(key));
+        }
+
+        //Checksum everything written so far and finish with it.
+        Checksum crc = NewChecksum(VERSION);
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        return buffer.flip();
+    }
+
+    /**
+     * Reads a binary save into memory with a single read and decodes the header and cells from the buffer. The
+     * checksum is verified before anything is decoded. Saves are small, and reading them rather than mapping them
+     * leaves nothing holding the file open, which on Windows would stop the next save replacing it.
+     *
+     * @param path The binary save file.
+     * @param progress Told about progress and asked whether to carry on.
+     * @return The game data held in the file.
+     */
+    GameData ReadBinary(Path path, FileProgress progress) throws IOException
+    {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+            {
+                throw new IOException("Save file is too large: " + path);
+            }
+            buffer = ByteBuffer.allocate((int) size);
+            int read = 0;
+            while (buffer.hasRemaining() && read >= 0)
+            {
+                read = channel.read(buffer);
+            }
+            buffer.flip();
+        }
+        return DecodeBinary(buffer, progress, path);
+    }
+
+    /**
+     * @return The checksum a save of the given version ends with.
+     */
+    static Checksum NewChecksum(int version)
+    {
+        return version >= 6 ? new CRC32C() : new CRC32();
+    }
+
+    /**
+     * Decodes a whole binary save held in a buffer, from its first byte to its limit. The checksum is verified before
+     * anything is decoded.
+     *
+     * @param buffer The contents of the save, positioned at its start.
+     * @param progress Told about progress and asked whether to carry on.
+     * @param path The file the save came from, only used in error messages.
+     * @return The game data held in the save.
+     */
+    static GameData DecodeBinary(ByteBuffer buffer, FileProgress progress, Path path) throws IOException
+    {
+        if (buffer.limit() < VERSION_1_HEADER_SIZE + 4)
+        {
+            throw new IOException("Save file is too short: " + path);
+        }
+        short version = buffer.getShort(4);
+        if (version < 1 || version > VERSION)
+        {
+            throw new IOException("Unsupported save file version " + version + ": " + path);
+        }
+        int checksumPosition = buffer.limit() - 4;
+        Checksum crc = NewChecksum(version);
+        crc.update(buffer.duplicate().position(0).limit(checksumPosition));
+        if ((int) crc.getValue() != buffer.getInt(checksumPosition))
+        {
+            throw new IOException("Save file checksum does not match: " + path);
+        }
+
+        buffer.position(6);
+        short flags = buffer.getShort();
+
+        GameData data = new GameData();
+        try
+        {
+            data.metric = DistanceMetric.FromOrdinal(flags & FLAGS_METRIC_MASK);
+        }
+        catch (IllegalArgumentException ex)
+        {
+            throw new IOException(ex.getMessage() + ": " + path);
+        }
+        data.boardWidth = buffer.getInt();
+        data.boardHeight = buffer.getInt();
+        data.treasurePosition = new Dimension(buffer.getInt(), buffer.getInt());
+        data.guessNumber = buffer.getInt();
+        data.lastGuessDistance = buffer.getDouble();
+        if (version >= 2)
+        {
+            data.seed = buffer.getLong();
+        }
+        int touched = buffer.getInt();
+        BoardShape shape = BoardShape.Plane(data.boardWidth, data.boardHeight);
+        if (version >= 5 && (flags & FLAGS_AXES_MASK) != 0)
+        {
+            shape = ReadShape(buffer, data.boardWidth, data.boardHeight, (flags & FLAGS_AXES_MASK) >> FLAGS_AXES_SHIFT,
+                    checksumPosition, path);
+            data.shape = shape;
+        }
+        if (version >= 4)
+        {
+            data.treasures = ReadTreasures(buffer, shape, checksumPosition, path);
+        }
+
+        BoardState board = new BoardState(shape);
+        if (version >= 3)
+        {
+            ReadCellRecords(buffer, board, touched, checksumPosition, progress, path);
+        }
+        else
+        {
+            ReadPackedCells(buffer, board, touched, checksumPosition, progress, path);
+        }
+        data.board = board;
+        return data;
+    }
+
+    /**
+     * Reads the sizes of the axes after X and Y of a version 5 save.
+     */
+    private static BoardShape ReadShape(ByteBuffer buffer, int boardWidth, int boardHeight, int extraAxes,
+                                        int checksumPosition, Path path) throws IOException
+    {
+        if (buffer.position() + extraAxes * 4L > checksumPosition)
+        {
+            throw new IOException("Save file size does not match its header: " + path);
+        }
+        int[] sizes = new int[2 + extraAxes];
+        sizes[0] = boardWidth;
+        sizes[1] = boardHeight;
+        for (int axis = 2; axis < sizes.length; axis++)
+        {
+            sizes[axis] = buffer.getInt();
+        }
+        try
+        {
+            return new BoardShape(sizes);
+        }
+        catch (IllegalArgumentException ex)
+        {
+            throw new IOException(ex.getMessage() + ": " + path);
+        }
+    }
+
+    /**
+     * Reads the treasure records of a version 4 or 5 save into a new index.
+     */
+    private static TreasureIndex ReadTreasures(ByteBuffer buffer, BoardShape shape, int checksumPosition, Path path)
+            throws IOException
+    {
+        int count = buffer.getInt();
+        int recordSize = TREASURE_RECORD_SIZE + (shape.getDimensions() - 2) * 4;
+        if (count < 1 || buffer.position() + (long) count * recordSize > checksumPosition)
+        {
+            throw new IOException("Save file size does not match its header: " + path);
+        }
+        long[] cells = new long[count];
+        boolean[] found = new boolean[count];
+        int[] coordinates = new int[shape.getDimensions()];
+        for (int id = 0; id < count; id++)
+        {
+            for (int axis = 0; axis < coordinates.length; axis++)
+            {
+                coordinates[axis] = buffer.getInt();
+                if (coordinates[axis] < 0 || coordinates[axis] >= shape.getSize(axis))
                 {
-                    if (gameData.gameGrid[x][y].text.isEmpty())
-                    {
-                        continue;
-                    }
-                    buffer.write(x + "," + y + "," + gameData.gameGrid[x][y].text + "," + gameData.gameGrid[x][y].Colour);
-                    buffer.newLine();
+                    throw new IOException("Save file holds a treasure off the board: " + path);
                 }
             }
+            cells[id] = shape.Pack(coordinates);
+            found[id] = buffer.get() != 0;
+        }
+        TreasureIndex treasures;
+        try
+        {
+            treasures = new TreasureIndex(shape, cells);
+        }
+        catch (IllegalArgumentException ex)
+        {
+            throw new IOException(ex.getMessage() + ": " + path);
+        }
+        for (int id = 0; id < count; id++)
+        {
+            if (found[id])
+            {
+                treasures.Remove(id);
+            }
+        }
+        return treasures;
+    }
 
-            buffer.close();
+    /**
+     * Reads the touched cell records of a version 3 or later save into the board.
+     */
+    private static void ReadCellRecords(ByteBuffer buffer, BoardState board, int touched, int checksumPosition,
+                                        FileProgress progress, Path path) throws IOException
+    {
+        if (buffer.position() + (long) touched * CELL_RECORD_SIZE != checksumPosition)
+        {
+            throw new IOException("Save file size does not match its header: " + path);
         }
-        catch(Exception ex)
+        for (int i = 0; i < touched; i++)
         {
-            System.out.println(ex.getMessage());
+            if ((i & 0xFFFF) == 0)
+            {
+                CheckProgress(progress, i, touched);
+            }
+            long key = buffer.getLong();
+            int guess = buffer.getInt();
+            board.SetCellAt(key, buffer.get(), guess);
         }
     }
 
-    public GameData ReadDataFromFile()
+    /**
+     * Reads the cells of a version 1 or 2 save, where the state of every cell on the board is packed into two bits
+     * and followed by the guess numbers of the touched cells.
+     */
+    private static void ReadPackedCells(ByteBuffer buffer, BoardState board, int touched, int checksumPosition,
+                                        FileProgress progress, Path path) throws IOException
+    {
+        int width = board.getBoardWidth();
+        int height = board.getBoardHeight();
+        long cellCount = (long) width * height;
+        int packedStart = buffer.position();
+        long guessStart = packedStart + (cellCount + 3) / 4;
+        if (guessStart + touched * 4L != checksumPosition)
+        {
+            throw new IOException("Save file size does not match its header: " + path);
+        }
+
+        //Unpack the states, reading a guess number for each touched cell. Cells were stored by x * height + y.
+        int guessPosition = (int) guessStart;
+        for (int index = 0; index < cellCount; index++)
+        {
+            if ((index & 0xFFFF) == 0)
+            {
+                CheckProgress(progress, index, cellCount);
+            }
+            int state = (buffer.get(packedStart + (index >> 2)) >> ((index & 3) * 2)) & 3;
+            if (state == CELL_UNTOUCHED)
+            {
+                continue;
+            }
+            board.SetCellAt(BoardState.Key(index / height, index % height), (byte) state,
+                    buffer.getInt(guessPosition));
+            guessPosition += 4;
+        }
+    }
+
+    /**
+     * Recovers what it can of a binary save that fails to decode, such as one cut short by a crash or with damaged
+     * bytes. The header and treasures must be intact, since nothing after them can be found without them, but every
+     * whole cell record after them that holds a believable cell is kept and the rest are dropped. The checksum is not
+     * checked, as a damaged save will not match it. Saves from before version 3 pack their cells in a way that cannot
+     * be pieced back together, so they are never salvaged.
+     *
+     * @param buffer The contents of the damaged save, positioned at its start.
+     * @param path The file the save came from, only used in error messages.
+     * @return The game as far as it could be recovered.
+     */
+    static GameData SalvageBinary(ByteBuffer buffer, Path path) throws IOException
     {
+        int end = buffer.limit();
+        if (end < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+        {
+            throw new IOException("Save file header is damaged: " + path);
+        }
+        short version = buffer.getShort(4);
+        if (version < 3 || version > VERSION)
+        {
+            throw new IOException("Save file version " + version + " cannot be salvaged: " + path);
+        }
+        buffer.position(6);
+        short flags = buffer.getShort();
+
+        GameData data = new GameData();
         try
         {
-            //Create an empty gameData object to hold our file data as it is read in
-            GameData data = new GameData();
-            //Create the reader to perform the file reading
-            BufferedReader buffer = new BufferedReader(new FileReader(saveFile));
-            //Read the first line and split it by the comma and store it inan array
-            String[] tempTreasure = buffer.readLine().split(",");
-            //Convert then pass the array values into a new dimension object to set the treasure position
-            data.treasurePosition = new Dimension(Integer.parseInt(tempTreasure[0]),Integer.parseInt(tempTreasure[1]));
-            //Read the next line and convert it before passing iot to the game data.
-            data.guessNumber = Integer.parseInt(buffer.readLine());
-            //Read the next line and convert it before passing iot to the game data.
-            data.lastGuessDistance = Double.parseDouble(buffer.readLine());
-
-            //Create a new 2D array to store our grid cell data from the file.
-            GridCellData[][] grid = new GridCellData[10][10];
-
-            String line;
-            while ((line = buffer.readLine()) != null)
+            data.metric = DistanceMetric.FromOrdinal(flags & FLAGS_METRIC_MASK);
+        }
+        catch (IllegalArgumentException ex)
+        {
+            throw new IOException(ex.getMessage() + ": " + path);
+        }
+        data.boardWidth = buffer.getInt();
+        data.boardHeight = buffer.getInt();
+        data.treasurePosition = new Dimension(buffer.getInt(), buffer.getInt());
+        data.guessNumber = buffer.getInt();
+        data.lastGuessDistance = buffer.getDouble();
+        data.seed = buffer.getLong();
+        int touched = buffer.getInt();
+        if (data.boardWidth < 1 || data.boardHeight < 1 || touched < 0)
+        {
+            throw new IOException("Save file header is damaged: " + path);
+        }
+        BoardShape shape = BoardShape.Plane(data.boardWidth, data.boardHeight);
+        if (version >= 5 && (flags & FLAGS_AXES_MASK) != 0)
+        {
+            shape = ReadShape(buffer, data.boardWidth, data.boardHeight, (flags & FLAGS_AXES_MASK) >> FLAGS_AXES_SHIFT,
+                    end, path);
+            data.shape = shape;
+        }
+        if (version >= 4)
+        {
+            data.treasures = ReadTreasures(buffer, shape, end, path);
+        }
+        else if (!shape.Contains(shape.Key(data.treasurePosition.width, data.treasurePosition.height)))
+        {
+            throw new IOException("Save file holds a treasure off the board: " + path);
+        }
+
+        BoardState board = new BoardState(shape);
+        long records = Math.min(touched, (end - buffer.position()) / CELL_RECORD_SIZE);
+        int lastGuess = 0;
+        for (long i = 0; i < records; i++)
+        {
+            long key = buffer.getLong();
+            int guess = buffer.getInt();
+            byte state = buffer.get();
+            if (!shape.Contains(key) || state <= CellState.UNTOUCHED.ordinal() || state > CellState.TREASURE.ordinal()
+                    || guess < 0)
             {
-                //Split the current line and store its values
-                String[] temp = line.split(",");
-                //Convert the first 2 values into integers that represent the grid coordinates
-                int col = Integer.parseInt(temp[0]);
-                int row = Integer.parseInt(temp[1]);
-                //Create a new GridCellData object at the retrieved coordinates
-                grid[col][row] = new GridCellData();
-                //Set the values of that coordinates using the values of the split line
-                grid[col][row].text = temp[2];
-                grid[col][row].Colour = temp[3];
+                continue;
             }
-            //Pass the grid into the game data object
-            data.gameGrid = grid;
-            //CLose the reader to allow the file to finish processing
-            buffer.close();
-            //Return the completed data.
-            return data;
+            board.SetCellAt(key, state, guess);
+            lastGuess = Math.max(lastGuess, guess);
         }
-        catch(Exception ex)
+        data.board = board;
+        //Guess numbers carry on after the last recovered guess, even if the counter in the header was damaged.
+        data.guessNumber = Math.max(data.guessNumber, lastGuess + 1);
+        if (data.treasures != null)
         {
-            System.out.println(ex.getMessage());
-            //Return null if something went wrong.
-            return null;
+            data.treasures.MarkFoundFromBoard(board);
         }
+        return data;
+    }
+
+    /**
+     * Reads a save written in the original CSV format, see CsvSaveParser.
+     *
+     * @param path The CSV save file.
+     * @return The game data held in the file.
+     */
+    GameData ReadCsv(Path path) throws IOException
+    {
+        return new CsvSaveParser().Parse(path);
     }
 }
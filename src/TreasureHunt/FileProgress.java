@@ -0,0 +1,19 @@
+package TreasureHunt;
+
+/**
+ * Receives progress updates from long running save and load operations and allows them to be cancelled.
+ */
+public interface FileProgress
+{
+    //Progress listener for callers that do not need updates.
+    FileProgress NONE = (done, total) -> true;
+
+    /**
+     * Called periodically while a file is being written or read.
+     *
+     * @param done The amount of work completed so far.
+     * @param total The total amount of work.
+     * @return false to cancel the operation, true to carry on.
+     */
+    boolean Report(long done, long total);
+}
@@ -10,6 +10,9 @@ import java.awt.*;
  */
 public class GameButton extends JButton
 {
+    //Shared by every button rather than allocating new Insets on each reset. Never modified.
+    static final Insets NO_MARGIN = new Insets(0,0,0,0);
+
     int xPosition = 0;
     int yPosition = 0;
 
@@ -18,11 +21,28 @@ public class GameButton extends JButton
      */
     public void Reset()
     {
-        setMargin(new Insets(0,0,0,0));
+        setMargin(NO_MARGIN);
         setText("");
         setBackground(Color.white);
     }
 
+    /**
+     * Shows the state of a board cell on the button using the same colours as the painted board.
+     *
+     * @param state The state of the cell.
+     * @param text The text to print on the button.
+     */
+    public void ShowCell(CellState state, String text)
+    {
+        if (state == CellState.UNTOUCHED)
+        {
+            Reset();
+            return;
+        }
+        setText(text);
+        setBackground(BoardPanel.ColourForState(state));
+    }
+
     //Default Getters and Setters.
     public int getxPosition() {
         return xPosition;
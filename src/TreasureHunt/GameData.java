@@ -4,8 +4,19 @@ import java.awt.*;
 
 public class GameData
 {
+    public int boardWidth = 10;
+    public int boardHeight = 10;
+    //Size of the board along each axis. Null for a flat board of the width and height above.
+    public BoardShape shape;
+    //Position of the first treasure.
     public Dimension treasurePosition;
+    //Every treasure of the game and which have been found. Null for a game with only the treasure above.
+    public TreasureIndex treasures;
     public int guessNumber = 0;
     public double lastGuessDistance = 0;
-    public GridCellData[][] gameGrid;
+    //Seed the game was started with, 0 if the save predates seeded games.
+    public long seed = 0;
+    //How distances were measured in the game.
+    public DistanceMetric metric = DistanceMetric.EUCLIDEAN;
+    public BoardState board;
 }
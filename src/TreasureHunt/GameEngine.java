@@ -0,0 +1,585 @@
+package TreasureHunt;
+
+import java.util.SplittableRandom;
+
+/**
+ * Holds the rules and state of a single game of treasure hunt without any reference to Swing or AWT. The board is
+ * described purely by its width and height, and cells are addressed by their X and Y coordinates. This allows the
+ * game to be played by the GameScreen as well as by headless tools such as the BatchSimulator.
+ *
+ * Every game carries a seed from which the treasure position is worked out, so a game can be reproduced exactly from
+ * its seed and the guesses made. New seeds are drawn from a SplittableRandom, which can be split to give independent
+ * streams of games to separate threads or sessions.
+ *
+ * A board may hide several treasures, held in a TreasureIndex. Each guess is judged against the nearest treasure
+ * still hidden, and a guess on a treasure finds it and takes it out of play. The game is won once every treasure has
+ * been found. The first treasure of a game is always the one a single treasure game with the same seed would have.
+ *
+ * A board may also have more than two axes, described by a BoardShape, in which case cells are addressed by their
+ * packed BoardShape cell and distances are measured along every axis. Playing a guess on such a board allocates no
+ * more than on a flat one.
+ */
+public class GameEngine
+{
+    //Increment of the SplitMix64 sequence, the same one used by SplittableRandom.
+    public static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    BoardShape shape;
+    int boardWidth;
+    int boardHeight;
+    //Position of the first treasure of the game.
+    int treasureX;
+    int treasureY;
+    //Every treasure of the game and which have been found.
+    TreasureIndex treasures;
+    //Number of treasures hidden in each new game.
+    int treasureCount = 1;
+    //Reused by StartGame from game to game, along with the index, so starting a game does not allocate.
+    long[] treasureCells = new long[0];
+    CellMap usedCells = new CellMap();
+    //Seed of the current game, from which the treasure position was worked out.
+    long gameSeed;
+    //Distance of the treasure from the last cell guessed, the starting distance before the first guess.
+    double lastGuessDistance;
+    //Exact integer measure of the last guess distance under the current metric, which the verdicts are based on.
+    long lastGuessMeasure;
+    int guessNumber = 1;
+    //How the distance between a guess and the treasure is measured.
+    DistanceMetric metric = DistanceMetric.EUCLIDEAN;
+
+    //Source of the seed for each new game.
+    SplittableRandom seeds;
+
+    /**
+     * Creates a new game engine for a board of the given size and places the treasure for the first game.
+     *
+     * @param boardWidth The number of cells along the X-axis.
+     * @param boardHeight The number of cells along the Y-axis.
+     * @param seeds The random number generator each game's seed is drawn from.
+     */
+    public GameEngine(int boardWidth, int boardHeight, SplittableRandom seeds)
+    {
+        this(BoardShape.Plane(boardWidth, boardHeight), seeds);
+    }
+
+    /**
+     * Creates a new game engine for a board of any number of axes and places the treasure for the first game.
+     *
+     * @param shape The size of the board along each axis.
+     * @param seeds The random number generator each game's seed is drawn from.
+     */
+    public GameEngine(BoardShape shape, SplittableRandom seeds)
+    {
+        this.shape = shape;
+        this.boardWidth = shape.getWidth();
+        this.boardHeight = shape.getHeight();
+        this.seeds = seeds;
+        ResetTreasurePosition();
+    }
+
+    /**
+     * Starts a new game with a fresh seed, which determines the position of the treasure.
+     * Resets distance and count values for the next game.
+     */
+    public void ResetTreasurePosition()
+    {
+        StartGame(seeds.nextLong());
+    }
+
+    /**
+     * Starts a new game with the given seed. The same seed on the same board size always places the treasure in the
+     * same cell, which is what allows a game to be replayed. When the game before had as many treasures its index
+     * is reused, so headless tools can start game after game without allocating.
+     *
+     * @param seed The seed of the game.
+     */
+    public void StartGame(long seed)
+    {
+        gameSeed = seed;
+        int count = TreasureCountOn(shape, treasureCount);
+        if (treasureCells.length != count)
+        {
+            treasureCells = new long[count];
+        }
+        PlaceTreasures(seed, shape, treasureCells, usedCells);
+        if (treasures != null && treasures.getCount() == count && treasures.getShape().equals(shape))
+        {
+            treasures.Place(treasureCells);
+        }
+        else
+        {
+            treasures = new TreasureIndex(shape, treasureCells.clone());
+        }
+        treasureX = treasures.getX(0);
+        treasureY = treasures.getY(0);
+        lastGuessMeasure = StartingMeasure(shape, metric);
+        lastGuessDistance = metric.DistanceOfMeasure(lastGuessMeasure);
+        guessNumber = 1;
+    }
+
+    /**
+     * The measure the first guess of a game is compared against, just beyond the diagonal of the board, so the first
+     * guess is always hotter however large the board is.
+     */
+    public static long StartingMeasure(BoardShape shape, DistanceMetric metric)
+    {
+        return shape.FarthestMeasure(metric) + 1;
+    }
+
+    /**
+     * @return The distance the first guess of a game is compared against, see StartingMeasure.
+     */
+    public static double StartingDistance(BoardShape shape, DistanceMetric metric)
+    {
+        return metric.DistanceOfMeasure(StartingMeasure(shape, metric));
+    }
+
+    /**
+     * @return The X coordinate of the treasure for a game with the given seed.
+     */
+    public static int TreasureXFromSeed(long seed, int boardWidth)
+    {
+        return (int) ((Mix64(seed) >>> 1) % boardWidth);
+    }
+
+    /**
+     * @return The Y coordinate of the treasure for a game with the given seed.
+     */
+    public static int TreasureYFromSeed(long seed, int boardHeight)
+    {
+        return (int) ((Mix64(seed + GOLDEN_GAMMA) >>> 1) % boardHeight);
+    }
+
+    /**
+     * Places the treasures of a game with the given seed. Treasure i is placed from the (2i)th and (2i + 1)th values
+     * of the seed's SplitMix64 sequence, skipping any cell already used, so the first treasure is the one given by
+     * TreasureXFromSeed and TreasureYFromSeed.
+     *
+     * @param count The number of treasures, at most one for every cell of the board.
+     * @return The index of the treasures.
+     */
+    public static TreasureIndex TreasuresFromSeed(long seed, int boardWidth, int boardHeight, int count)
+    {
+        return TreasuresFromSeed(seed, BoardShape.Plane(boardWidth, boardHeight), count);
+    }
+
+    /**
+     * Places the treasures of a game with the given seed on a board of any number of axes. Each treasure takes one
+     * value of the seed's SplitMix64 sequence for each axis, so on a flat board the treasures are those placed above.
+     *
+     * @param count The number of treasures, at most one for every cell of the board.
+     * @return The index of the treasures.
+     */
+    public static TreasureIndex TreasuresFromSeed(long seed, BoardShape shape, int count)
+    {
+        long[] cells = new long[TreasureCountOn(shape, count)];
+        PlaceTreasures(seed, shape, cells, new CellMap());
+        return new TreasureIndex(shape, cells);
+    }
+
+    /**
+     * @return The number of treasures actually hidden when the given number is asked for: at least one, and at most
+     * one for every cell of the board.
+     */
+    private static int TreasureCountOn(BoardShape shape, int count)
+    {
+        return (int) Math.max(1, Math.min(count, shape.Volume()));
+    }
+
+    /**
+     * Fills cells with the treasures of the seed, as TreasuresFromSeed places them.
+     *
+     * @param used An empty map, used to skip cells already taken and left empty again afterwards.
+     */
+    private static void PlaceTreasures(long seed, BoardShape shape, long[] cells, CellMap used)
+    {
+        int count = cells.length;
+        int dimensions = shape.getDimensions();
+        long next = seed;
+        for (int placed = 0; placed < count; )
+        {
+            long cell = 0;
+            for (int axis = 0; axis < dimensions; axis++)
+            {
+                cell = shape.With(cell, axis, (int) ((Mix64(next + axis * GOLDEN_GAMMA) >>> 1) % shape.getSize(axis)));
+            }
+            next += dimensions * GOLDEN_GAMMA;
+            if (!used.ContainsKey(cell))
+            {
+                used.Put(cell, 1);
+                cells[placed] = cell;
+                placed++;
+            }
+        }
+        //Removing the cells one by one, rather than clearing, keeps the map's table for the next game.
+        for (long cell : cells)
+        {
+            used.Remove(cell);
+        }
+    }
+
+    /**
+     * The SplitMix64 mixing function. Turns any long into a well scrambled one without allocating, which lets
+     * headless tools derive independent random values from a seed and a counter.
+     */
+    public static long Mix64(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Places the treasure at a known position and restores the counters, used when continuing a saved game.
+     *
+     * @param treasureX The X coordinate of the treasure.
+     * @param treasureY The Y coordinate of the treasure.
+     * @param guessNumber The number that will be given to the next guess.
+     * @param lastGuessDistance The distance of the most recent guess from the treasure.
+     * @param gameSeed The seed of the saved game, 0 for saves made before games carried a seed.
+     */
+    public void RestoreGame(int treasureX, int treasureY, int guessNumber, double lastGuessDistance, long gameSeed)
+    {
+        RestoreGame(TreasureIndex.Single(boardWidth, boardHeight, treasureX, treasureY), guessNumber,
+                lastGuessDistance, gameSeed);
+    }
+
+    /**
+     * Restores a game that may hold several treasures. The engine takes ownership of the index.
+     *
+     * @param treasures Every treasure of the game and which have been found.
+     * @param guessNumber The number that will be given to the next guess.
+     * @param lastGuessDistance The distance of the most recent guess from the nearest hidden treasure.
+     * @param gameSeed The seed of the saved game, 0 for saves made before games carried a seed.
+     */
+    public void RestoreGame(TreasureIndex treasures, int guessNumber, double lastGuessDistance, long gameSeed)
+    {
+        this.gameSeed = gameSeed;
+        this.treasures = treasures;
+        this.treasureX = treasures.getX(0);
+        this.treasureY = treasures.getY(0);
+        this.guessNumber = guessNumber;
+        this.lastGuessDistance = lastGuessDistance;
+        this.lastGuessMeasure = metric.MeasureOfDistance(lastGuessDistance);
+    }
+
+    /**
+     * Changes how distances are measured. Takes effect from the next guess, so it should be set before a game is
+     * started or restored. A game with no guesses yet starts again from the starting distance under the new metric.
+     *
+     * @param metric The metric the distances are measured with.
+     */
+    public void setMetric(DistanceMetric metric)
+    {
+        this.metric = metric;
+        if (guessNumber == 1)
+        {
+            lastGuessMeasure = StartingMeasure(shape, metric);
+            lastGuessDistance = metric.DistanceOfMeasure(lastGuessMeasure);
+        }
+        else
+        {
+            lastGuessMeasure = metric.MeasureOfDistance(lastGuessDistance);
+        }
+    }
+
+    /**
+     * Sets how many treasures are hidden in each new game, starting with the next one.
+     *
+     * @param treasureCount The number of treasures, at least 1.
+     */
+    public void setTreasureCount(int treasureCount)
+    {
+        this.treasureCount = Math.max(1, treasureCount);
+    }
+
+    /**
+     * Calculates the distance of the provided cell from the position of the first treasure using the current
+     * metric, in units based upon the unit size of one cell width.
+     *
+     * @param x The X coordinate of the cell.
+     * @param y The Y coordinate of the cell.
+     * @return The distance to the treasure in a double type.
+     */
+    public double CalculateDistanceToTarget(int x, int y)
+    {
+        return metric.DistanceOfMeasure(CalculateMeasureToTarget(x, y));
+    }
+
+    /**
+     * Calculates the exact integer measure of the distance of the provided cell from the first treasure using the
+     * current metric. Comparing measures rather than distances keeps the hot/cold verdicts free of rounding.
+     *
+     * @param x The X coordinate of the cell.
+     * @param y The Y coordinate of the cell.
+     * @return The measure of the distance to the treasure.
+     */
+    public long CalculateMeasureToTarget(int x, int y)
+    {
+        return metric.Measure(treasureX, treasureY, x, y, boardWidth, boardHeight);
+    }
+
+    /**
+     * Calculates the exact integer measure of the distance of a packed cell from the first treasure along every axis.
+     */
+    public long CalculateMeasureToTarget(long cell)
+    {
+        return shape.Measure(metric, treasures.getCell(0), cell);
+    }
+
+    /**
+     * Calculates the distance in cell units between two cells using Pythagoras' Theorem.
+     *
+     * @return The distance between the two cells in a double type.
+     */
+    public static double DistanceBetween(int x1, int y1, int x2, int y2)
+    {
+        double xDistance = Math.abs(x1 - x2);
+        double yDistance = Math.abs(y1 - y2);
+        double sides = (xDistance * xDistance) + (yDistance * yDistance);
+        return Math.sqrt(sides);
+    }
+
+    /**
+     * Fills the measures from each cell of a region of the board to the nearest hidden treasure, laid out as
+     * DistanceField.Fill lays them out. While a single treasure is hidden the DistanceField kernel fills the whole
+     * region in one pass, otherwise the TreasureIndex is asked about each cell.
+     *
+     * @param field Receives the measures, must hold at least columns * rows values.
+     */
+    public void FillDistanceField(int firstX, int firstY, int columns, int rows, long[] field)
+    {
+        FillDistanceField(0, firstX, firstY, columns, rows, field);
+    }
+
+    /**
+     * Fills the measures from each cell of a region of one slice of the board to the nearest hidden treasure. The
+     * axes after Y add the same term to every cell of a slice, so a single hidden treasure is still filled by the
+     * DistanceField kernel and the term combined in afterwards.
+     *
+     * @param slice The slice the region lies in, see BoardShape.SliceAt.
+     * @param field Receives the measures, must hold at least columns * rows values.
+     */
+    public void FillDistanceField(long slice, int firstX, int firstY, int columns, int rows, long[] field)
+    {
+        int hidden = HiddenTreasure();
+        if (hidden >= 0)
+        {
+            DistanceField.Fill(metric, treasures.getX(hidden), treasures.getY(hidden), boardWidth, boardHeight,
+                    firstX, firstY, columns, rows, field);
+            if (!shape.IsFlat())
+            {
+                long sliceTerm = shape.SliceTerm(metric, slice, treasures.getCell(hidden));
+                for (int i = 0; i < columns * rows; i++)
+                {
+                    field[i] = metric.Combine(field[i], sliceTerm);
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < columns; i++)
+        {
+            for (int j = 0; j < rows; j++)
+            {
+                field[i * rows + j] = treasures.NearestMeasure(shape.Key(firstX + i, firstY + j) | slice, metric);
+            }
+        }
+    }
+
+    /**
+     * @return The measure the heat map shades as furthest: the far corner of the board from a single hidden treasure,
+     * or the typical spacing of the treasures while several are hidden.
+     */
+    public long HeatMapMaxMeasure()
+    {
+        return HeatMapMaxMeasure(0);
+    }
+
+    /**
+     * @return The measure the heat map of the given slice shades as furthest.
+     */
+    public long HeatMapMaxMeasure(long slice)
+    {
+        int hidden = HiddenTreasure();
+        if (hidden >= 0)
+        {
+            long measure = DistanceField.MaxMeasure(metric, treasures.getX(hidden), treasures.getY(hidden), boardWidth,
+                    boardHeight);
+            return shape.IsFlat() ? measure
+                    : metric.Combine(measure, shape.SliceTerm(metric, slice, treasures.getCell(hidden)));
+        }
+        double spacing = Math.pow((double) shape.Volume() / Math.max(1, treasures.getRemaining()),
+                1.0 / shape.getDimensions());
+        return Math.max(1, metric.MeasureOfDistance(spacing));
+    }
+
+    /**
+     * @return The id of the only treasure still hidden, or -1 if there are several or none.
+     */
+    private int HiddenTreasure()
+    {
+        if (treasures.getRemaining() != 1)
+        {
+            return -1;
+        }
+        for (int id = 0; id < treasures.getCount(); id++)
+        {
+            if (!treasures.IsFound(id))
+            {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares the distance provided against the distance of the previous guess and determines
+     * whether it is closer or further than the previous.
+     *
+     * @param distance The previously calculated distance of the cell to the treasure.
+     * @return HOTTER if the guess is closer than the last one, otherwise COLDER.
+     */
+    public GuessResult CheckWhetherHotterOrColder(double distance)
+    {
+        if (distance < lastGuessDistance)
+        {
+            return GuessResult.HOTTER;
+        }
+        return GuessResult.COLDER;
+    }
+
+    /**
+     * Compares the measure provided against the measure of the previous guess and determines whether it is closer
+     * or further than the previous.
+     *
+     * @param measure The measure of the distance of the cell to the treasure under the current metric.
+     * @return HOTTER if the guess is closer than the last one, otherwise COLDER.
+     */
+    public GuessResult CheckWhetherHotterOrColder(long measure)
+    {
+        if (measure < lastGuessMeasure)
+        {
+            return GuessResult.HOTTER;
+        }
+        return GuessResult.COLDER;
+    }
+
+    /**
+     * Checks whether the given coordinates match a treasure still to be found.
+     *
+     * @param x The X coordinate of the cell.
+     * @param y The Y coordinate of the cell.
+     * @return true if the cell holds a hidden treasure.
+     */
+    public boolean CheckForWin(int x, int y)
+    {
+        return treasures.FindAt(x, y) >= 0;
+    }
+
+    /**
+     * @return true if the packed cell holds a hidden treasure.
+     */
+    public boolean CheckForWin(long cell)
+    {
+        return treasures.FindAt(cell) >= 0;
+    }
+
+    /**
+     * @return true once every treasure of the game has been found.
+     */
+    public boolean IsWon()
+    {
+        return treasures.getRemaining() == 0;
+    }
+
+    /**
+     * Plays a single guess against the board. The guess number is used up, the hot/cold verdict is worked out
+     * against the previous guess and the stored distance is updated ready for the next guess. Distances are to the
+     * nearest treasure still hidden, and once a treasure is found the next guess is compared with the distance from
+     * its cell to the nearest of the treasures left.
+     *
+     * @param x The X coordinate of the guessed cell.
+     * @param y The Y coordinate of the guessed cell.
+     * @return The feedback to be shown to the player for this guess.
+     */
+    public GuessResult MakeGuess(int x, int y)
+    {
+        return MakeGuess(shape.Key(x, y));
+    }
+
+    /**
+     * Plays a single guess at a packed cell of a board with any number of axes, see MakeGuess(int, int).
+     *
+     * @param cell The packed cell guessed, see BoardShape.
+     * @return The feedback to be shown to the player for this guess.
+     */
+    public GuessResult MakeGuess(long cell)
+    {
+        guessNumber++;
+        if (IsWon())
+        {
+            return GuessResult.COLDER;
+        }
+        long measure = treasures.NearestMeasure(cell, metric);
+        GuessResult result = CheckWhetherHotterOrColder(measure);
+        int found = treasures.FindAt(cell);
+        if (found >= 0)
+        {
+            result = GuessResult.TREASURE;
+            treasures.Remove(found);
+            if (!IsWon())
+            {
+                measure = treasures.NearestMeasure(cell, metric);
+            }
+        }
+        //Updates the stored guess distance for the next guess.
+        lastGuessMeasure = measure;
+        lastGuessDistance = metric.DistanceOfMeasure(measure);
+        return result;
+    }
+
+    //Default Getters.
+    public BoardShape getShape() {
+        return shape;
+    }
+
+    public int getBoardWidth() {
+        return boardWidth;
+    }
+
+    public int getBoardHeight() {
+        return boardHeight;
+    }
+
+    public int getTreasureX() {
+        return treasureX;
+    }
+
+    public int getTreasureY() {
+        return treasureY;
+    }
+
+    public int getGuessNumber() {
+        return guessNumber;
+    }
+
+    public double getLastGuessDistance() {
+        return lastGuessDistance;
+    }
+
+    public long getGameSeed() {
+        return gameSeed;
+    }
+
+    public DistanceMetric getMetric() {
+        return metric;
+    }
+
+    public TreasureIndex getTreasures() {
+        return treasures;
+    }
+
+    public int getTreasureCount() {
+        return treasureCount;
+    }
+}
@@ -0,0 +1,246 @@
+package TreasureHunt;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runtime measurements of the game, shared by the whole JVM through INSTANCE. Holds latency histograms for guesses,
+ * saves and loads, counters for games started, won and reset, and the stack traces captured by the EdtWatchdog when
+ * the Event Dispatch Thread stalls. Everything is published over JMX as TreasureHunt:type=GameMetrics, and can also
+ * be printed periodically by setting the treasurehunt.metrics.logSeconds system property.
+ */
+public class GameMetrics implements GameMetricsMBean
+{
+    public static final GameMetrics INSTANCE = new GameMetrics();
+    //Number of EDT stall stack traces kept for inspection.
+    static final int RECENT_STALL_LIMIT = 20;
+
+    LatencyHistogram guessLatency = new LatencyHistogram();
+    LatencyHistogram saveLatency = new LatencyHistogram();
+    LatencyHistogram loadLatency = new LatencyHistogram();
+    //Time taken to build and show the game window, 0 until it has opened.
+    volatile long startupNanos = 0;
+    LongAdder gamesStarted = new LongAdder();
+    LongAdder gamesWon = new LongAdder();
+    LongAdder gamesReset = new LongAdder();
+    LongAdder edtStalls = new LongAdder();
+    final Deque<String> recentStalls = new ArrayDeque<>();
+    boolean registered = false;
+
+    /**
+     * Publishes the metrics over JMX and starts the periodic log dump if it has been asked for. Only the first call
+     * has any effect.
+     */
+    public synchronized void Register()
+    {
+        if (registered)
+        {
+            return;
+        }
+        registered = true;
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("TreasureHunt:type=GameMetrics"));
+        }
+        catch(Exception ex)
+        {
+            System.out.println(ex.getMessage());
+        }
+
+        long logSeconds = Long.getLong("treasurehunt.metrics.logSeconds", 0);
+        if (logSeconds > 0)
+        {
+            ScheduledExecutorService logger = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "GameMetrics logger");
+                thread.setDaemon(true);
+                return thread;
+            });
+            logger.scheduleAtFixedRate(() -> System.out.println(Dump()), logSeconds, logSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    public void RecordGuess(long nanos)
+    {
+        guessLatency.Record(nanos);
+    }
+
+    public void RecordSave(long nanos)
+    {
+        saveLatency.Record(nanos);
+    }
+
+    public void RecordLoad(long nanos)
+    {
+        loadLatency.Record(nanos);
+    }
+
+    public void RecordStartup(long nanos)
+    {
+        startupNanos = nanos;
+    }
+
+    public void GameStarted()
+    {
+        gamesStarted.increment();
+    }
+
+    public void GameWon()
+    {
+        gamesWon.increment();
+    }
+
+    public void GameReset()
+    {
+        gamesReset.increment();
+    }
+
+    /**
+     * Counts the games started, won and reset from the events of a BoardEventStream.
+     */
+    public void RecordEvent(BoardEvent event)
+    {
+        switch (event.kind)
+        {
+            case BoardEvent.START:
+                GameStarted();
+                break;
+            case BoardEvent.RESET:
+                GameReset();
+                GameStarted();
+                break;
+            case BoardEvent.WIN:
+                GameWon();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Records a stall of the Event Dispatch Thread along with where it was stuck.
+     *
+     * @param millis How long the event had been running when the stall was noticed.
+     * @param stack The stack of the Event Dispatch Thread at that moment.
+     */
+    public void RecordEdtStall(long millis, StackTraceElement[] stack)
+    {
+        edtStalls.increment();
+        StringBuilder trace = new StringBuilder("EDT stalled for " + millis + "ms");
+        for (StackTraceElement element : stack)
+        {
+            trace.append("\n\tat ").append(element);
+        }
+        synchronized (recentStalls)
+        {
+            if (recentStalls.size() == RECENT_STALL_LIMIT)
+            {
+                recentStalls.removeFirst();
+            }
+            recentStalls.addLast(trace.toString());
+        }
+    }
+
+    @Override
+    public long getGuessCount() {
+        return guessLatency.Count();
+    }
+
+    @Override
+    public double getGuessMeanMicros() {
+        return guessLatency.MeanMicros();
+    }
+
+    @Override
+    public double getGuessP99Micros() {
+        return guessLatency.PercentileMicros(0.99);
+    }
+
+    @Override
+    public double getGuessMaxMicros() {
+        return guessLatency.MaxMicros();
+    }
+
+    @Override
+    public long getSaveCount() {
+        return saveLatency.Count();
+    }
+
+    @Override
+    public double getSaveP99Micros() {
+        return saveLatency.PercentileMicros(0.99);
+    }
+
+    @Override
+    public double getSaveMaxMicros() {
+        return saveLatency.MaxMicros();
+    }
+
+    @Override
+    public long getLoadCount() {
+        return loadLatency.Count();
+    }
+
+    @Override
+    public double getLoadP99Micros() {
+        return loadLatency.PercentileMicros(0.99);
+    }
+
+    @Override
+    public double getLoadMaxMicros() {
+        return loadLatency.MaxMicros();
+    }
+
+    @Override
+    public double getStartupMillis() {
+        return startupNanos / 1000000.0;
+    }
+
+    @Override
+    public long getGamesStarted() {
+        return gamesStarted.sum();
+    }
+
+    @Override
+    public long getGamesWon() {
+        return gamesWon.sum();
+    }
+
+    @Override
+    public long getGamesReset() {
+        return gamesReset.sum();
+    }
+
+    @Override
+    public long getEdtStallCount() {
+        return edtStalls.sum();
+    }
+
+    @Override
+    public String[] getRecentEdtStalls() {
+        synchronized (recentStalls)
+        {
+            return recentStalls.toArray(new String[0]);
+        }
+    }
+
+    /**
+     * @return Every metric as readable text, as printed by the periodic log dump.
+     */
+    @Override
+    public String Dump()
+    {
+        return "TreasureHunt metrics"
+                + "\n  guess: " + guessLatency
+                + "\n  save:  " + saveLatency
+                + "\n  load:  " + loadLatency
+                + "\n  startup=" + String.format("%.1f", getStartupMillis()) + "ms"
+                + "\n  games started=" + getGamesStarted() + " won=" + getGamesWon() + " reset=" + getGamesReset()
+                + "\n  edt stalls=" + getEdtStallCount();
+    }
+}
@@ -0,0 +1,31 @@
+package TreasureHunt;
+
+/**
+ * Management interface through which GameMetrics is published over JMX.
+ */
+public interface GameMetricsMBean
+{
+    long getGuessCount();
+    double getGuessMeanMicros();
+    double getGuessP99Micros();
+    double getGuessMaxMicros();
+
+    long getSaveCount();
+    double getSaveP99Micros();
+    double getSaveMaxMicros();
+
+    long getLoadCount();
+    double getLoadP99Micros();
+    double getLoadMaxMicros();
+
+    double getStartupMillis();
+
+    long getGamesStarted();
+    long getGamesWon();
+    long getGamesReset();
+
+    long getEdtStallCount();
+    String[] getRecentEdtStalls();
+
+    String Dump();
+}
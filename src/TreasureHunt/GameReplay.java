@@ -0,0 +1,131 @@
+package TreasureHunt;
+
+import java.util.SplittableRandom;
+
+/**
+ * Plays a recorded sequence of guesses back through a GameEngine started from the seed of the original game. As the
+ * treasure position comes from the seed, the replay hands out exactly the verdicts the player saw. Guesses can be
+ * stepped through one at a time, as the GameScreen does, or run in a single allocation free loop, which lets a
+ * reported game or a large batch of recorded games be checked against the hot/cold rules headlessly.
+ */
+public class GameReplay
+{
+    GameEngine engine;
+    GuessRecording recording;
+    long seed;
+    //Index of the next guess to replay.
+    int position = 0;
+
+    /**
+     * @param boardWidth The number of cells along the X-axis of the original board.
+     * @param boardHeight The number of cells along the Y-axis of the original board.
+     * @param seed The seed of the original game.
+     * @param recording The guesses of the original game.
+     */
+    public GameReplay(int boardWidth, int boardHeight, long seed, GuessRecording recording)
+    {
+        this(boardWidth, boardHeight, seed, recording, DistanceMetric.EUCLIDEAN);
+    }
+
+    /**
+     * @param boardWidth The number of cells along the X-axis of the original board.
+     * @param boardHeight The number of cells along the Y-axis of the original board.
+     * @param seed The seed of the original game.
+     * @param recording The guesses of the original game.
+     * @param metric The metric the original game measured distances with.
+     */
+    public GameReplay(int boardWidth, int boardHeight, long seed, GuessRecording recording, DistanceMetric metric)
+    {
+        this(BoardShape.Plane(boardWidth, boardHeight), seed, recording, metric);
+    }
+
+    /**
+     * @param shape The size of the original board along each axis.
+     * @param seed The seed of the original game.
+     * @param recording The guesses of the original game, as packed cells of the board.
+     * @param metric The metric the original game measured distances with.
+     */
+    public GameReplay(BoardShape shape, long seed, GuessRecording recording, DistanceMetric metric)
+    {
+        this.engine = new GameEngine(shape, new SplittableRandom(seed));
+        this.engine.setMetric(metric);
+        this.recording = recording;
+        this.seed = seed;
+        Restart();
+    }
+
+    /**
+     * Goes back to the start of the game.
+     */
+    public void Restart()
+    {
+        engine.StartGame(seed);
+        position = 0;
+    }
+
+    public boolean HasNext()
+    {
+        return position < recording.count;
+    }
+
+    /**
+     * Replays the next recorded guess.
+     *
+     * @return The verdict given for the guess.
+     */
+    public GuessResult Step()
+    {
+        GuessResult result = engine.MakeGuess(recording.cells[position]);
+        position++;
+        return result;
+    }
+
+    /**
+     * Replays every remaining guess, storing the ordinal of each verdict.
+     *
+     * @param verdicts Receives one verdict per guess, must hold at least the number of remaining guesses.
+     * @return The number of guesses replayed.
+     */
+    public int RunAll(byte[] verdicts)
+    {
+        int start = position;
+        long[] cells = recording.cells;
+        int count = recording.count;
+        for (int i = start; i < count; i++)
+        {
+            verdicts[i - start] = (byte) engine.MakeGuess(cells[i]).ordinal();
+        }
+        position = count;
+        return count - start;
+    }
+
+    /**
+     * Replays the whole game from the start and compares the verdicts against the ones expected.
+     *
+     * @param expected The ordinal of the verdict expected for each guess.
+     * @return The index of the first guess given a different verdict, or -1 if every verdict matched.
+     */
+    public int Verify(byte[] expected)
+    {
+        Restart();
+        int count = recording.count;
+        for (int i = 0; i < count; i++)
+        {
+            if (engine.MakeGuess(recording.cells[i]).ordinal() != expected[i])
+            {
+                position = i + 1;
+                return i;
+            }
+        }
+        position = count;
+        return -1;
+    }
+
+    public GameEngine getEngine() {
+        return engine;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+}
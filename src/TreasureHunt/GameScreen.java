@@ -12,62 +12,218 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.util.Random;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
 
 /**
  * The main game screen of the application where all user interaction takes place.
+ *
+ * The seed of the current game is shown in the window title. Starting the game with -Dtreasurehunt.seed=n plays
+ * the game with that seed first, and the Replay button plays the guesses of the current game again step by step.
+ * Every guess is kept in a BoardHistory, so guesses can be undone and redone or the timeline slider dragged to any
+ * earlier point of the game.
+ *
+ * Distances are measured with the metric named by -Dtreasurehunt.metric, Euclidean by default, and pressing H shows
+ * or hides a heat map of every cell's distance from the nearest hidden treasure. Starting the game with
+ * -Dtreasurehunt.treasures=n hides n treasures on the board, all of which must be found to win.
+ *
+ * Starting the game with -Dtreasurehunt.axes=5 or -Dtreasurehunt.axes=5x3 adds axes of those sizes after X and Y, and
+ * the window then shows the board one 2D slice at a time. Page Up and Page Down move between the slices.
+ *
+ * Every guess, win, reset, replay and load is published to a BoardEventStream, which observers such as the metrics
+ * recorder read on their own threads rather than on the Event Dispatch Thread.
  */
-public class GameScreen extends JFrame implements ActionListener
+public class GameScreen extends JFrame implements ActionListener, CellClickListener
 {
+    //Boards larger than this along either side are drawn by a single BoardPanel instead of a grid of buttons.
+    static final int SMALL_BOARD_LIMIT = 20;
+    static final int CELL_SIZE = 30;
+    //Size in pixels of the scrollable viewport used for large boards.
+    static final int VIEWPORT_SIZE = 318;
+    //Size in pixels of the minimap shown beside the viewport of a large board.
+    static final int MINIMAP_SIZE = 150;
+
     FileManager file = new FileManager();
+    //Records every guess after the first save or load so the game is saved as it is played.
+    GuessJournal journal = new GuessJournal(file);
+    //Carries out saving and loading on a background thread so the window never waits on the disk.
+    BackgroundFileManager background = new BackgroundFileManager(journal);
+    //Set while a load is running, during which the board ignores input as it is about to be replaced.
+    boolean loading = false;
+    //Set while the Replay button is stepping through the recorded guesses, during which the board ignores input.
+    boolean replaying = false;
+    //Set once the current game has been won, so finding the treasure again after an undo is not another win.
+    boolean gameWon = false;
+    //Set once the player has moved through the history of the current game, which keeps it off the statistics.
+    boolean historyUsed = false;
+    //Milliseconds between the guesses of a replay.
+    static final int REPLAY_STEP_DELAY = 250;
+    //Set while a compaction started by the journal growing large is waiting to run.
+    boolean compactionQueued = false;
+    //Set when the game changed in a way the journal cannot record while a compaction was already queued.
+    boolean compactAgain = false;
+    //Set while the timeline slider is being moved by the game rather than by the player.
+    boolean updatingTimeline = false;
+    //Set while the heat map overlay is shown.
+    boolean showingHeatMap = false;
     JLabel lblTitle;
     JButton btnReset;
     JButton btnLoad,btnSave;
+    JButton btnReplay;
+    JButton btnUndo,btnRedo;
+    JButton btnSaves;
+    JButton btnStats;
+    //Every finished game, read in the background while the window opens. Null if the stats file could not be opened.
+    StatsStore stats;
+    //Named save slots and their previews, opened the first time the save browser is shown.
+    SaveLibrary library;
+    ThumbnailCache thumbnails;
+    //Saves the startup check repaired or quarantined, applied to the library once it is open. Null if none were.
+    SaveIntegrityScanner.Report integrityReport;
+    JSlider timeline;
 
-    //An array of custom game button components - See GameButton Class
-    GameButton[][] gameButtons = new GameButton[10][10];
+    //An array of custom game button components - See GameButton Class. Only used for small boards.
+    GameButton[][] gameButtons;
+    //Painted board and its scrolling viewport. Only used for large boards.
+    BoardPanel boardPanel;
+    JScrollPane boardScroller;
+    //Overview of the whole board beside the viewport. Only used for large boards.
+    MinimapPanel minimapPanel;
     SpringLayout myLayout = new SpringLayout();
+    int boardWidth;
+    int boardHeight;
+    //Size of the board along every axis, X and Y first.
+    BoardShape shape;
+    //Index of the slice being shown, see BoardShape.SliceAt.
+    long sliceIndex = 0;
+    //State of every cell on the board, drawn by either the button grid or the painted board.
+    BoardState board;
 
-    //Random class to generate random numbers for treasure location.
-    Random rand = new Random();
-    GameButton treasure;
-    //Distance of the treasure from the last button pressed.
-    double lastGuessDistance = 100;
-    int guessNumber = 1;
+    //Holds the treasure position, guess counter and hot/cold rules for the current game.
+    GameEngine engine;
+    GameMetrics metrics = GameMetrics.INSTANCE;
+    //Every guess, win, reset and load of the window's games, for observers that must not hold up the window.
+    BoardEventStream events = new BoardEventStream();
+    BoardEventPump eventPump = new BoardEventPump();
+    //Guesses of the current game, in order, so it can be replayed.
+    GuessRecording recording = new GuessRecording();
+    javax.swing.Timer replayTimer;
+    //Every step of the current game, for undo, redo and the timeline.
+    BoardHistory history = new BoardHistory();
 
     /**
-     * Primary constructor of GameScreen. Initiates GUI building and setup of the game state for the first game.
+     * Default constructor of GameScreen which opens the standard 10 x 10 board.
      */
     public GameScreen()
     {
+        this(10, 10);
+    }
+
+    /**
+     * Primary constructor of GameScreen. Initiates GUI building and setup of the game state for the first game.
+     * Small boards are built from GameButtons while large boards use a scrollable BoardPanel.
+     *
+     * @param boardWidth The number of cells along the X-axis.
+     * @param boardHeight The number of cells along the Y-axis.
+     */
+    public GameScreen(int boardWidth, int boardHeight)
+    {
+        long start = System.nanoTime();
+        this.boardWidth = boardWidth;
+        this.boardHeight = boardHeight;
+        String axes = System.getProperty("treasurehunt.axes");
+        shape = axes == null || axes.isBlank() ? BoardShape.Plane(boardWidth, boardHeight)
+                : BoardShape.Parse(boardWidth + "x" + boardHeight + "x" + axes);
+        boolean smallBoard = boardWidth <= SMALL_BOARD_LIMIT && boardHeight <= SMALL_BOARD_LIMIT;
+        int gridWidth = smallBoard ? boardWidth * CELL_SIZE : VIEWPORT_SIZE;
+        int gridHeight = smallBoard ? boardHeight * CELL_SIZE : VIEWPORT_SIZE;
+
         //Basic Frame Setup
-        setSize(400,425);
+        setSize(Math.max(460, 100 + gridWidth + (smallBoard ? 0 : MINIMAP_SIZE + 10)),155 + gridHeight);
         setLocation(400,200);
         setLayout(myLayout);
 
+        board = new BoardState(shape);
+
         //GUI Component building
         SetupHeaderLabel();
-        btnReset = ComponentBuilder.CreateAButton("RESET",80,25,300,350,this,myLayout,this);
-        btnLoad = ComponentBuilder.CreateAButton("Load",80,25,10,350,this,myLayout,this);
-        btnSave = ComponentBuilder.CreateAButton("Save",80,25,100,350,this,myLayout,this);
-        BuildGameButtonGrid();
-
+        //Both rows of controls sit at fixed positions in one panel, so the frame's SpringLayout only places the panel.
+        JPanel controls = ComponentBuilder.CreateAnAbsolutePanel(getWidth(),55,0,50 + gridHeight,myLayout,this);
+        btnReset = ComponentBuilder.CreateAButton("RESET",80,25,getWidth() - 100,0,this,controls);
+        btnLoad = ComponentBuilder.CreateAButton("Load",80,25,10,0,this,controls);
+        btnSave = ComponentBuilder.CreateAButton("Save",80,25,100,0,this,controls);
+        btnReplay = ComponentBuilder.CreateAButton("Replay",80,25,190,0,this,controls);
+        btnUndo = ComponentBuilder.CreateAButton("Undo",70,25,10,30,this,controls);
+        btnRedo = ComponentBuilder.CreateAButton("Redo",70,25,85,30,this,controls);
+        btnSaves = ComponentBuilder.CreateAButton("Saves",70,25,160,30,this,controls);
+        btnStats = ComponentBuilder.CreateAButton("Stats",70,25,235,30,this,controls);
+        SetupTimeline(controls, 30);
+        if (smallBoard)
+        {
+            BuildGameButtonGrid();
+        }
+        else
+        {
+            BuildBoardPanel();
+        }
 
         //Listener to look for Window Closing event triggered by pressing window close button.
         addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent windowEvent) {
                 super.windowClosing(windowEvent);
+                background.Close();
+                eventPump.Close();
                 System.exit(0);
             }
         });
 
-        //Sets treasure position for first game.
-        ResetTreasurePosition();
+        //Sets treasure position for first game, using the seed given on the command line if there is one.
+        engine = new GameEngine(shape, new SplittableRandom());
+        String metricName = System.getProperty("treasurehunt.metric");
+        if (metricName != null)
+        {
+            try
+            {
+                engine.setMetric(DistanceMetric.FromName(metricName));
+            }
+            catch(Exception ex)
+            {
+                System.out.println(ex.getMessage());
+            }
+        }
+        engine.setTreasureCount(Integer.getInteger("treasurehunt.treasures", 1));
+        Long seed = Long.getLong("treasurehunt.seed");
+        engine.StartGame(seed != null ? seed : engine.getGameSeed());
+        ShowSeed();
+        SetupHeatMapKey();
+        SetupSliceKeys();
+        StartHistory();
+        try
+        {
+            stats = new StatsStore(Paths.get("GameStats.dat"));
+        }
+        catch(Exception ex)
+        {
+            System.out.println(ex.getMessage());
+        }
 
-        //Final Frame Setup and Opening.
+        //Checks the saved games in the background, so the window never waits for the check.
+        new SaveIntegrityScanner(Paths.get("saves")).ScanAsync().whenComplete((report, error) ->
+                SwingUtilities.invokeLater(() -> ApplyIntegrityReport(report, error)));
+
+        //Publishes runtime metrics over JMX and starts watching the Event Dispatch Thread for stalls.
+        metrics.Register();
+        EdtWatchdog.Install(metrics);
+        eventPump.Subscribe(events, metrics::RecordEvent);
+        events.Publish(BoardEvent.START, engine.getGameSeed(), boardWidth, boardHeight, 0, null);
+
+        //Final Frame Setup and Opening. The frame is laid out once, here, with every component already in place.
         setResizable(false);
         setVisible(true);
+        metrics.RecordStartup(System.nanoTime() - start);
     }
 
     /**
@@ -79,121 +235,824 @@ public class GameScreen extends JFrame implements ActionListener
     public void actionPerformed(ActionEvent e)
     {
         //Activates if btnReset button is pressed.
-        if (e.getSource() == btnReset)
+        if (e.getSource() == btnReset && !loading)
+        {
+            StopReplay();
+            engine.ResetTreasurePosition();
+            ClearForNewGame();
+        }
+
+        if (e.getSource() == btnReplay && !loading && !replaying)
+        {
+            StartReplay();
+        }
+
+        if (e.getSource() == btnUndo && history.CanUndo())
         {
-            ResetTreasurePosition();
-            ResetButtonsToDefault();
+            MoveToStep(history.getCurrentStep() - 1);
+        }
+
+        if (e.getSource() == btnRedo && history.CanRedo())
+        {
+            MoveToStep(history.getCurrentStep() + 1);
         }
 
         //Gets the class type of the event source component and compares it against the
         //class type GameButton. If event source is a GameButton type object the enclosed functionality executes.
-        if (e.getSource().getClass().equals(GameButton.class))
+        if (e.getSource().getClass().equals(GameButton.class) && !loading && !replaying)
         {
             //Grabs the source GameButton of the event
             GameButton button = (GameButton)e.getSource();
-            //Calculates the unit distance(button distance) to the treasure target from the pressed button.
-            double distance = CalculateDistanceToTarget(button);
-            //Prints and then increments the current guess count.
-            button.setText(""+guessNumber);
-            guessNumber++;
-            //Provided user feedback
-            CheckWhetherHotterOrColder(button, distance);
-            CheckForWin(button);
-            //Updates the stored guess distance for the next press.
-            lastGuessDistance = distance;
-        }
-
-        if (e.getSource() == btnSave)
-        {
-            GameData game = new GameData();
-            game.guessNumber = guessNumber;
-            game.lastGuessDistance = lastGuessDistance;
-            game.treasurePosition = new Dimension(treasure.xPosition, treasure.yPosition);
-
-            GridCellData[][] grid = new GridCellData[10][10];
-            //Cycle through the Game grid, so we can read its values and save them to the data model.
-            for (int x = 0; x < gameButtons.length; x++)
+            HandleGuess(button.getxPosition(), button.getyPosition());
+        }
+
+        if (e.getSource() == btnSave && !replaying)
+        {
+            SaveInBackground();
+        }
+
+        if (e.getSource() == btnLoad && !replaying)
+        {
+            LoadInBackground();
+        }
+
+        if (e.getSource() == btnSaves && !loading && !replaying)
+        {
+            ShowSaveBrowser();
+        }
+
+        if (e.getSource() == btnStats)
+        {
+            ShowStats();
+        }
+    }
+
+    /**
+     * Clears the board and recording for the game the engine has just started and journals its seed.
+     */
+    private void ClearForNewGame()
+    {
+        ClearForGame(BoardEvent.RESET);
+    }
+
+    /**
+     * Clears the board and recording for the game the engine has just started, publishes the given event for it and
+     * journals its seed.
+     *
+     * @param kind RESET for a new game, or REPLAY when the same game is restarted to be replayed.
+     */
+    private void ClearForGame(byte kind)
+    {
+        //A replay is still the same game, so it keeps whether that game was won and whether it used the history.
+        if (kind == BoardEvent.RESET)
+        {
+            gameWon = false;
+            historyUsed = false;
+        }
+        ResetButtonsToDefault();
+        recording.Clear();
+        ShowSeed();
+        StartHistory();
+        RefreshHeatMap();
+        events.Publish(kind, engine.getGameSeed(), boardWidth, boardHeight, 0, null);
+        try
+        {
+            journal.AppendNewGame(engine.getGameSeed());
+        }
+        catch(Exception ex)
+        {
+            System.out.println(ex.getMessage());
+        }
+    }
+
+    /**
+     * Restarts the current game from its seed and plays the recorded guesses back onto the board one at a time. The
+     * board ignores the player until the replay has finished.
+     */
+    private void StartReplay()
+    {
+        GuessReplayStepper stepper = new GuessReplayStepper(recording.Copy());
+        if (stepper.recorded.getCount() == 0)
+        {
+            return;
+        }
+        engine.StartGame(engine.getGameSeed());
+        //Published as a replay rather than a reset, so observers do not count the replay as another game.
+        ClearForGame(BoardEvent.REPLAY);
+        replaying = true;
+        btnLoad.setEnabled(false);
+        btnSave.setEnabled(false);
+        replayTimer = new javax.swing.Timer(REPLAY_STEP_DELAY, stepper);
+        replayTimer.start();
+    }
+
+    /**
+     * Stops a running replay, leaving the guesses replayed so far on the board.
+     */
+    private void StopReplay()
+    {
+        if (!replaying)
+        {
+            return;
+        }
+        replayTimer.stop();
+        replaying = false;
+        btnLoad.setEnabled(true);
+        btnSave.setEnabled(true);
+    }
+
+    /**
+     * Plays one recorded guess each time the replay timer fires.
+     */
+    private class GuessReplayStepper implements ActionListener
+    {
+        GuessRecording recorded;
+        int next = 0;
+
+        GuessReplayStepper(GuessRecording recorded)
+        {
+            this.recorded = recorded;
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e)
+        {
+            if (!replaying)
             {
-                for (int y = 0; y < gameButtons[x].length; y++)
-                {
-                    //Create the object inside the grid position, so we can give it values.
-                    grid[x][y] = new GridCellData();
-                    //Set the text value of the game button into the grid.
-                    grid[x][y].text = gameButtons[x][y].getText();
-                    //Get the background colour fo the grid position as a text value
-                    String colourText = ConvertColourValueToText(gameButtons[x][y].getBackground());
-                    //Set the colour text value into the grid.
-                    grid[x][y].Colour = colourText;
-                }
+                return;
+            }
+            HandleGuess(recorded.getCell(next));
+            next++;
+            if (next == recorded.getCount())
+            {
+                StopReplay();
             }
-            //Put the grid we just created into the game data model.
-            game.gameGrid = grid;
+        }
+    }
+
+    /**
+     * Shows the seed of the current game in the window title so it can be quoted in bug reports, along with the
+     * metric and how many treasures have been found when they differ from a standard game.
+     */
+    private void ShowSeed()
+    {
+        DistanceMetric metric = engine.getMetric();
+        TreasureIndex treasures = engine.getTreasures();
+        setTitle("Treasure Hunt - game " + engine.getGameSeed()
+                + (metric == DistanceMetric.EUCLIDEAN ? "" : " (" + metric.name().toLowerCase() + ")")
+                + (treasures.getCount() == 1 ? "" : " - found " + (treasures.getCount() - treasures.getRemaining())
+                + " of " + treasures.getCount())
+                + (shape.IsFlat() ? "" : " - slice " + SliceName(board.getSlice())));
+    }
 
-            file.SaveDataToFile(game);
+    /**
+     * @return The coordinates of a slice along the axes after X and Y, such as (2, 0).
+     */
+    private String SliceName(long slice)
+    {
+        StringBuilder text = new StringBuilder("(");
+        for (int axis = 2; axis < shape.getDimensions(); axis++)
+        {
+            text.append(axis == 2 ? "" : ", ").append(shape.Coordinate(slice, axis));
         }
+        return text.append(')').toString();
+    }
+
+    /**
+     * Binds Page Up and Page Down anywhere in the window to moving between the slices of a board with more than two
+     * axes.
+     */
+    private void SetupSliceKeys()
+    {
+        if (shape.IsFlat())
+        {
+            return;
+        }
+        JRootPane root = getRootPane();
+        root.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke("PAGE_UP"), "nextSlice");
+        root.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke("PAGE_DOWN"), "previousSlice");
+        root.getActionMap().put("nextSlice", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                ShowSlice(sliceIndex + 1);
+            }
+        });
+        root.getActionMap().put("previousSlice", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                ShowSlice(sliceIndex - 1);
+            }
+        });
+    }
 
-        if (e.getSource() == btnLoad)
+    /**
+     * Shows another slice of the board, wrapping around from the last slice to the first.
+     *
+     * @param index The index of the slice, see BoardShape.SliceAt.
+     */
+    private void ShowSlice(long index)
+    {
+        sliceIndex = Math.floorMod(index, shape.SliceCount());
+        board.setSlice(shape.SliceAt(sliceIndex));
+        if (gameButtons != null)
         {
-            //Read the file to get the saved game data
-            GameData gameData = file.ReadDataFromFile();
-            //Use the dimension values from the gameData to set which grid position is the treasure cell
-            treasure = gameButtons[gameData.treasurePosition.width][gameData.treasurePosition.height];
-            //Set the counters from the previous game
-            guessNumber = gameData.guessNumber;
-            lastGuessDistance = gameData.lastGuessDistance;
+            for (int x = 0; x < boardWidth; x++)
+            {
+                for (int y = 0; y < boardHeight; y++)
+                {
+                    ShowCell(x, y);
+                }
+            }
+        }
+        else
+        {
+            boardPanel.repaint();
+            minimapPanel.Rebuild();
+        }
+        ShowSeed();
+        RefreshHeatMap();
+    }
+
+    /**
+     * Binds the H key anywhere in the window to showing and hiding the heat map.
+     */
+    private void SetupHeatMapKey()
+    {
+        JRootPane root = getRootPane();
+        root.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('H'), "toggleHeatMap");
+        root.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('h'), "toggleHeatMap");
+        root.getActionMap().put("toggleHeatMap", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                showingHeatMap = !showingHeatMap;
+                RefreshHeatMap();
+            }
+        });
+    }
 
-            ResetButtonsToDefault();
-            //Cycle through the game grid retrieved from the file
-            for (int x = 0; x < gameData.gameGrid.length; x++)
+    /**
+     * Redraws the heat map for the treasures still hidden, or removes it if it is hidden. The button grid tints
+     * each untouched button from a distance field of the whole board, while the painted board works out the field of
+     * the visible cells as it paints.
+     */
+    private void RefreshHeatMap()
+    {
+        if (gameButtons == null)
+        {
+            if (showingHeatMap)
+            {
+                boardPanel.SetHeatMap(engine);
+            }
+            else
             {
-                for (int y = 0; y < gameData.gameGrid[x].length; y++)
+                boardPanel.ClearHeatMap();
+            }
+            return;
+        }
+        long[] field = null;
+        if (showingHeatMap)
+        {
+            field = new long[boardWidth * boardHeight];
+            engine.FillDistanceField(board.getSlice(), 0, 0, boardWidth, boardHeight, field);
+        }
+        long maxMeasure = engine.HeatMapMaxMeasure(board.getSlice());
+        for (int x = 0; x < boardWidth; x++)
+        {
+            for (int y = 0; y < boardHeight; y++)
+            {
+                if (board.GetState(x, y) != CellState.UNTOUCHED)
                 {
-                    //Check ig the current game data cell is null or not
-                    if (gameData.gameGrid[x][y] == null)
+                    continue;
+                }
+                gameButtons[x][y].setBackground(field == null ? Color.white
+                        : BoardPanel.HeatColour(field[x * boardHeight + y], maxMeasure));
+            }
+        }
+    }
+
+    /**
+     * Takes a snapshot of the game and saves it on the background worker, showing a progress dialog with a cancel
+     * button if the save takes a while. Saving writes a fresh snapshot and starts the journal again from it.
+     */
+    private void SaveInBackground()
+    {
+        btnSave.setEnabled(false);
+        ProgressTracker progress = new ProgressTracker("Saving game");
+        background.SaveAsync(BuildGameData(), progress).whenComplete((ignored, error) ->
+                SwingUtilities.invokeLater(() -> {
+                    progress.Close();
+                    btnSave.setEnabled(!loading && !replaying);
+                    ReportFailure("saved", error);
+                }));
+    }
+
+    /**
+     * Loads the saved game on the background worker and applies it to the board back on the Event Dispatch Thread.
+     * The board ignores guesses until the load has finished.
+     */
+    private void LoadInBackground()
+    {
+        loading = true;
+        btnLoad.setEnabled(false);
+        btnSave.setEnabled(false);
+        ProgressTracker progress = new ProgressTracker("Loading game");
+        background.LoadAsync(progress).whenComplete((gameData, error) ->
+                SwingUtilities.invokeLater(() -> {
+                    progress.Close();
+                    loading = false;
+                    btnLoad.setEnabled(true);
+                    btnSave.setEnabled(true);
+                    if (error != null)
+                    {
+                        ReportFailure("loaded", error);
+                        return;
+                    }
+                    if (!ApplyGameData(gameData))
                     {
-                        continue;
+                        //Recovering the save started the journal on it, but the save cannot be continued here.
+                        try
+                        {
+                            journal.Stop();
+                        }
+                        catch(Exception ex)
+                        {
+                            System.out.println(ex.getMessage());
+                        }
                     }
-                    //Retrieve the game data cell text and place it in the game buttons grid at the same position.
-                    String text = gameData.gameGrid[x][y].text;
-                    gameButtons[x][y].setText(text);
-                    //Retrieve the game data cell colour and place it in the game buttons grid at the same position.
-                    //This will require converting the colour text name to an official colour value.
-                    Color colour = ConvertColourTextToValue(gameData.gameGrid[x][y].Colour);
-                    gameButtons[x][y].setBackground(colour);
+                }));
+    }
+
+    /**
+     * Reports the saves the startup check repaired or quarantined, and brings the library into line with them if it
+     * is already open. Called on the Event Dispatch Thread.
+     */
+    private void ApplyIntegrityReport(SaveIntegrityScanner.Report report, Throwable error)
+    {
+        if (error != null)
+        {
+            System.out.println(error.getMessage());
+            return;
+        }
+        if (!report.HasChanges())
+        {
+            return;
+        }
+        System.out.println(report);
+        integrityReport = report;
+        if (library != null)
+        {
+            try
+            {
+                library.ApplyScan(report);
+            }
+            catch(Exception ex)
+            {
+                System.out.println(ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Opens the browser of named save slots, opening the library in the "saves" directory the first time.
+     */
+    private void ShowSaveBrowser()
+    {
+        try
+        {
+            if (library == null)
+            {
+                library = new SaveLibrary(Paths.get("saves"));
+                thumbnails = new ThumbnailCache(Paths.get("saves", "thumbnails"));
+                if (integrityReport != null)
+                {
+                    library.ApplyScan(integrityReport);
                 }
             }
         }
+        catch(Exception ex)
+        {
+            JOptionPane.showMessageDialog(this, "The saved games could not be opened. " + ex.getMessage());
+            return;
+        }
+        new SaveBrowser(this, library, thumbnails, new SaveBrowser.SlotListener() {
+            @Override
+            public void SaveToSlot(String name) {
+                background.SaveSlotAsync(library, name, BuildGameData()).whenComplete((ignored, error) ->
+                        SwingUtilities.invokeLater(() -> ReportFailure("saved", error)));
+            }
+
+            @Override
+            public void LoadFromSlot(String name) {
+                loading = true;
+                btnLoad.setEnabled(false);
+                btnSave.setEnabled(false);
+                background.LoadSlotAsync(library, name).whenComplete((gameData, error) ->
+                        SwingUtilities.invokeLater(() -> {
+                            loading = false;
+                            btnLoad.setEnabled(!replaying);
+                            btnSave.setEnabled(!replaying);
+                            if (error != null)
+                            {
+                                ReportFailure("loaded", error);
+                                return;
+                            }
+                            //A slot from another board size leaves the game on screen, and its journal, alone.
+                            //Otherwise the journal holds the game that was replaced, so the game is saved afresh.
+                            if (ApplyGameData(gameData) && journal.IsActive())
+                            {
+                                QueueCompaction();
+                            }
+                        }));
+            }
+        }).setVisible(true);
     }
 
-    private String ConvertColourValueToText(Color colourValue)
+    /**
+     * Shows the statistics of the games finished on this board size.
+     */
+    private void ShowStats()
     {
-        if (colourValue == Color.red)
+        if (stats == null || !stats.IsLoaded())
         {
-            return "RED";
+            JOptionPane.showMessageDialog(this, stats == null ? "Statistics are not available."
+                    : "Statistics are still loading, please try again in a moment.");
+            return;
         }
-        else if(colourValue == Color.cyan)
+        try
         {
-            return  "BLUE";
+            StatsStore.BoardStats boardStats = stats.Stats(boardWidth, boardHeight);
+            if (boardStats == null)
+            {
+                JOptionPane.showMessageDialog(this, "No games have been finished on this board yet.");
+                return;
+            }
+            StringBuilder text = new StringBuilder();
+            text.append("Games finished: ").append(boardStats.getGames()).append('\n');
+            text.append(String.format("Average guesses: %.2f (last %d games: %.2f)%n", boardStats.AverageGuesses(),
+                    StatsStore.ROLLING_COUNT, boardStats.RollingAverageGuesses()));
+            text.append("Median: ").append(boardStats.Percentile(0.5)).append("  90th percentile: ")
+                    .append(boardStats.Percentile(0.9)).append("\n\nFewest guesses:\n");
+            int rank = 1;
+            for (StatsStore.FinishedGame game : boardStats.Top())
+            {
+                text.append(rank++).append(". ").append(game).append('\n');
+            }
+            JOptionPane.showMessageDialog(this, text.toString(), "Statistics", JOptionPane.INFORMATION_MESSAGE);
         }
-        else
+        catch(Exception ex)
         {
-            return "WHITE";
+            System.out.println(ex.getMessage());
         }
     }
 
-    private Color ConvertColourTextToValue(String colourText)
+    /**
+     * Shows the player why a save or load failed. Cancelled operations are not reported.
+     *
+     * @param action The past tense of the operation, used in the message.
+     * @param error The failure, or null if the operation succeeded.
+     */
+    private void ReportFailure(String action, Throwable error)
     {
-        if (colourText.equalsIgnoreCase("RED"))
+        if (error == null)
         {
-            return Color.red;
+            return;
         }
-        else if(colourText.equalsIgnoreCase("BLUE"))
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof CancellationException)
         {
-            return Color.cyan;
+            return;
+        }
+        JOptionPane.showMessageDialog(this, "The game could not be " + action + ". " + cause.getMessage());
+    }
+
+    /**
+     * Replaces the current game with a loaded one.
+     *
+     * @param gameData The game read from the save.
+     * @return false, leaving the current game as it was, if the save was played on a board of another size.
+     */
+    private boolean ApplyGameData(GameData gameData)
+    {
+        //A save can only be continued on a board of the same size.
+        if (!BoardShape.Of(gameData).equals(shape))
+        {
+            JOptionPane.showMessageDialog(this, "The saved game was played on a "
+                    + BoardShape.Of(gameData).toString().replace("x", " x ") + " board.");
+            return false;
+        }
+        //Use the dimension values from the gameData to set which grid position is the treasure cell
+        //and set the counters from the previous game
+        TreasureIndex treasures = TreasureIndex.Of(gameData);
+        engine.setMetric(gameData.metric);
+        engine.setTreasureCount(treasures.getCount());
+        engine.RestoreGame(treasures, gameData.guessNumber, gameData.lastGuessDistance, gameData.seed);
+        gameWon = engine.IsWon();
+        historyUsed = false;
+        events.Publish(BoardEvent.LOAD, gameData.seed, boardWidth, boardHeight, gameData.guessNumber, null);
+        ShowSeed();
+
+        //Copy the loaded cells into the board and redraw only the cells that differ.
+        ShowCells(board.CopyFrom(gameData.board));
+        recording = GuessRecording.FromBoard(board);
+        StartHistory();
+        RefreshHeatMap();
+        return true;
+    }
+
+    /**
+     * Copies the current state of the game and board into a GameData model ready to be saved.
+     *
+     * @return The game data describing the current game.
+     */
+    private GameData BuildGameData()
+    {
+        GameData game = new GameData();
+        game.boardWidth = boardWidth;
+        game.boardHeight = boardHeight;
+        game.shape = shape;
+        game.guessNumber = engine.getGuessNumber();
+        game.lastGuessDistance = engine.getLastGuessDistance();
+        game.treasurePosition = new Dimension(engine.getTreasureX(), engine.getTreasureY());
+        game.treasures = engine.getTreasures().Copy();
+        game.seed = engine.getGameSeed();
+        game.metric = engine.getMetric();
+
+        //Copying the packed board is just two array copies, so the snapshot does not hold up the player.
+        game.board = board.Copy();
+        return game;
+    }
+
+    /**
+     * Shows the progress of a background save or load in a ProgressMonitor and passes the cancel button back to the
+     * background worker. Updates arrive on the worker thread and are handed to the Event Dispatch Thread. The cancel
+     * button is checked on a timer of its own, as the percentage may not move again for a long time, or at all.
+     */
+    private class ProgressTracker implements FileProgress
+    {
+        static final int CANCEL_POLL_DELAY = 100;
+
+        ProgressMonitor monitor;
+        javax.swing.Timer cancelPoll;
+        volatile boolean cancelled = false;
+        volatile int lastPercent = -1;
+
+        ProgressTracker(String message)
+        {
+            monitor = new ProgressMonitor(GameScreen.this, message, null, 0, 100);
+            cancelPoll = new javax.swing.Timer(CANCEL_POLL_DELAY, e -> {
+                if (monitor.isCanceled())
+                {
+                    cancelled = true;
+                    cancelPoll.stop();
+                }
+            });
+            cancelPoll.start();
+        }
+
+        @Override
+        public boolean Report(long done, long total)
+        {
+            int percent = total == 0 ? 0 : (int) (done * 100 / total);
+            if (percent != lastPercent)
+            {
+                lastPercent = percent;
+                SwingUtilities.invokeLater(() -> monitor.setProgress(percent));
+            }
+            return !cancelled;
+        }
+
+        void Close()
+        {
+            cancelPoll.stop();
+            monitor.close();
+        }
+    }
+
+    /**
+     * Handles a click on a cell of the painted board used for large boards.
+     *
+     * @param x The X coordinate of the clicked cell.
+     * @param y The Y coordinate of the clicked cell.
+     */
+    @Override
+    public void CellClicked(int x, int y)
+    {
+        if (loading || replaying)
+        {
+            return;
+        }
+        HandleGuess(x, y);
+    }
+
+    /**
+     * Plays a guess at the given cell of the slice being shown.
+     *
+     * @param x The X coordinate of the guessed cell.
+     * @param y The Y coordinate of the guessed cell.
+     */
+    private void HandleGuess(int x, int y)
+    {
+        HandleGuess(board.KeyOf(x, y));
+    }
+
+    /**
+     * Plays a guess at the given cell through the game engine and shows the result on the board, first moving to the
+     * cell's slice if another slice is being shown, as happens during a replay.
+     *
+     * @param key The board key of the guessed cell.
+     */
+    private void HandleGuess(long key)
+    {
+        long start = System.nanoTime();
+        if (shape.SliceOf(key) != board.getSlice())
+        {
+            ShowSlice(shape.SliceIndex(key));
+        }
+        int x = shape.XOf(key);
+        int y = shape.YOf(key);
+        //Records the current guess count before the engine moves on to the next one.
+        int guess = engine.getGuessNumber();
+        //Lets the engine work out the distance and hot/cold verdict for the guessed cell.
+        GuessResult result = engine.MakeGuess(key);
+        //Provided user feedback
+        board.SetCellAt(key, (byte) CellState.FromResult(result).ordinal(), guess);
+        events.Publish(BoardEvent.GUESS, engine.getGameSeed(), x, y, guess, result);
+        ShowCell(x, y);
+        recording.Add(key);
+        history.Record(key, board.GetPackedAt(key), engine.getGuessNumber(), engine.getLastGuessDistance());
+        UpdateTimeline();
+        if (result == GuessResult.TREASURE)
+        {
+            ShowSeed();
+            RefreshHeatMap();
+        }
+        //A replay, or a guess after undoing past the win, finds the treasure again, but the game was already won and
+        //recorded the first time. A game the player undid guesses in is kept off the statistics altogether, and the
+        //statistics are kept by width and height, so games on boards with more axes are left out too.
+        if (result == GuessResult.TREASURE && engine.IsWon() && !replaying && !gameWon)
+        {
+            gameWon = true;
+            events.Publish(BoardEvent.WIN, engine.getGameSeed(), x, y, guess, result);
+            if (stats != null && !historyUsed && shape.IsFlat())
+            {
+                background.RecordFinishedGameAsync(stats, boardWidth, boardHeight, guess, engine.getGameSeed())
+                        .whenComplete((ignored, error) -> {
+                            if (error != null)
+                            {
+                                System.out.println(error.getMessage());
+                            }
+                        });
+            }
+        }
+
+        //Autosaves the guess, folding the journal into a new snapshot once it has grown large.
+        try
+        {
+            journal.AppendGuess(key, guess, result);
+            if (journal.NeedsCompaction())
+            {
+                QueueCompaction();
+            }
+        }
+        catch(Exception ex)
+        {
+            System.out.println(ex.getMessage());
+        }
+        metrics.RecordGuess(System.nanoTime() - start);
+    }
+
+    /**
+     * Folds the journal into a fresh snapshot of the game on the background worker. If one is already queued, another
+     * is queued once it finishes so the latest state of the game is the one that ends up saved.
+     */
+    private void QueueCompaction()
+    {
+        if (compactionQueued)
+        {
+            compactAgain = true;
+            return;
+        }
+        compactionQueued = true;
+        background.SaveAsync(BuildGameData(), FileProgress.NONE).whenComplete((ignored, error) ->
+                SwingUtilities.invokeLater(() -> {
+                    compactionQueued = false;
+                    ReportFailure("saved", error);
+                    if (compactAgain)
+                    {
+                        compactAgain = false;
+                        QueueCompaction();
+                    }
+                }));
+    }
+
+    /**
+     * Starts the history again from the current board, used whenever a game starts or is loaded.
+     */
+    private void StartHistory()
+    {
+        history.Start(board, engine.getGuessNumber(), engine.getLastGuessDistance());
+        UpdateTimeline();
+    }
+
+    /**
+     * Moves the game to another step of its history, redrawing only the cells that differ. The journal cannot record
+     * a jump back in time, so a game being journalled is saved afresh.
+     *
+     * @param step The step to move to.
+     */
+    private void MoveToStep(int step)
+    {
+        if (loading || replaying || step == history.getCurrentStep())
+        {
+            UpdateTimeline();
+            return;
+        }
+        ShowCells(history.MoveTo(step, board));
+        historyUsed = true;
+        TreasureIndex treasures = engine.getTreasures();
+        treasures.MarkFoundFromBoard(board);
+        engine.RestoreGame(treasures, history.getGuessNumber(), history.getLastGuessDistance(),
+                engine.getGameSeed());
+        recording = GuessRecording.FromBoard(board);
+        UpdateTimeline();
+        ShowSeed();
+        RefreshHeatMap();
+        if (journal.IsActive())
+        {
+            QueueCompaction();
+        }
+    }
+
+    /**
+     * Brings the undo and redo buttons and the timeline slider into line with the history.
+     */
+    private void UpdateTimeline()
+    {
+        btnUndo.setEnabled(history.CanUndo());
+        btnRedo.setEnabled(history.CanRedo());
+        updatingTimeline = true;
+        timeline.setMaximum(Math.max(0, history.getStepCount() - 1));
+        timeline.setValue(history.getCurrentStep());
+        updatingTimeline = false;
+    }
+
+    /**
+     * Creates the timeline slider beside the undo and redo buttons. Dragging it moves the board through the history.
+     *
+     * @param controls The panel of controls the slider is placed in.
+     * @param yPos The distance of the slider from the top of the panel.
+     */
+    private void SetupTimeline(JPanel controls, int yPos)
+    {
+        timeline = new JSlider(0, 0, 0);
+        timeline.addChangeListener(e -> {
+            if (!updatingTimeline)
+            {
+                MoveToStep(timeline.getValue());
+            }
+        });
+        ComponentBuilder.PlaceAComponent(timeline, getWidth() - 330, 25, 310, yPos, controls);
+    }
+
+    /**
+     * Draws a single cell of the board onto whichever board view is in use.
+     *
+     * @param x The X coordinate of the cell.
+     * @param y The Y coordinate of the cell.
+     */
+    private void ShowCell(int x, int y)
+    {
+        if (gameButtons != null)
+        {
+            gameButtons[x][y].ShowCell(board.GetState(x, y), board.GetCellText(x, y));
         }
         else
         {
-            return Color.white;
+            boardPanel.RepaintCell(x, y);
+            minimapPanel.CellChanged(board.KeyOf(x, y));
+        }
+    }
+
+    /**
+     * Redraws a set of cells in one go, such as the cells that changed during a load or reset. The painted board
+     * repaints the area covering all of them with a single request.
+     *
+     * @param keys The board keys of the cells to redraw.
+     */
+    private void ShowCells(long[] keys)
+    {
+        if (gameButtons == null)
+        {
+            boardPanel.RepaintCells(keys);
+            minimapPanel.CellsChanged(keys);
+            return;
+        }
+        for (long key : keys)
+        {
+            if (shape.SliceOf(key) == board.getSlice())
+            {
+                ShowCell(shape.XOf(key), shape.YOf(key));
+            }
         }
     }
 
@@ -218,123 +1077,140 @@ public class GameScreen extends JFrame implements ActionListener
         lblTitle.setBorder(new LineBorder(Color.black,2));
     }
 
-    /**
-     * Calculates a random X and Y coordinate to be used to determine the position of the treasure.
-     * Stores treasure button into variable for use and resets distance and count values for the next game.
-     */
-    private void ResetTreasurePosition() {
-        int xPos = rand.nextInt(10);
-        int yPos = rand.nextInt(10);
-        treasure = gameButtons[xPos][yPos];
-        lastGuessDistance = 100;
-        guessNumber = 1;
-    }
-
     /**
      * Utilises a 2D Array to build a grid of interactable game button components to compose a game board. Each
      * button's position is calculated during the loop iterations and the position is stored into the individual
      * buttons to assist in later calculations.
      */
     private void BuildGameButtonGrid() {
-        for (int x = 0; x < gameButtons.length; x++)
+        gameButtons = BuildGameButtonGrid(boardWidth, boardHeight, this, myLayout, this);
+    }
+
+    /**
+     * Builds a grid of GameButtons of the given size and places it into the given container. The buttons are added
+     * to a single grid panel, which is the only component the SpringLayout has to position. Kept separate from the
+     * frame so the grid can also be built on its own, such as by the benchmarks in a headless environment.
+     *
+     * @param boardWidth The number of buttons along the X-axis.
+     * @param boardHeight The number of buttons along the Y-axis.
+     * @param listener The listener every button sends its presses to.
+     * @param layout The SpringLayout used to position the grid.
+     * @param container The container the grid is added to and positioned against.
+     * @return The completed grid of buttons.
+     */
+    static GameButton[][] BuildGameButtonGrid(int boardWidth, int boardHeight, ActionListener listener,
+                                              SpringLayout layout, Container container) {
+        JPanel grid = ComponentBuilder.CreateAGridPanel(boardWidth, boardHeight, CELL_SIZE, CELL_SIZE, 40, 40,
+                layout, container);
+        GameButton[][] buttons = new GameButton[boardWidth][boardHeight];
+        //The grid fills a row at a time, so the buttons are created along each row in turn.
+        for (int y = 0; y < boardHeight; y++)
         {
-            for (int y = 0; y < gameButtons[x].length; y++)
+            for (int x = 0; x < boardWidth; x++)
             {
-                int buttonSize = 30;
-                int xPos = 40 + x * buttonSize;
-                int yPos = 40 + y * buttonSize;
-
-                CreateAGameButton(x, y, buttonSize, xPos, yPos);
+                buttons[x][y] = CreateAGameButton(x, y, CELL_SIZE, listener, grid);
             }
         }
+        return buttons;
     }
 
     /**
-     * Builds an individual GameButton object based upon the provided parameters and places it into the
-     * game screen JFrame.
-     *
-     * @param x X coordinate position inside the 2D array.
-     * @param y Y coordinate position inside the 2D array.
-     * @param buttonSize The desired height and width size of the game buttons in the grid.
-     * @param xPos The distance of the button from the left of the frame along the x-Axis.
-     * @param yPos The distance of the button from the Top of the frame along the y-Axis.
-     */
-    private void CreateAGameButton(int x, int y, int buttonSize, int xPos, int yPos) {
-        //Creates button and sets initial size and position on the board before adding
-        //listener and adding to frame.
-        gameButtons[x][y] = new GameButton();
-        gameButtons[x][y].setPreferredSize(new Dimension(buttonSize,buttonSize));
-        gameButtons[x][y].addActionListener(this);
-        myLayout.putConstraint(SpringLayout.WEST,gameButtons[x][y],xPos,SpringLayout.WEST,this);
-        myLayout.putConstraint(SpringLayout.NORTH,gameButtons[x][y],yPos,SpringLayout.NORTH,this);
-        add(gameButtons[x][y]);
-        //Stores button's grid position and resets it to the desired default visual styling.
-        gameButtons[x][y].setxPosition(x);
-        gameButtons[x][y].setyPosition(y);
-        gameButtons[x][y].Reset();
-    }
+     * Builds a single painted BoardPanel for large boards and places it inside a scroll pane in the same
+     * position the button grid would normally occupy. Only the cells visible in the viewport are ever painted.
+     * A MinimapPanel beside the viewport shows the whole board, and clicking it moves the viewport there.
+     */
+    private void BuildBoardPanel() {
+        boardPanel = new BoardPanel(board, CELL_SIZE, this);
+        boardScroller = new JScrollPane(boardPanel);
+        boardScroller.setPreferredSize(new Dimension(VIEWPORT_SIZE, VIEWPORT_SIZE));
+        boardScroller.getViewport().setScrollMode(JViewport.BLIT_SCROLL_MODE);
+        myLayout.putConstraint(SpringLayout.WEST,boardScroller,40,SpringLayout.WEST,this);
+        myLayout.putConstraint(SpringLayout.NORTH,boardScroller,40,SpringLayout.NORTH,this);
+        add(boardScroller);
 
+        minimapPanel = new MinimapPanel(new MinimapPyramid(board, MINIMAP_SIZE), MINIMAP_SIZE,
+                boardScroller.getViewport(), CELL_SIZE, this::JumpTo);
+        myLayout.putConstraint(SpringLayout.WEST,minimapPanel,10,SpringLayout.EAST,boardScroller);
+        myLayout.putConstraint(SpringLayout.NORTH,minimapPanel,40,SpringLayout.NORTH,this);
+        add(minimapPanel);
+    }
 
     /**
-     * Calculates the distance of the provided button from the position of the treasure location.
-     * This is done using Pythagoras' Theorem (a² = b² + c²)to determine the exact distance in units based upon
-     * the unit size of one button width.
+     * Scrolls the viewport of a large board so the given cell sits in its centre, or as near as the edges allow.
      *
-     * @param button The button most recently pressed by the user.
-     * @return The distance to the treasure in a double type.
+     * @param x The X coordinate of the cell.
+     * @param y The Y coordinate of the cell.
      */
-    private double CalculateDistanceToTarget(GameButton button) {
-        double xDistance = Math.abs(treasure.getxPosition() - button.getxPosition());
-        double yDistance = Math.abs(treasure.getyPosition() - button.getyPosition());
-        double sides = (xDistance * xDistance) + (yDistance*yDistance);
-        return Math.sqrt(sides);
+    private void JumpTo(int x, int y)
+    {
+        JViewport viewport = boardScroller.getViewport();
+        Dimension extent = viewport.getExtentSize();
+        Dimension view = viewport.getViewSize();
+        int left = x * CELL_SIZE + CELL_SIZE / 2 - extent.width / 2;
+        int top = y * CELL_SIZE + CELL_SIZE / 2 - extent.height / 2;
+        left = Math.max(0, Math.min(view.width - extent.width, left));
+        top = Math.max(0, Math.min(view.height - extent.height, top));
+        viewport.setViewPosition(new Point(left, top));
     }
 
     /**
-     * Compares the distance provided against the distance of the previous button press and determines
-     * whether it is closer or further than the previous. If closer the provided button is highlighted in red(hotter),
-     * otherwise it is changed blue(colder).
+     * Builds an individual GameButton object based upon the provided parameters and adds it to the next cell of the
+     * grid panel.
      *
-     * @param button The last button pressed which needs to provide feedback to user.
-     * @param distance The previously calculated distance of the button to the treasure.
+     * @param x X coordinate position inside the 2D array.
+     * @param y Y coordinate position inside the 2D array.
+     * @param buttonSize The desired height and width size of the game buttons in the grid.
+     * @param listener The listener the button sends its presses to.
+     * @param grid The grid panel the button is added to.
+     * @return The completed button.
      */
-    private void CheckWhetherHotterOrColder(GameButton button, double distance) {
-        if (distance < lastGuessDistance)
-        {
-            button.setBackground(Color.red);
-        }
-        else if(distance >= lastGuessDistance)
-        {
-            button.setBackground(Color.cyan);
-        }
+    private static GameButton CreateAGameButton(int x, int y, int buttonSize, ActionListener listener,
+                                                Container grid) {
+        //Creates button and sets initial size before adding listener and adding to the grid.
+        GameButton button = new GameButton();
+        button.setPreferredSize(new Dimension(buttonSize,buttonSize));
+        button.addActionListener(listener);
+        grid.add(button);
+        //Stores button's grid position and resets it to the desired default visual styling.
+        button.setxPosition(x);
+        button.setyPosition(y);
+        button.Reset();
+        return button;
     }
 
+
     /**
-     * Checks whether the pressed button is the same as the treasure button. If so it is changes gold and the dollar
-     * sign ($) is printed onto the button.
-     *
-     * @param button The button last pressed which is being checked.
+     * Returns the cells guessed since the last reset to their default state. Only those cells are visited, rather
+     * than every button on the board, and the painted board repaints them with a single request.
      */
-    private void CheckForWin(GameButton button) {
-        //Checks whether button coordinates match treasure coordinates
-        if(treasure.getxPosition() == button.getxPosition() && treasure.getyPosition() == button.getyPosition())
+    private void ResetButtonsToDefault() {
+        if (gameButtons == null)
         {
-            button.setBackground(Color.yellow);
-            button.setText("$");
+            long[] touched = board.TouchedCells();
+            board.Clear();
+            boardPanel.RepaintCells(touched);
+            minimapPanel.CellsChanged(touched);
+            return;
         }
+        ResetButtons(gameButtons, board);
     }
 
     /**
-     * Cycles through the GameButton grid and requests each button perform its Reset() function which clears all
-     * text and sets the button styling and colouring back to its default state.
+     * Requests every button guessed since the last reset perform its Reset() function, which clears its text and
+     * sets its styling and colouring back to the default state, and then clears the board.
+     *
+     * @param buttons The grid of buttons being reset.
+     * @param board The board whose touched cells are being reset.
      */
-    private void ResetButtonsToDefault() {
-        for (int i = 0; i < gameButtons.length; i++)
+    static void ResetButtons(GameButton[][] buttons, BoardState board) {
+        BoardShape shape = board.getShape();
+        for (long key : board.TouchedCells())
         {
-            for (int j = 0; j < gameButtons[i].length; j++)
+            if (shape.SliceOf(key) == board.getSlice())
             {
-                gameButtons[i][j].Reset();
+                buttons[shape.XOf(key)][shape.YOf(key)].Reset();
             }
         }
+        board.Clear();
     }
 }
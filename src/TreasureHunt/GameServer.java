@@ -0,0 +1,352 @@
+package TreasureHunt;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hosts many games of treasure hunt at once over a simple line based TCP protocol on the local machine. Every
+ * connection is handled on its own thread, which is a virtual thread when the running JVM provides them. Each line
+ * sent by a client is one command and receives one line in reply:
+ *
+ * NEW width height      replies OK sessionId
+ * GUESS sessionId x y   replies HOTTER, COLDER or TREASURE followed by the guess number
+ * SAVE sessionId        replies OK
+ * LOAD sessionId        replies OK followed by the next guess number
+ * WATCH                 turns the connection into a spectator, see below
+ * QUIT                  closes the connection
+ *
+ * Any failure replies ERROR followed by a message.
+ *
+ * Every connection publishes the games it plays to a BoardEventStream of its own, so each stream keeps a single
+ * writer. A connection that sends WATCH is sent a line for every event of every connection from then on, as formatted
+ * by BoardEvent, until it disconnects, along with a MISSED line counting any events it fell too far behind to see.
+ * Watchers read the streams without locks and never slow down the connections playing the games.
+ */
+public class GameServer
+{
+    SessionStore store;
+    ServerSocket serverSocket;
+    ExecutorService connections = NewConnectionExecutor();
+    //The event stream of every open connection.
+    CopyOnWriteArrayList<BoardEventStream> streams = new CopyOnWriteArrayList<>();
+    //The streams of connections opened since each watcher last looked, so even a connection that comes and goes
+    //between two looks is watched.
+    CopyOnWriteArrayList<ConcurrentLinkedQueue<BoardEventStream>> watchers = new CopyOnWriteArrayList<>();
+    //Most events sent to a watcher from one stream before moving on to the next.
+    static final int WATCH_BATCH = 256;
+    static final long WATCH_MAX_PARK_NANOS = 1000000;
+
+    /**
+     * @param port The local port to listen on, 0 to pick any free port.
+     * @param store The store holding the hosted sessions.
+     */
+    public GameServer(int port, SessionStore store) throws IOException
+    {
+        this.store = store;
+        serverSocket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Creates an executor that runs each task on a new virtual thread, falling back to a cached pool of platform
+     * threads on JVMs where virtual threads are missing or still a preview feature.
+     */
+    static ExecutorService NewConnectionExecutor()
+    {
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch(Exception ex)
+        {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "GameServer connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public int getPort()
+    {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until the server is closed, handing each one to its own thread.
+     */
+    public void Run()
+    {
+        while (!serverSocket.isClosed())
+        {
+            try
+            {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.execute(() -> HandleConnection(socket));
+            }
+            catch(IOException ex)
+            {
+                if (!serverSocket.isClosed())
+                {
+                    System.out.println(ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads commands from a connection and writes a reply to each until the client quits or disconnects.
+     */
+    void HandleConnection(Socket socket)
+    {
+        BoardEventStream events = new BoardEventStream();
+        streams.add(events);
+        for (ConcurrentLinkedQueue<BoardEventStream> opened : watchers)
+        {
+            opened.add(events);
+        }
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII)))
+        {
+            String line;
+            while ((line = in.readLine()) != null)
+            {
+                if (line.equalsIgnoreCase("QUIT"))
+                {
+                    break;
+                }
+                if (line.trim().equalsIgnoreCase("WATCH"))
+                {
+                    Watch(in, out);
+                    break;
+                }
+                String reply;
+                try
+                {
+                    reply = HandleCommand(line.trim().split(" +"), events);
+                }
+                catch(Exception ex)
+                {
+                    reply = "ERROR " + ex.getMessage();
+                }
+                out.write(reply);
+                out.write('\n');
+                out.flush();
+            }
+        }
+        catch(IOException ex)
+        {
+            //The client went away, nothing more to do for this connection.
+        }
+        finally
+        {
+            //Watchers still reading the stream finish it before letting it go.
+            events.Close();
+            streams.remove(events);
+        }
+    }
+
+    /**
+     * Sends the events of every connection to a watcher until it disconnects or the server closes. Events are sent in
+     * order for each connection, and connections opened while watching are read from their first event.
+     *
+     * A watcher on a quiet server may never be written to, so a failed write cannot be relied on to notice it has
+     * gone. Another thread reads the watcher's input instead, ignoring anything it sends, and stops the watch when
+     * the input ends.
+     */
+    void Watch(BufferedReader in, BufferedWriter out) throws IOException
+    {
+        AtomicBoolean gone = new AtomicBoolean(false);
+        Thread watching = Thread.currentThread();
+        connections.execute(() -> {
+            try
+            {
+                while (in.read() >= 0)
+                {
+                    //Watchers send nothing more, so whatever arrives is dropped.
+                }
+            }
+            catch(IOException ex)
+            {
+                //The socket was closed, by either end.
+            }
+            gone.set(true);
+            LockSupport.unpark(watching);
+        });
+
+        ConcurrentLinkedQueue<BoardEventStream> opened = new ConcurrentLinkedQueue<>();
+        watchers.add(opened);
+        Map<BoardEventStream, BoardEventStream.Reader> readers = new HashMap<>();
+        for (BoardEventStream stream : streams)
+        {
+            readers.putIfAbsent(stream, stream.NewReader());
+        }
+        StringBuilder lines = new StringBuilder();
+        BoardEventStream.Handler writer = event -> lines.append(event).append('\n');
+        long park = 0;
+        try
+        {
+            while (!gone.get() && !serverSocket.isClosed() && !Thread.currentThread().isInterrupted())
+            {
+                BoardEventStream stream;
+                while ((stream = opened.poll()) != null)
+                {
+                    readers.putIfAbsent(stream, stream.NewReaderFromOldest());
+                }
+                long missed = 0;
+                Iterator<BoardEventStream.Reader> iterator = readers.values().iterator();
+                while (iterator.hasNext())
+                {
+                    BoardEventStream.Reader reader = iterator.next();
+                    long missedBefore = reader.getMissed();
+                    reader.Poll(writer, WATCH_BATCH);
+                    missed += reader.getMissed() - missedBefore;
+                    if (reader.IsDrained())
+                    {
+                        iterator.remove();
+                    }
+                }
+                if (missed > 0)
+                {
+                    lines.append("MISSED ").append(missed).append('\n');
+                }
+
+                if (lines.length() > 0)
+                {
+                    out.write(lines.toString());
+                    out.flush();
+                    lines.setLength(0);
+                    park = 0;
+                    continue;
+                }
+                park = Math.min(WATCH_MAX_PARK_NANOS, Math.max(1000, park * 2));
+                LockSupport.parkNanos(park);
+            }
+        }
+        finally
+        {
+            watchers.remove(opened);
+        }
+    }
+
+    /**
+     * Carries out a single command and returns the reply for it.
+     *
+     * @param parts The command split into its words.
+     * @param events The event stream of the connection the command came from.
+     * @return The reply line.
+     */
+    String HandleCommand(String[] parts, BoardEventStream events) throws IOException
+    {
+        String command = parts[0].toUpperCase();
+        if (command.equals("NEW"))
+        {
+            int width = Integer.parseInt(parts[1]);
+            int height = Integer.parseInt(parts[2]);
+            GameSession session = store.NewSession(width, height);
+            events.Publish(BoardEvent.START, session.sessionId, width, height, 0, null);
+            return "OK " + session.sessionId;
+        }
+
+        long sessionId = Long.parseLong(parts[1]);
+        //The session may be evicted between fetching it and locking it, in which case it is simply fetched again.
+        GameSession session;
+        while ((session = store.GetSession(sessionId)) != null)
+        {
+            synchronized (session)
+            {
+                if (session.evicted)
+                {
+                    continue;
+                }
+                switch (command)
+                {
+                    case "GUESS":
+                        int guess = session.getGuessNumber();
+                        int x = Integer.parseInt(parts[2]);
+                        int y = Integer.parseInt(parts[3]);
+                        GuessResult result = session.Guess(x, y);
+                        events.Publish(BoardEvent.GUESS, sessionId, x, y, guess, result);
+                        if (result == GuessResult.TREASURE && session.engine.IsWon())
+                        {
+                            events.Publish(BoardEvent.WIN, sessionId, x, y, guess, result);
+                        }
+                        return result + " " + guess;
+                    case "SAVE":
+                        store.Save(session);
+                        return "OK";
+                    case "LOAD":
+                        store.Load(session);
+                        events.Publish(BoardEvent.LOAD, sessionId, session.engine.getBoardWidth(),
+                                session.engine.getBoardHeight(), session.getGuessNumber(), null);
+                        return "OK " + session.getGuessNumber();
+                    default:
+                        return "ERROR Unknown command " + command;
+                }
+            }
+        }
+        return "ERROR No session " + sessionId;
+    }
+
+    public void Close() throws IOException
+    {
+        serverSocket.close();
+        connections.shutdownNow();
+        store.Close();
+    }
+
+    /**
+     * Starts a server on the given port, keeping at most maxSessions games in memory.
+     * server [port] [maxSessions] [idleSeconds] [sessionDirectory]
+     */
+    public static void RunFromCommandLine(String[] args) throws IOException
+    {
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7777;
+        int maxSessions = args.length > 2 ? Integer.parseInt(args[2]) : 50000;
+        long idleSeconds = args.length > 3 ? Long.parseLong(args[3]) : 300;
+        String directory = args.length > 4 ? args[4] : "sessions";
+
+        GameServer server = new GameServer(port, new SessionStore(maxSessions, idleSeconds, Paths.get(directory)));
+        System.out.println("Treasure hunt server listening on port " + server.getPort());
+        server.Run();
+    }
+
+    /**
+     * Watches every game played on a local server, printing each event as it happens.
+     * watch [port]
+     */
+    public static void WatchFromCommandLine(String[] args) throws IOException
+    {
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7777;
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII)))
+        {
+            out.write("WATCH\n");
+            out.flush();
+            String line;
+            while ((line = in.readLine()) != null)
+            {
+                System.out.println(line);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package TreasureHunt;
+
+import java.awt.*;
+import java.util.SplittableRandom;
+
+/**
+ * A single game hosted by the GameServer. Holds the engine and board for the game along with the time it was last
+ * used, which the SessionStore uses to evict idle sessions. Each session may be used by several connections, so every
+ * method that touches the game is synchronized on the session.
+ */
+public class GameSession
+{
+    long sessionId;
+    GameEngine engine;
+    BoardState board;
+    volatile long lastUsed = System.nanoTime();
+    //Set, while holding the session lock, once the session has been saved and removed from the SessionStore.
+    //Callers must check it under the same lock and fetch the session again from the store if it is set.
+    boolean evicted = false;
+
+    /**
+     * Starts a new game on a board of the given size.
+     */
+    public GameSession(long sessionId, int boardWidth, int boardHeight, SplittableRandom seeds)
+    {
+        this.sessionId = sessionId;
+        engine = new GameEngine(boardWidth, boardHeight, seeds);
+        board = new BoardState(boardWidth, boardHeight);
+    }
+
+    /**
+     * Recreates a session from a saved game.
+     */
+    public GameSession(long sessionId, GameData gameData, SplittableRandom seeds)
+    {
+        this(sessionId, gameData.boardWidth, gameData.boardHeight, seeds);
+        Restore(gameData);
+    }
+
+    /**
+     * Plays a guess and records it on the board.
+     *
+     * @param x The X coordinate of the guessed cell.
+     * @param y The Y coordinate of the guessed cell.
+     * @return The verdict for the guess.
+     */
+    public synchronized GuessResult Guess(int x, int y)
+    {
+        if (x < 0 || x >= engine.getBoardWidth() || y < 0 || y >= engine.getBoardHeight())
+        {
+            throw new IllegalArgumentException("Cell " + x + "," + y + " is off the board");
+        }
+        int guess = engine.getGuessNumber();
+        GuessResult result = engine.MakeGuess(x, y);
+        board.SetCell(x, y, CellState.FromResult(result), guess);
+        return result;
+    }
+
+    /**
+     * @return A copy of the game ready to be saved.
+     */
+    public synchronized GameData Snapshot()
+    {
+        GameData game = new GameData();
+        game.boardWidth = engine.getBoardWidth();
+        game.boardHeight = engine.getBoardHeight();
+        game.shape = engine.getShape();
+        game.guessNumber = engine.getGuessNumber();
+        game.lastGuessDistance = engine.getLastGuessDistance();
+        game.treasurePosition = new Dimension(engine.getTreasureX(), engine.getTreasureY());
+        game.treasures = engine.getTreasures().Copy();
+        game.seed = engine.getGameSeed();
+        game.metric = engine.getMetric();
+        game.board = board.Copy();
+        return game;
+    }
+
+    /**
+     * Replaces the game with a saved one of the same board size.
+     */
+    public synchronized void Restore(GameData gameData)
+    {
+        if (gameData.boardWidth != engine.getBoardWidth() || gameData.boardHeight != engine.getBoardHeight())
+        {
+            throw new IllegalArgumentException("The saved game was played on a " + gameData.boardWidth
+                    + " x " + gameData.boardHeight + " board");
+        }
+        TreasureIndex treasures = TreasureIndex.Of(gameData).Copy();
+        engine.setMetric(gameData.metric);
+        engine.setTreasureCount(treasures.getCount());
+        engine.RestoreGame(treasures, gameData.guessNumber, gameData.lastGuessDistance, gameData.seed);
+        board.CopyFrom(gameData.board);
+    }
+
+    public synchronized int getGuessNumber()
+    {
+        return engine.getGuessNumber();
+    }
+
+    void Touch()
+    {
+        lastUsed = System.nanoTime();
+    }
+}
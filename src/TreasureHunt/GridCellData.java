@@ -1,10 +0,0 @@
-package TreasureHunt;
-
-/**
- * Stores the text and colour values set in the game buttons when we need to pass them from the program to the file.
- */
-public class GridCellData
-{
-    public String text;
-    public String Colour;
-}
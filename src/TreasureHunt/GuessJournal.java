@@ -0,0 +1,465 @@
+package TreasureHunt;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append only journal of the guesses made since the last snapshot save. Each guess or reset is stored as a small fixed
+ * size record, so saving costs the same however large the board is. Records are collected into groups and written
+ * together, either once a group is full or shortly after the first record of the group arrived. Once enough records
+ * have built up the journal is compacted by writing a fresh snapshot through the FileManager and emptying the journal.
+ * A game is recovered by reading the snapshot and replaying the journal on top of it.
+ *
+ * The journal only starts recording once the player has saved or loaded a game, so the snapshot it builds upon is
+ * always the game currently being played.
+ *
+ * Records are normally appended on the Event Dispatch Thread while compaction and recovery run on the background
+ * worker of the BackgroundFileManager, so all shared state is guarded by the journal's lock.
+ */
+public class GuessJournal
+{
+    static final int RECORD_SIZE = 16;
+    //Record kinds.
+    static final byte RECORD_GUESS = 1;
+    //Reset to a known treasure position, written before games carried a seed and still read from older journals.
+    static final byte RECORD_RESET = 2;
+    //Start of a new game, holding the seed of the game split into its high and low halves.
+    static final byte RECORD_NEW_GAME = 3;
+
+    //Number of records written to disk together in one group.
+    static final int GROUP_SIZE = 32;
+    //Longest time in milliseconds a record may wait before its group is written.
+    static final long GROUP_DELAY = 200;
+    //Number of records after which the journal should be folded into a new snapshot.
+    static final int COMPACTION_THRESHOLD = 4096;
+
+    FileManager file;
+    Path journalPath;
+    FileChannel channel;
+    ByteBuffer pending = ByteBuffer.allocateDirect(GROUP_SIZE * RECORD_SIZE);
+    int recordCount = 0;
+    //Number of records appended since the journal was created, used to mark where a snapshot was taken.
+    long appended = 0;
+    boolean active = false;
+    //Set while a snapshot is being written. Records arriving in the meantime are held until it completes.
+    boolean compacting = false;
+
+    ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "GuessJournal flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param file The file manager used to read and write the snapshot the journal builds upon.
+     */
+    public GuessJournal(FileManager file)
+    {
+        this.file = file;
+        this.journalPath = Paths.get(file.journalFile);
+    }
+
+    /**
+     * Records a guess. The record is held until its group is committed.
+     *
+     * @param x The X coordinate of the guessed cell.
+     * @param y The Y coordinate of the guessed cell.
+     * @param guess The guess number shown on the cell.
+     * @param result The verdict given for the guess.
+     */
+    public synchronized void AppendGuess(int x, int y, int guess, GuessResult result) throws IOException
+    {
+        Append(RECORD_GUESS, (byte) result.ordinal(), x, y, guess);
+    }
+
+    /**
+     * Records a guess at a packed cell of a board with any number of axes. The cell is split across the X and Y
+     * fields of the record, which on a flat board is the same record AppendGuess(int, int, ...) writes.
+     *
+     * @param cell The packed cell guessed, see BoardShape.
+     * @param guess The guess number shown on the cell.
+     * @param result The verdict given for the guess.
+     */
+    public synchronized void AppendGuess(long cell, int guess, GuessResult result) throws IOException
+    {
+        Append(RECORD_GUESS, (byte) result.ordinal(), (int) (cell >>> 32), (int) cell, guess);
+    }
+
+    /**
+     * Records the start of a new game with the given seed. The treasure position is worked out from the seed when the
+     * record is replayed.
+     */
+    public synchronized void AppendNewGame(long seed) throws IOException
+    {
+        Append(RECORD_NEW_GAME, (byte) 0, (int) (seed >>> 32), (int) seed, 0);
+    }
+
+    private void Append(byte kind, byte value, int x, int y, int guess) throws IOException
+    {
+        if (!active)
+        {
+            return;
+        }
+        //Schedule a flush for the group when its first record arrives.
+        if (pending.position() == 0 && !compacting)
+        {
+            flusher.schedule(this::CommitQuietly, GROUP_DELAY, TimeUnit.MILLISECONDS);
+        }
+        //Records held during compaction may outgrow a single group.
+        if (!pending.hasRemaining())
+        {
+            ByteBuffer larger = ByteBuffer.allocateDirect(pending.capacity() * 2);
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+        pending.put(kind).put(value).putShort((short) 0).putInt(x).putInt(y).putInt(guess);
+        recordCount++;
+        appended++;
+        if (!pending.hasRemaining() && !compacting)
+        {
+            Commit();
+        }
+    }
+
+    /**
+     * Writes any pending records to the journal and forces them to disk.
+     */
+    public synchronized void Commit() throws IOException
+    {
+        if (pending.position() == 0 || channel == null || compacting)
+        {
+            return;
+        }
+        pending.flip();
+        while (pending.hasRemaining())
+        {
+            channel.write(pending);
+        }
+        channel.force(false);
+        pending.clear();
+    }
+
+    private void CommitQuietly()
+    {
+        try
+        {
+            Commit();
+        }
+        catch(IOException ex)
+        {
+            System.out.println(ex.getMessage());
+        }
+    }
+
+    /**
+     * @return true once a save or load has started the journal recording the game.
+     */
+    public synchronized boolean IsActive()
+    {
+        return active;
+    }
+
+    /**
+     * @return true once enough records have built up that the journal should be compacted.
+     */
+    public synchronized boolean NeedsCompaction()
+    {
+        return active && !compacting && recordCount >= COMPACTION_THRESHOLD;
+    }
+
+    /**
+     * Marks the point in the journal a snapshot of the game is taken at, and starts recording if the journal is not
+     * already, so no guess made before the snapshot reaches the disk is lost. Must be called on the thread recording
+     * guesses, straight after the snapshot is taken.
+     *
+     * @return The mark to hand to Compact along with the snapshot.
+     */
+    public synchronized long BeginSnapshot()
+    {
+        //Until the first snapshot is written there is no journal open, and records are held in memory instead.
+        active = true;
+        return appended;
+    }
+
+    /**
+     * Folds the journal into a new snapshot. The snapshot is written first and the journal emptied afterwards, so a
+     * crash in between only means some records are replayed onto a snapshot that already contains them.
+     *
+     * @param snapshot The current state of the game.
+     */
+    public void Compact(GameData snapshot) throws IOException
+    {
+        Compact(snapshot, BeginSnapshot(), FileProgress.NONE);
+    }
+
+    /**
+     * Folds the journal into a new snapshot. The snapshot is written without holding the journal lock, so guesses
+     * can still be recorded while it is written. Once the snapshot is in place the journal is emptied and every
+     * record made after the snapshot was taken, whether already on disk or still held, is written to it again. If
+     * the snapshot is cancelled or fails the held records go to the old journal.
+     *
+     * @param snapshot The state of the game at the moment the snapshot was taken.
+     * @param mark The mark returned by BeginSnapshot when the snapshot was taken.
+     * @param progress Told about progress and asked whether to carry on.
+     */
+    public void Compact(GameData snapshot, long mark, FileProgress progress) throws IOException
+    {
+        synchronized (this)
+        {
+            compacting = true;
+        }
+        boolean written = false;
+        try
+        {
+            file.WriteSnapshot(snapshot, progress);
+            written = true;
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                compacting = false;
+                if (written)
+                {
+                    pending = RecordsSince(mark);
+                    OpenJournal(0);
+                    recordCount = pending.position() / RECORD_SIZE;
+                }
+                else if (channel == null)
+                {
+                    //The first snapshot failed, so there is no journal for the held records to go to.
+                    pending.clear();
+                    active = false;
+                }
+                Commit();
+            }
+        }
+    }
+
+    /**
+     * Gathers the records appended after a mark, the latest of which are held in pending and the rest of which are
+     * at the end of the journal on disk.
+     *
+     * @return A buffer holding the records, positioned after the last of them.
+     */
+    private ByteBuffer RecordsSince(long mark) throws IOException
+    {
+        int held = pending.position() / RECORD_SIZE;
+        int wanted = (int) Math.max(0, appended - mark);
+        ByteBuffer kept = ByteBuffer.allocateDirect(Math.max(GROUP_SIZE, wanted) * RECORD_SIZE);
+        long fromDisk = wanted - held;
+        if (fromDisk > 0 && channel != null)
+        {
+            long onDisk = channel.size() / RECORD_SIZE;
+            fromDisk = Math.min(fromDisk, onDisk);
+            try (FileChannel reader = FileChannel.open(journalPath, StandardOpenOption.READ))
+            {
+                kept.limit((int) fromDisk * RECORD_SIZE);
+                long position = (onDisk - fromDisk) * RECORD_SIZE;
+                int read = 0;
+                while (kept.hasRemaining() && read >= 0)
+                {
+                    read = reader.read(kept, position + kept.position());
+                }
+                kept.limit(kept.capacity());
+            }
+        }
+        pending.flip();
+        pending.position((held - Math.min(held, wanted)) * RECORD_SIZE);
+        kept.put(pending);
+        pending.clear();
+        return kept;
+    }
+
+    /**
+     * Rebuilds the saved game from the latest snapshot followed by the records in the journal. Any incomplete record
+     * left at the end of the journal by a crash is ignored, as is everything from the first damaged record onwards.
+     * Journalling then carries on from the recovered game.
+     *
+     * @return The recovered game.
+     */
+    public GameData Recover() throws IOException
+    {
+        return Recover(FileProgress.NONE);
+    }
+
+    /**
+     * Rebuilds the saved game from the latest snapshot followed by the records in the journal, reporting progress
+     * as the snapshot is read. The caller must not record guesses while the recovery is running.
+     *
+     * @param progress Told about progress and asked whether to carry on.
+     * @return The recovered game.
+     */
+    public GameData Recover(FileProgress progress) throws IOException
+    {
+        Commit();
+        GameData data = file.ReadDataFromFile(file.CurrentSavePath(), progress);
+        int complete = 0;
+        if (Files.exists(journalPath))
+        {
+            ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(journalPath));
+            int stored = records.limit() / RECORD_SIZE;
+            while (complete < stored && ApplyRecord(data, records))
+            {
+                complete++;
+            }
+            if (complete < stored)
+            {
+                System.out.println("Journal record " + (complete + 1) + " of " + stored + " is damaged, replayed the "
+                        + complete + " before it: " + journalPath);
+            }
+        }
+        synchronized (this)
+        {
+            //New records go straight after the last good one, so they are not hidden behind a damaged record.
+            OpenJournal(complete);
+            recordCount = complete;
+        }
+        return data;
+    }
+
+    /**
+     * Applies a single record to the game data. Applying a record more than once leaves the game unchanged.
+     *
+     * @return false, leaving the game unchanged, if the record is damaged: of an unknown kind or verdict, or for a
+     * cell off the board.
+     */
+    static boolean ApplyRecord(GameData data, ByteBuffer records)
+    {
+        byte kind = records.get();
+        byte value = records.get();
+        records.getShort();
+        int x = records.getInt();
+        int y = records.getInt();
+        int guess = records.getInt();
+        if (!IsValidRecord(data, kind, value, x, y, guess))
+        {
+            return false;
+        }
+
+        if (kind == RECORD_RESET || kind == RECORD_NEW_GAME)
+        {
+            if (kind == RECORD_NEW_GAME)
+            {
+                //A new game hides as many treasures as the game before it.
+                int count = TreasureIndex.Of(data).getCount();
+                data.seed = ((long) x << 32) | (y & 0xFFFFFFFFL);
+                data.treasures = GameEngine.TreasuresFromSeed(data.seed, BoardShape.Of(data), count);
+                x = data.treasures.getX(0);
+                y = data.treasures.getY(0);
+            }
+            else
+            {
+                data.seed = 0;
+                data.treasures = null;
+            }
+            data.treasurePosition = new Dimension(x, y);
+            data.guessNumber = 1;
+            data.lastGuessDistance = GameEngine.StartingDistance(BoardShape.Of(data), data.metric);
+            data.board.Clear();
+        }
+        else if (kind == RECORD_GUESS)
+        {
+            GuessResult result = GuessResult.values()[value];
+            //The X and Y fields hold the two halves of the packed cell, which on a flat board is its key.
+            long cell = ((long) x << 32) | (y & 0xFFFFFFFFL);
+            //Taken before the cell is set, as a game without an index reads whether its treasure is found from it.
+            TreasureIndex treasures = TreasureIndex.Of(data);
+            data.treasures = treasures;
+            data.board.SetCellAt(cell, (byte) CellState.FromResult(result).ordinal(), guess);
+            data.guessNumber = guess + 1;
+            //Follows GameEngine.MakeGuess, which leaves the distance alone once every treasure has been found.
+            if (treasures.getRemaining() > 0)
+            {
+                long measure = treasures.NearestMeasure(cell, data.metric);
+                int found = treasures.FindAt(cell);
+                if (found >= 0)
+                {
+                    treasures.Remove(found);
+                    if (treasures.getRemaining() > 0)
+                    {
+                        measure = treasures.NearestMeasure(cell, data.metric);
+                    }
+                }
+                data.lastGuessDistance = data.metric.DistanceOfMeasure(measure);
+            }
+        }
+        return true;
+    }
+
+    private static boolean IsValidRecord(GameData data, byte kind, byte value, int x, int y, int guess)
+    {
+        if (kind == RECORD_NEW_GAME)
+        {
+            return true;
+        }
+        if (kind == RECORD_RESET)
+        {
+            return x >= 0 && x < data.boardWidth && y >= 0 && y < data.boardHeight;
+        }
+        if (kind != RECORD_GUESS || value < 0 || value >= GuessResult.values().length)
+        {
+            return false;
+        }
+        //Guess numbers are packed beside the state in two bits, see BoardState.
+        long cell = ((long) x << 32) | (y & 0xFFFFFFFFL);
+        return guess > 0 && guess <= Integer.MAX_VALUE >>> 2 && BoardShape.Of(data).Contains(cell);
+    }
+
+    /**
+     * Opens the journal for appending, keeping only the given number of records at its start, and starts recording.
+     *
+     * @param keep The number of records to keep, 0 to empty the journal.
+     */
+    private void OpenJournal(long keep) throws IOException
+    {
+        if (channel != null)
+        {
+            channel.close();
+        }
+        channel = keep == 0
+                ? FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)
+                : FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        //Drop any incomplete or unwanted record at the end so new records line up.
+        long complete = Math.min(keep, channel.size() / RECORD_SIZE) * RECORD_SIZE;
+        channel.truncate(complete);
+        channel.position(complete);
+        channel.force(true);
+        active = true;
+    }
+
+    /**
+     * Stops recording without touching the journal on disk, used when a recovered game cannot be continued.
+     */
+    public synchronized void Stop() throws IOException
+    {
+        pending.clear();
+        active = false;
+    }
+
+    /**
+     * Commits any pending records and closes the journal.
+     */
+    public synchronized void Close() throws IOException
+    {
+        Commit();
+        flusher.shutdown();
+        if (channel != null)
+        {
+            channel.close();
+            channel = null;
+        }
+        active = false;
+    }
+}
@@ -0,0 +1,97 @@
+package TreasureHunt;
+
+import java.util.Arrays;
+
+/**
+ * The cells guessed during a game, in the order they were guessed. Together with the seed of the game this is all
+ * that is needed to replay it through a GameReplay. The cells are held as board keys in a growable long array so
+ * recording a guess does not allocate once the array has grown to fit the game. On a board with more than two axes
+ * the keys are packed BoardShape cells.
+ */
+public class GuessRecording
+{
+    long[] cells = new long[64];
+    int count = 0;
+
+    /**
+     * Records a guess at the given cell of a flat board.
+     */
+    public void Add(int x, int y)
+    {
+        Add(BoardState.Key(x, y));
+    }
+
+    /**
+     * Records a guess at the cell with the given board key.
+     */
+    public void Add(long cell)
+    {
+        if (count == cells.length)
+        {
+            cells = Arrays.copyOf(cells, count * 2);
+        }
+        cells[count] = cell;
+        count++;
+    }
+
+    /**
+     * Forgets every recorded guess, keeping the arrays for the next game.
+     */
+    public void Clear()
+    {
+        count = 0;
+    }
+
+    /**
+     * Builds a recording from the guess numbers shown on a board, such as one that has just been loaded. A board only
+     * keeps the latest guess made at each cell, so a cell guessed more than once is replayed only once.
+     *
+     * @param board The board to read the guesses from.
+     * @return The guesses on the board, ordered by guess number.
+     */
+    public static GuessRecording FromBoard(BoardState board)
+    {
+        //Sort the touched cells by guess number, packing the guess above the position in the key array.
+        long[] keys = board.TouchedCells();
+        long[] order = new long[keys.length];
+        for (int i = 0; i < keys.length; i++)
+        {
+            order[i] = ((long) board.GetGuessAt(keys[i]) << 32) | i;
+        }
+        Arrays.sort(order);
+
+        GuessRecording recording = new GuessRecording();
+        for (long entry : order)
+        {
+            recording.Add(keys[(int) entry]);
+        }
+        return recording;
+    }
+
+    /**
+     * @return A copy of the recording that is not affected by guesses recorded afterwards.
+     */
+    public GuessRecording Copy()
+    {
+        GuessRecording copy = new GuessRecording();
+        copy.cells = Arrays.copyOf(cells, Math.max(count, 1));
+        copy.count = count;
+        return copy;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getX(int i) {
+        return BoardState.XFromKey(cells[i]);
+    }
+
+    public int getY(int i) {
+        return BoardState.YFromKey(cells[i]);
+    }
+
+    public long getCell(int i) {
+        return cells[i];
+    }
+}
@@ -0,0 +1,12 @@
+package TreasureHunt;
+
+/**
+ * The feedback given to the player after each guess. HOTTER and COLDER compare the guess against the distance of the
+ * guess before it, TREASURE means the guess landed on the treasure cell.
+ */
+public enum GuessResult
+{
+    HOTTER,
+    COLDER,
+    TREASURE
+}
@@ -0,0 +1,310 @@
+package TreasureHunt;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.LongStream;
+
+/**
+ * Works out where the treasure can still be from the hotter/colder verdicts of the guesses made so far and suggests
+ * the next guess. The cells that could still hold the treasure are kept in a BitSet indexed by (x * boardHeight + y).
+ *
+ * A HOTTER verdict means the treasure is closer to the new guess than to the previous one, so every verdict cuts the
+ * candidates along the line half way between the two guesses. The suggested guess is the one that leaves the smallest
+ * expected number of candidates once its verdict is known, which keeps the number of guesses still needed as low as
+ * possible. Possible guesses are scored in parallel with fork/join. On large boards the scoring works from a random
+ * sample of the guesses and candidates, which keeps a 500 x 500 board quick enough to play against.
+ *
+ * Distances are compared as the exact integer measures of the solver's DistanceMetric, which gives the same verdicts
+ * as the engine playing with the same metric. The solver plays boards with a single treasure.
+ */
+public class HotColdSolver
+{
+    //Most guesses scored when choosing the next guess.
+    static final int MAX_OPTIONS = 256;
+    //Most candidates looked at when scoring each guess.
+    static final int MAX_SAMPLE = 16384;
+    //Options scored by each fork/join task before it stops splitting.
+    static final int OPTIONS_PER_TASK = 8;
+
+    int boardWidth;
+    int boardHeight;
+    BitSet candidates;
+    boolean hasPreviousGuess = false;
+    int previousX;
+    int previousY;
+    Random rand;
+    DistanceMetric metric;
+    //Measure every guess is compared against before the first one has been made.
+    long startingMeasure;
+
+    /**
+     * Starts a solver for a fresh game where the treasure could be anywhere on the board.
+     *
+     * @param rand Used to sample guesses and candidates on large boards.
+     */
+    public HotColdSolver(int boardWidth, int boardHeight, Random rand)
+    {
+        this(boardWidth, boardHeight, rand, DistanceMetric.EUCLIDEAN);
+    }
+
+    /**
+     * Starts a solver for a fresh game played with the given metric.
+     *
+     * @param rand Used to sample guesses and candidates on large boards.
+     * @param metric The metric the engine measures distances with.
+     */
+    public HotColdSolver(int boardWidth, int boardHeight, Random rand, DistanceMetric metric)
+    {
+        this.boardWidth = boardWidth;
+        this.boardHeight = boardHeight;
+        this.rand = rand;
+        this.metric = metric;
+        startingMeasure = GameEngine.StartingMeasure(BoardShape.Plane(boardWidth, boardHeight), metric);
+        candidates = new BitSet(boardWidth * boardHeight);
+        candidates.set(0, boardWidth * boardHeight);
+    }
+
+    /**
+     * @return The number of cells that could still hold the treasure.
+     */
+    public int CandidateCount()
+    {
+        return candidates.cardinality();
+    }
+
+    /**
+     * Removes every candidate that does not agree with the verdict given for a guess.
+     *
+     * @param x The X coordinate of the guess.
+     * @param y The Y coordinate of the guess.
+     * @param result The verdict the engine gave for the guess.
+     */
+    public void ApplyVerdict(int x, int y, GuessResult result)
+    {
+        int guessIndex = x * boardHeight + y;
+        if (result == GuessResult.TREASURE)
+        {
+            candidates.clear();
+            candidates.set(guessIndex);
+        }
+        else
+        {
+            boolean hotter = result == GuessResult.HOTTER;
+            candidates.clear(guessIndex);
+            for (int index = candidates.nextSetBit(0); index >= 0; index = candidates.nextSetBit(index + 1))
+            {
+                if (IsHotter(index / boardHeight, index % boardHeight, x, y) != hotter)
+                {
+                    candidates.clear(index);
+                }
+            }
+        }
+        hasPreviousGuess = true;
+        previousX = x;
+        previousY = y;
+    }
+
+    /**
+     * Works out the verdict a guess would get if the treasure were at the given cell.
+     */
+    boolean IsHotter(int treasureX, int treasureY, int guessX, int guessY)
+    {
+        long distance = metric.Measure(treasureX, treasureY, guessX, guessY, boardWidth, boardHeight);
+        long previousDistance = hasPreviousGuess
+                ? metric.Measure(treasureX, treasureY, previousX, previousY, boardWidth, boardHeight)
+                : startingMeasure;
+        return distance < previousDistance;
+    }
+
+    /**
+     * Chooses the guess that leaves the fewest candidates on average once its verdict is known.
+     *
+     * @return The board index of the suggested guess, x = index / boardHeight and y = index % boardHeight.
+     */
+    public int NextGuess()
+    {
+        int count = candidates.cardinality();
+        int[] all = new int[count];
+        int position = 0;
+        for (int index = candidates.nextSetBit(0); index >= 0; index = candidates.nextSetBit(index + 1))
+        {
+            all[position++] = index;
+        }
+        if (count == 0)
+        {
+            throw new IllegalStateException("No cell agrees with the verdicts given");
+        }
+        if (count <= 2)
+        {
+            return all[0];
+        }
+
+        int[] options = Sample(all, MAX_OPTIONS);
+        int[] sample = Sample(all, MAX_SAMPLE);
+        long best = new ScoreTask(options, sample, 0, options.length).invoke();
+        return options[(int) (best & 0xFFFFF)];
+    }
+
+    /**
+     * Picks up to limit values at random from the array, or returns the whole array if it is small enough.
+     */
+    private int[] Sample(int[] values, int limit)
+    {
+        if (values.length <= limit)
+        {
+            return values;
+        }
+        int[] sample = new int[limit];
+        for (int i = 0; i < limit; i++)
+        {
+            sample[i] = values[rand.nextInt(values.length)];
+        }
+        return sample;
+    }
+
+    /**
+     * Scores a range of options by splitting it in half until each task has only a few options left. The result
+     * packs the best score into the upper bits and the option position into the lower 20 bits, so the smallest
+     * value is the best option and ties go to the earliest option.
+     */
+    private class ScoreTask extends RecursiveTask<Long>
+    {
+        int[] options;
+        int[] sample;
+        int from;
+        int to;
+
+        ScoreTask(int[] options, int[] sample, int from, int to)
+        {
+            this.options = options;
+            this.sample = sample;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Long compute()
+        {
+            if (to - from <= OPTIONS_PER_TASK)
+            {
+                long best = Long.MAX_VALUE;
+                for (int i = from; i < to; i++)
+                {
+                    best = Math.min(best, (Score(options[i]) << 20) | i);
+                }
+                return best;
+            }
+            int middle = (from + to) >>> 1;
+            ScoreTask left = new ScoreTask(options, sample, from, middle);
+            left.fork();
+            long right = new ScoreTask(options, sample, middle, to).compute();
+            return Math.min(left.join(), right);
+        }
+
+        /**
+         * Expected number of candidates left after guessing the given cell, scaled by the sample size: the sum of the
+         * squares of the hotter and colder group sizes. A guess on the treasure itself leaves nothing.
+         */
+        long Score(int option)
+        {
+            int guessX = option / boardHeight;
+            int guessY = option % boardHeight;
+            long hotter = 0;
+            long colder = 0;
+            for (int index : sample)
+            {
+                if (index == option)
+                {
+                    continue;
+                }
+                if (IsHotter(index / boardHeight, index % boardHeight, guessX, guessY))
+                {
+                    hotter++;
+                }
+                else
+                {
+                    colder++;
+                }
+            }
+            return hotter * hotter + colder * colder;
+        }
+    }
+
+    /**
+     * Plays a game against the engine using the solver's suggestions until the treasure is found.
+     *
+     * @return The number of guesses taken.
+     */
+    public static int PlayGame(GameEngine engine, Random rand)
+    {
+        HotColdSolver solver = new HotColdSolver(engine.getBoardWidth(), engine.getBoardHeight(), rand,
+                engine.getMetric());
+        int guesses = 0;
+        while (true)
+        {
+            int guess = solver.NextGuess();
+            int x = guess / engine.getBoardHeight();
+            int y = guess % engine.getBoardHeight();
+            GuessResult result = engine.MakeGuess(x, y);
+            guesses++;
+            if (result == GuessResult.TREASURE)
+            {
+                return guesses;
+            }
+            solver.ApplyVerdict(x, y, result);
+        }
+    }
+
+    /**
+     * Reports how many guesses the solver needs on a board of the given size. When the board has no more cells than
+     * maxGames every treasure position is played, giving the exact worst case and average for the solver. Larger
+     * boards play maxGames randomly placed treasures instead. Games are played in parallel.
+     *
+     * @return The totals of the games played, including the average and most guesses taken.
+     */
+    public static BatchSimulator.Result Evaluate(int boardWidth, int boardHeight, int maxGames, long seed)
+    {
+        return Evaluate(boardWidth, boardHeight, maxGames, seed, DistanceMetric.EUCLIDEAN);
+    }
+
+    /**
+     * Reports how many guesses the solver needs on a board of the given size when distances are measured with the
+     * given metric.
+     *
+     * @return The totals of the games played, including the average and most guesses taken.
+     */
+    public static BatchSimulator.Result Evaluate(int boardWidth, int boardHeight, int maxGames, long seed,
+                                                 DistanceMetric metric)
+    {
+        long cellCount = (long) boardWidth * boardHeight;
+        boolean everyPosition = cellCount <= maxGames;
+        long games = everyPosition ? cellCount : maxGames;
+
+        return LongStream.range(0, games).parallel().mapToObj(game -> {
+            long gameSeed = BatchSimulator.GameSeed(seed, game);
+            Random rand = new Random(gameSeed);
+            GameEngine engine = new GameEngine(boardWidth, boardHeight, new SplittableRandom(gameSeed));
+            engine.setMetric(metric);
+            engine.StartGame(gameSeed);
+            if (everyPosition)
+            {
+                engine.RestoreGame((int) (game / boardHeight), (int) (game % boardHeight), 1,
+                        GameEngine.StartingDistance(engine.getShape(), metric), gameSeed);
+            }
+            int guesses = PlayGame(engine, rand);
+            BatchSimulator.Result result = new BatchSimulator.Result();
+            result.games = 1;
+            result.totalGuesses = guesses;
+            result.fewestGuesses = guesses;
+            result.mostGuesses = guesses;
+            return result;
+        }).reduce(new BatchSimulator.Result(), (a, b) -> {
+            BatchSimulator.Result merged = new BatchSimulator.Result();
+            merged.Merge(a);
+            merged.Merge(b);
+            return merged;
+        });
+    }
+}
@@ -0,0 +1,82 @@
+package TreasureHunt;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe histogram of durations in nanoseconds. Each duration is counted in a bucket covering a power of two
+ * range, so recording is a few atomic updates and the percentiles it reports are accurate to within a factor of two,
+ * which is plenty for spotting slow guesses, saves and loads.
+ */
+public class LatencyHistogram
+{
+    AtomicLongArray buckets = new AtomicLongArray(64);
+    LongAdder count = new LongAdder();
+    LongAdder totalNanos = new LongAdder();
+    LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+    /**
+     * Records a single duration.
+     *
+     * @param nanos The duration in nanoseconds.
+     */
+    public void Record(long nanos)
+    {
+        if (nanos < 0)
+        {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos) - (nanos == 0 ? 0 : 1));
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    public long Count()
+    {
+        return count.sum();
+    }
+
+    public double MeanMicros()
+    {
+        long samples = count.sum();
+        return samples == 0 ? 0 : totalNanos.sum() / 1000.0 / samples;
+    }
+
+    public double MaxMicros()
+    {
+        return maxNanos.get() / 1000.0;
+    }
+
+    /**
+     * @param fraction The percentile wanted, such as 0.99.
+     * @return The upper bound in microseconds of the bucket holding the given percentile.
+     */
+    public double PercentileMicros(double fraction)
+    {
+        long samples = count.sum();
+        if (samples == 0)
+        {
+            return 0;
+        }
+        long wanted = (long) Math.ceil(samples * fraction);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++)
+        {
+            seen += buckets.get(i);
+            if (seen >= wanted)
+            {
+                return Math.min((double) (2L << i), maxNanos.get()) / 1000.0;
+            }
+        }
+        return MaxMicros();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("count=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus",
+                Count(), MeanMicros(), PercentileMicros(0.5), PercentileMicros(0.99), MaxMicros());
+    }
+}
@@ -0,0 +1,145 @@
+package TreasureHunt;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Load testing client for the GameServer. Opens a number of connections, starts a game on each and sends guesses as
+ * fast as the server answers them, timing every guess. The latency percentiles are printed at the end. If no port is
+ * given a server is started inside the same JVM, so the test needs nothing else running.
+ */
+public class LoadGenerator
+{
+    /**
+     * loadtest [clients] [guessesPerClient] [boardSize] [port]
+     */
+    public static void RunFromCommandLine(String[] args) throws Exception
+    {
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int guesses = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int boardSize = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        GameServer server = null;
+        int port;
+        if (args.length > 4)
+        {
+            port = Integer.parseInt(args[4]);
+        }
+        else
+        {
+            server = new GameServer(0, new SessionStore(clients * 2, 300,
+                    Files.createTempDirectory("treasure-hunt-sessions")));
+            port = server.getPort();
+            GameServer running = server;
+            Thread acceptor = new Thread(running::Run, "GameServer acceptor");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        long start = System.nanoTime();
+        long[] latencies = Run(port, clients, guesses, boardSize);
+        long elapsed = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        System.out.println("guesses=" + latencies.length
+                + " throughput=" + (latencies.length * 1000000000L / Math.max(1, elapsed)) + "/s"
+                + " p50=" + Percentile(latencies, 0.50) / 1000 + "us"
+                + " p99=" + Percentile(latencies, 0.99) / 1000 + "us"
+                + " max=" + latencies[latencies.length - 1] / 1000 + "us");
+
+        if (server != null)
+        {
+            server.Close();
+        }
+    }
+
+    /**
+     * Runs the given number of clients against a server and returns the latency in nanoseconds of every guess.
+     */
+    static long[] Run(int port, int clients, int guesses, int boardSize) throws Exception
+    {
+        ExecutorService executor = GameServer.NewConnectionExecutor();
+        try
+        {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int i = 0; i < clients; i++)
+            {
+                long seed = i;
+                futures.add(executor.submit(() -> RunClient(port, guesses, boardSize, seed)));
+            }
+            long[] all = new long[clients * guesses];
+            int position = 0;
+            for (Future<long[]> future : futures)
+            {
+                long[] latencies = future.get();
+                System.arraycopy(latencies, 0, all, position, latencies.length);
+                position += latencies.length;
+            }
+            return all;
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Plays one game over a single connection, starting a new game whenever the treasure is found.
+     */
+    static long[] RunClient(int port, int guesses, int boardSize, long seed) throws IOException
+    {
+        long[] latencies = new long[guesses];
+        Random rand = new Random(seed);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII)))
+        {
+            socket.setTcpNoDelay(true);
+            String sessionId = Request(in, out, "NEW " + boardSize + " " + boardSize).substring(3);
+            for (int i = 0; i < guesses; i++)
+            {
+                String command = "GUESS " + sessionId + " " + rand.nextInt(boardSize) + " " + rand.nextInt(boardSize);
+                long start = System.nanoTime();
+                String reply = Request(in, out, command);
+                latencies[i] = System.nanoTime() - start;
+                if (reply.startsWith("TREASURE"))
+                {
+                    sessionId = Request(in, out, "NEW " + boardSize + " " + boardSize).substring(3);
+                }
+            }
+            out.write("QUIT\n");
+            out.flush();
+        }
+        return latencies;
+    }
+
+    private static String Request(BufferedReader in, BufferedWriter out, String command) throws IOException
+    {
+        out.write(command);
+        out.write('\n');
+        out.flush();
+        String reply = in.readLine();
+        if (reply == null || reply.startsWith("ERROR"))
+        {
+            throw new IOException("Server replied " + reply + " to " + command);
+        }
+        return reply;
+    }
+
+    static long Percentile(long[] sorted, double fraction)
+    {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))];
+    }
+}
@@ -1,8 +1,190 @@
 package TreasureHunt;
 
+import java.awt.image.BufferedImage;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 public class Main {
-    public static void main(String[] args)
+    /**
+     * Opens the game window. Passing "simulate" as the first argument instead plays a batch of games headlessly:
+     * simulate [games] [width] [height] [seed]
+     * Passing "solve" reports how many guesses the HotColdSolver needs on a board. Passing "server" hosts games over
+     * TCP for other programs, see GameServer, and "loadtest" runs the LoadGenerator against one, and "watch" prints
+     * every guess, win and load played on one.
+     * Passing "replay" plays a recorded game again from its seed and prints the verdict of each guess:
+     * replay width height seed x,y [x,y ...]
+     * Passing "stats" prints the statistics of the games finished on a board size: stats [width] [height]
+     * Passing "thumbnails" draws the preview of every save in a save directory ahead of time: thumbnails [directory]
+     * Passing "migrate" converts a directory tree of collected saves to the current format, optionally writing a
+     * ColumnarExport of their guesses: migrate sourceDirectory targetDirectory [exportDirectory] [threads]
+     * Passing "exportstats" scans such an export and prints its totals: exportstats exportDirectory
+     * Passing "scan" checks every save in a save directory, repairing or quarantining damaged ones: scan [directory]
+     * Passing a width and height opens the game window with a board of that size.
+     */
+    public static void main(String[] args) throws Exception
     {
+        if (args.length > 0 && args[0].equalsIgnoreCase("simulate"))
+        {
+            long games = args.length > 1 ? Long.parseLong(args[1]) : 1000000;
+            int width = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+            int height = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+            long seed = args.length > 4 ? Long.parseLong(args[4]) : 0;
+
+            long start = System.nanoTime();
+            BatchSimulator.Result result = new BatchSimulator(width, height, seed).Run(games);
+            long elapsed = (System.nanoTime() - start) / 1000000;
+            System.out.println(result + " time=" + elapsed + "ms");
+            return;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("solve"))
+        {
+            //solve [width] [height] [games] [seed] [metric]
+            int width = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+            int height = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+            int games = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+            long seed = args.length > 4 ? Long.parseLong(args[4]) : 0;
+            DistanceMetric metric = args.length > 5 ? DistanceMetric.FromName(args[5]) : DistanceMetric.EUCLIDEAN;
+            System.out.println(HotColdSolver.Evaluate(width, height, games, seed, metric));
+            return;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("server"))
+        {
+            GameServer.RunFromCommandLine(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("watch"))
+        {
+            GameServer.WatchFromCommandLine(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("loadtest"))
+        {
+            LoadGenerator.RunFromCommandLine(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("replay"))
+        {
+            RunReplay(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("stats"))
+        {
+            int width = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+            int height = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+            StatsStore stats = new StatsStore(Paths.get("GameStats.dat"));
+            long start = System.nanoTime();
+            StatsStore.BoardStats boardStats = stats.Stats(width, height);
+            long elapsed = (System.nanoTime() - start) / 1000000;
+            System.out.println(boardStats == null ? "No games finished on a " + width + " x " + height + " board"
+                    : boardStats + " load=" + elapsed + "ms");
+            stats.Close();
+            return;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("thumbnails"))
+        {
+            RenderThumbnails(args.length > 1 ? args[1] : "saves");
+            return;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("migrate"))
+        {
+            SaveMigrator.RunFromCommandLine(args);
+            return;
+        }
+        if (args.length > 1 && args[0].equalsIgnoreCase("exportstats"))
+        {
+            long start = System.nanoTime();
+            ColumnarExport.Summary summary = ColumnarExport.Scan(Paths.get(args[1]));
+            long elapsed = (System.nanoTime() - start) / 1000000;
+            System.out.println(summary + " time=" + elapsed + "ms");
+            return;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("scan"))
+        {
+            SaveIntegrityScanner.RunFromCommandLine(args);
+            return;
+        }
+        //Any other pair of arguments is taken as the board width and height.
+        if (args.length >= 2)
+        {
+            new GameScreen(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+            return;
+        }
         new GameScreen();
     }
+
+    /**
+     * Draws the preview of every save in a save directory on the thumbnail pool and reports how long it took.
+     */
+    static void RenderThumbnails(String directory) throws Exception
+    {
+        SaveLibrary library = new SaveLibrary(Paths.get(directory));
+        ThumbnailCache thumbnails = new ThumbnailCache(Paths.get(directory, "thumbnails"));
+        long start = System.nanoTime();
+        List<CompletableFuture<BufferedImage>> pending = new ArrayList<>();
+        for (SaveSlotInfo slot : library.List(SaveSlotInfo.BY_NAME))
+        {
+            pending.add(thumbnails.ThumbnailAsync(library.SlotPath(slot.name), SaveBrowser.THUMBNAIL_SIZE));
+        }
+        int failed = 0;
+        for (CompletableFuture<BufferedImage> thumbnail : pending)
+        {
+            try
+            {
+                thumbnail.join();
+            }
+            catch(Exception ex)
+            {
+                System.out.println(ex.getMessage());
+                failed++;
+            }
+        }
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        System.out.println("thumbnails=" + (pending.size() - failed) + " failed=" + failed + " stored="
+                + thumbnails.getStoredCount() + " bytes=" + thumbnails.getStoredBytes() + " time=" + elapsed + "ms");
+        thumbnails.Close();
+    }
+
+    /**
+     * Replays the guesses given on the command line and prints the verdicts, then times the same game replayed
+     * repeatedly to show the replay rate.
+     */
+    static void RunReplay(String[] args)
+    {
+        if (args.length < 5)
+        {
+            System.out.println("Usage: replay width height seed x,y [x,y ...]");
+            return;
+        }
+        int width = Integer.parseInt(args[1]);
+        int height = Integer.parseInt(args[2]);
+        long seed = Long.parseLong(args[3]);
+        GuessRecording recording = new GuessRecording();
+        for (int i = 4; i < args.length; i++)
+        {
+            String[] cell = args[i].split(",");
+            recording.Add(Integer.parseInt(cell[0]), Integer.parseInt(cell[1]));
+        }
+
+        GameReplay replay = new GameReplay(width, height, seed, recording);
+        System.out.println("treasure=" + replay.getEngine().getTreasureX() + "," + replay.getEngine().getTreasureY());
+        while (replay.HasNext())
+        {
+            int guess = replay.getPosition();
+            System.out.println((guess + 1) + " " + recording.getX(guess) + "," + recording.getY(guess) + " "
+                    + replay.Step());
+        }
+
+        byte[] verdicts = new byte[recording.getCount()];
+        long guesses = 0;
+        long start = System.nanoTime();
+        while (guesses < 10000000)
+        {
+            replay.Restart();
+            guesses += replay.RunAll(verdicts);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println("replayed " + guesses + " guesses at " + guesses * 1000000000L / elapsed + " guesses/s");
+    }
 }
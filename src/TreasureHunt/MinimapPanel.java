@@ -0,0 +1,184 @@
+package TreasureHunt;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+
+/**
+ * A small overview of a large board drawn from a MinimapPyramid, with the part of the board shown in the main
+ * viewport outlined. It opens showing the whole board at the pyramid's coarsest level; the mouse wheel zooms in and
+ * out a level at a time around the pointer, and clicking moves the main viewport to centre on the clicked spot.
+ *
+ * Only the tiles of the pyramid that fall inside the minimap are drawn, so the cost of painting does not depend on
+ * the size of the board.
+ */
+public class MinimapPanel extends JComponent
+{
+    /**
+     * Told which cell the player clicked on the minimap.
+     */
+    public interface JumpListener
+    {
+        void JumpTo(int x, int y);
+    }
+
+    MinimapPyramid pyramid;
+    int size;
+    //Main board viewport outlined on the minimap, and the size of its cells in pixels.
+    JViewport viewport;
+    int cellSize;
+    //Level shown and the block at the top left corner of the minimap.
+    int level;
+    int originX = 0;
+    int originY = 0;
+
+    /**
+     * @param pyramid The summary of the board to draw.
+     * @param size The length in pixels of each side of the minimap.
+     * @param viewport The viewport of the main board, outlined on the minimap and followed as it scrolls.
+     * @param cellSize The length in pixels of each cell in the main board.
+     * @param listener Told when the player clicks a spot on the minimap.
+     */
+    public MinimapPanel(MinimapPyramid pyramid, int size, JViewport viewport, int cellSize, JumpListener listener)
+    {
+        this.pyramid = pyramid;
+        this.size = size;
+        this.viewport = viewport;
+        this.cellSize = cellSize;
+        level = pyramid.getTopLevel();
+
+        setOpaque(true);
+        setPreferredSize(new Dimension(size, size));
+        setToolTipText("Click to jump there, scroll to zoom");
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                //Jumps to the middle of the block clicked, kept on the board.
+                long half = (1L << level) / 2;
+                int x = (int) Math.min(pyramid.getBoardWidth() - 1, ((long) (originX + e.getX()) << level) + half);
+                int y = (int) Math.min(pyramid.getBoardHeight() - 1, ((long) (originY + e.getY()) << level) + half);
+                if (x >= 0 && y >= 0)
+                {
+                    listener.JumpTo(x, y);
+                }
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                Zoom(level + (e.getWheelRotation() < 0 ? -1 : 1), e.getX(), e.getY());
+            }
+        };
+        addMouseListener(mouse);
+        addMouseWheelListener(mouse);
+        viewport.addChangeListener(e -> {
+            FollowViewport();
+            repaint();
+        });
+    }
+
+    /**
+     * Shows another level, keeping the cell under the given point of the minimap where it is.
+     */
+    void Zoom(int newLevel, int pointX, int pointY)
+    {
+        newLevel = Math.max(0, Math.min(pyramid.getTopLevel(), newLevel));
+        if (newLevel == level)
+        {
+            return;
+        }
+        long cellX = (long) (originX + pointX) << level;
+        long cellY = (long) (originY + pointY) << level;
+        level = newLevel;
+        MoveTo((int) (cellX >> level) - pointX, (int) (cellY >> level) - pointY);
+    }
+
+    /**
+     * Moves the top left corner of the minimap to the given block, kept so the minimap stays over the board.
+     */
+    private void MoveTo(int blockX, int blockY)
+    {
+        originX = Math.max(0, Math.min(pyramid.BlocksWide(level) - size, blockX));
+        originY = Math.max(0, Math.min(pyramid.BlocksHigh(level) - size, blockY));
+        repaint();
+    }
+
+    /**
+     * Recentres a zoomed in minimap on the main viewport once the viewport has moved out of it.
+     */
+    private void FollowViewport()
+    {
+        Rectangle view = ViewBlocks();
+        int centreX = view.x + view.width / 2;
+        int centreY = view.y + view.height / 2;
+        if (centreX < originX || centreX >= originX + size || centreY < originY || centreY >= originY + size)
+        {
+            MoveTo(centreX - size / 2, centreY - size / 2);
+        }
+    }
+
+    /**
+     * @return The part of the board shown in the main viewport, in blocks of the level shown.
+     */
+    private Rectangle ViewBlocks()
+    {
+        Rectangle view = viewport.getViewRect();
+        long left = (long) view.x / cellSize >> level;
+        long top = (long) view.y / cellSize >> level;
+        long right = ((long) (view.x + view.width) / cellSize >> level) + 1;
+        long bottom = ((long) (view.y + view.height) / cellSize >> level) + 1;
+        return new Rectangle((int) left, (int) top, (int) (right - left), (int) (bottom - top));
+    }
+
+    /**
+     * Brings the minimap into line with a changed cell of the board.
+     */
+    public void CellChanged(long key)
+    {
+        pyramid.CellChanged(key);
+        repaint();
+    }
+
+    /**
+     * Brings the minimap into line with a set of changed cells of the board.
+     */
+    public void CellsChanged(long[] keys)
+    {
+        pyramid.CellsChanged(keys);
+        repaint();
+    }
+
+    /**
+     * Counts the board afresh, such as after another slice is shown.
+     */
+    public void Rebuild()
+    {
+        pyramid.Rebuild();
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g)
+    {
+        g.setColor(new Color(MinimapPyramid.OFF_BOARD));
+        g.fillRect(0, 0, getWidth(), getHeight());
+
+        int tile = MinimapPyramid.TILE_SIZE;
+        int lastX = Math.min(pyramid.BlocksWide(level), originX + size) - 1;
+        int lastY = Math.min(pyramid.BlocksHigh(level), originY + size) - 1;
+        for (int tileY = originY / tile; tileY <= lastY / tile; tileY++)
+        {
+            for (int tileX = originX / tile; tileX <= lastX / tile; tileX++)
+            {
+                g.drawImage(pyramid.Tile(level, tileX, tileY), tileX * tile - originX, tileY * tile - originY, null);
+            }
+        }
+
+        Rectangle view = ViewBlocks();
+        g.setColor(Color.black);
+        g.drawRect(view.x - originX, view.y - originY, Math.max(1, view.width - 1), Math.max(1, view.height - 1));
+        g.setColor(Color.gray);
+        g.drawRect(0, 0, getWidth() - 1, getHeight() - 1);
+    }
+}
@@ -0,0 +1,288 @@
+package TreasureHunt;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Summarises the slice of a board being shown at every power of two of scale, for the minimap. Level L splits the
+ * board into blocks of 2^L x 2^L cells and counts the hot, cold and treasure cells in each. Only blocks holding a
+ * touched cell are kept, in CellMaps keyed like board cells, so memory grows with the number of guesses rather than
+ * the size of the board. Level 0 is the cells themselves, as they were last counted.
+ *
+ * A change to a cell adjusts the one block holding it on each level, so a guess costs a few map updates however large
+ * the board is. Levels are drawn as tiles of TILE_SIZE x TILE_SIZE blocks at a pixel each, kept in a least recently
+ * used cache of at most MAX_TILES images. A change recolours its pixel in each cached tile holding it rather than
+ * dropping the tiles, and tiles that are not cached are drawn from the counts when next shown.
+ */
+public class MinimapPyramid
+{
+    static final int TILE_SIZE = 64;
+    static final int MAX_TILES = 48;
+    static final int OFF_BOARD = 0xFFC0C0C0;
+    static final int UNTOUCHED = 0xFFFFFFFF;
+    //Share of the full colour shown by a block with a single guess in it, so lone guesses stay visible.
+    static final double MIN_STRENGTH = 0.35;
+
+    BoardState board;
+    int boardWidth;
+    int boardHeight;
+    //Coarsest level, the first at which the whole board fits in the minimap.
+    int topLevel;
+    //State of every touched cell of the slice as last counted, by board key.
+    CellMap counted = new CellMap();
+    //Counts of each state in each block, by level. Level 0 is held in counted instead.
+    CellMap[] hot;
+    CellMap[] cold;
+    CellMap[] treasure;
+    //Rendered tiles by TileKey, least recently used first.
+    LinkedHashMap<Long, BufferedImage> tiles = new LinkedHashMap<>(16, 0.75f, true);
+    long tilesRendered = 0;
+
+    /**
+     * @param board The board summarised, whose current slice is counted.
+     * @param size The length in pixels of the side of the minimap, which sets the coarsest level.
+     */
+    public MinimapPyramid(BoardState board, int size)
+    {
+        this.board = board;
+        boardWidth = board.getBoardWidth();
+        boardHeight = board.getBoardHeight();
+        topLevel = 0;
+        while (BlocksAcross(boardWidth, topLevel) > size || BlocksAcross(boardHeight, topLevel) > size)
+        {
+            topLevel++;
+        }
+        hot = new CellMap[topLevel + 1];
+        cold = new CellMap[topLevel + 1];
+        treasure = new CellMap[topLevel + 1];
+        for (int level = 1; level <= topLevel; level++)
+        {
+            hot[level] = new CellMap();
+            cold[level] = new CellMap();
+            treasure[level] = new CellMap();
+        }
+        Rebuild();
+    }
+
+    private static int BlocksAcross(int cells, int level)
+    {
+        return (int) (((long) cells + (1L << level) - 1) >> level);
+    }
+
+    /**
+     * Counts the current slice of the board afresh, such as after another slice is shown.
+     */
+    public void Rebuild()
+    {
+        counted.Clear();
+        for (int level = 1; level <= topLevel; level++)
+        {
+            hot[level].Clear();
+            cold[level].Clear();
+            treasure[level].Clear();
+        }
+        tiles.clear();
+        CellsChanged(board.TouchedCells());
+    }
+
+    /**
+     * Brings the counts into line with a cell of the board. Cells on other slices than the one shown are ignored.
+     *
+     * @param key The board key of the cell that may have changed.
+     */
+    public void CellChanged(long key)
+    {
+        BoardShape shape = board.getShape();
+        if (shape.SliceOf(key) != board.getSlice())
+        {
+            return;
+        }
+        int previous = counted.Get(key, 0);
+        int state = board.GetStateAt(key);
+        if (previous == state)
+        {
+            return;
+        }
+        if (state == 0)
+        {
+            counted.Remove(key);
+        }
+        else
+        {
+            counted.Put(key, state);
+        }
+
+        int x = shape.XOf(key);
+        int y = shape.YOf(key);
+        Recolour(0, x, y);
+        for (int level = 1; level <= topLevel; level++)
+        {
+            long block = BoardState.Key(x >> level, y >> level);
+            Count(level, previous, block, -1);
+            Count(level, state, block, 1);
+            Recolour(level, x >> level, y >> level);
+        }
+    }
+
+    /**
+     * Brings the counts into line with a set of cells, such as the cells changed by a load or an undo.
+     */
+    public void CellsChanged(long[] keys)
+    {
+        for (long key : keys)
+        {
+            CellChanged(key);
+        }
+    }
+
+    private void Count(int level, int state, long block, int change)
+    {
+        CellMap counts = state == CellState.HOT.ordinal() ? hot[level]
+                : state == CellState.COLD.ordinal() ? cold[level]
+                : state == CellState.TREASURE.ordinal() ? treasure[level] : null;
+        if (counts == null)
+        {
+            return;
+        }
+        int count = counts.Get(block, 0) + change;
+        if (count == 0)
+        {
+            counts.Remove(block);
+        }
+        else
+        {
+            counts.Put(block, count);
+        }
+    }
+
+    /**
+     * Redraws the pixel of a block in its tile, if that tile is cached.
+     */
+    private void Recolour(int level, int blockX, int blockY)
+    {
+        long key = TileKey(level, blockX / TILE_SIZE, blockY / TILE_SIZE);
+        if (!tiles.containsKey(key))
+        {
+            return;
+        }
+        int[] pixels = ((DataBufferInt) tiles.get(key).getRaster().getDataBuffer()).getData();
+        pixels[(blockY % TILE_SIZE) * TILE_SIZE + blockX % TILE_SIZE] = BlockColour(level, blockX, blockY);
+    }
+
+    /**
+     * Works out the colour of a block: a found treasure shows gold, otherwise the hot and cold guesses are mixed in
+     * proportion and faded towards white by how few of the block's cells have been guessed.
+     *
+     * @return The colour of the block as an RGB int.
+     */
+    public int BlockColour(int level, int blockX, int blockY)
+    {
+        long left = (long) blockX << level;
+        long top = (long) blockY << level;
+        if (left >= boardWidth || top >= boardHeight)
+        {
+            return OFF_BOARD;
+        }
+        if (level == 0)
+        {
+            int state = counted.Get(board.KeyOf(blockX, blockY), 0);
+            return state == 0 ? UNTOUCHED : BoardPanel.ColourForState(CellState.FromByte((byte) state)).getRGB();
+        }
+        long block = BoardState.Key(blockX, blockY);
+        if (treasure[level].Get(block, 0) > 0)
+        {
+            return BoardPanel.ColourForState(CellState.TREASURE).getRGB();
+        }
+        int hotCount = hot[level].Get(block, 0);
+        int coldCount = cold[level].Get(block, 0);
+        int guessed = hotCount + coldCount;
+        if (guessed == 0)
+        {
+            return UNTOUCHED;
+        }
+        long side = 1L << level;
+        double area = (double) Math.min(side, boardWidth - left) * Math.min(side, boardHeight - top);
+        double strength = Math.min(1, MIN_STRENGTH + (1 - MIN_STRENGTH) * Math.sqrt(guessed / area));
+        //Hot is red and cold is cyan, as on the board, so each channel is the share of one or the other.
+        int red = 255 - (int) Math.round((255 - 255.0 * hotCount / guessed) * strength);
+        int cyan = 255 - (int) Math.round((255 - 255.0 * coldCount / guessed) * strength);
+        return 0xFF000000 | (red << 16) | (cyan << 8) | cyan;
+    }
+
+    /**
+     * @return The tile of the given level holding blocks tileX * TILE_SIZE onwards across and tileY * TILE_SIZE
+     * onwards down, drawn from the counts if it is not cached.
+     */
+    public BufferedImage Tile(int level, int tileX, int tileY)
+    {
+        long key = TileKey(level, tileX, tileY);
+        BufferedImage tile = tiles.get(key);
+        if (tile != null)
+        {
+            return tile;
+        }
+        tile = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) tile.getRaster().getDataBuffer()).getData();
+        for (int y = 0; y < TILE_SIZE; y++)
+        {
+            for (int x = 0; x < TILE_SIZE; x++)
+            {
+                pixels[y * TILE_SIZE + x] = BlockColour(level, tileX * TILE_SIZE + x, tileY * TILE_SIZE + y);
+            }
+        }
+        tilesRendered++;
+        tiles.put(key, tile);
+        Iterator<Map.Entry<Long, BufferedImage>> eldest = tiles.entrySet().iterator();
+        while (tiles.size() > MAX_TILES && eldest.hasNext())
+        {
+            eldest.next();
+            eldest.remove();
+        }
+        return tile;
+    }
+
+    private static long TileKey(int level, int tileX, int tileY)
+    {
+        return ((long) level << 58) | ((long) tileX << 29) | tileY;
+    }
+
+    /**
+     * @return The number of blocks across the board at a level.
+     */
+    public int BlocksWide(int level)
+    {
+        return BlocksAcross(boardWidth, level);
+    }
+
+    /**
+     * @return The number of blocks down the board at a level.
+     */
+    public int BlocksHigh(int level)
+    {
+        return BlocksAcross(boardHeight, level);
+    }
+
+    //Default Getters.
+    public int getTopLevel() {
+        return topLevel;
+    }
+
+    public int getBoardWidth() {
+        return boardWidth;
+    }
+
+    public int getBoardHeight() {
+        return boardHeight;
+    }
+
+    public int getCachedTiles() {
+        return tiles.size();
+    }
+
+    public long getTilesRendered() {
+        return tilesRendered;
+    }
+}
@@ -0,0 +1,309 @@
+package TreasureHunt;
+
+/**
+ * Immutable map from cell keys to packed cell values, in the same encoding as the BoardState. Changing a cell returns
+ * a new map that shares every part of the old one except the path down to the changed cell, so keeping a version of
+ * the board for every step of the game costs a handful of small nodes per step rather than a copy of the board.
+ *
+ * The map is a hash array mapped trie. Keys are scrambled with GameEngine.Mix64, which gives a different 64 bit hash
+ * for every key, and each level of the trie picks one of 32 children using the next five bits of the hash. A node
+ * only holds the children that exist, found through a bitmap, so a node with three children costs three references.
+ * Two versions are compared by walking both tries and skipping any subtree they share, so the cost of finding the
+ * cells that differ depends on how much changed rather than on the size of the board.
+ */
+public final class PersistentCellMap
+{
+    static final int BITS = 5;
+    static final int MASK = (1 << BITS) - 1;
+    //Rough heap cost of a node and of each reference it holds, used to keep history within its memory budget.
+    static final int NODE_BYTES = 40;
+    static final int REFERENCE_BYTES = 4;
+    static final int LEAF_BYTES = 32;
+
+    public static final PersistentCellMap EMPTY = new PersistentCellMap(null, 0, 0);
+
+    //Either null, a Leaf or a Node.
+    final Object root;
+    final int size;
+    //Estimated bytes allocated when this version was made from the one before it.
+    final long allocatedBytes;
+
+    private PersistentCellMap(Object root, int size, long allocatedBytes)
+    {
+        this.root = root;
+        this.size = size;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    private static final class Leaf
+    {
+        final long key;
+        final long hash;
+        final int value;
+
+        Leaf(long key, long hash, int value)
+        {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+
+    private static final class Node
+    {
+        //Bit n is set when child n exists, the children are stored in bit order.
+        final int bitmap;
+        final Object[] children;
+
+        Node(int bitmap, Object[] children)
+        {
+            this.bitmap = bitmap;
+            this.children = children;
+        }
+
+        int Position(int bit)
+        {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+    }
+
+    /**
+     * Receives each cell found to differ between two versions of the map.
+     */
+    public interface ChangeVisitor
+    {
+        /**
+         * @param key The key of the cell.
+         * @param value The value of the cell in the newer version, 0 if it is not present there.
+         */
+        void Changed(long key, int value);
+    }
+
+    /**
+     * @return The value stored for the key, or 0 if there is none.
+     */
+    public int Get(long key)
+    {
+        long hash = GameEngine.Mix64(key);
+        Object current = root;
+        for (int shift = 0; current instanceof Node; shift += BITS)
+        {
+            Node node = (Node) current;
+            int bit = 1 << ((int) (hash >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0)
+            {
+                return 0;
+            }
+            current = node.children[node.Position(bit)];
+        }
+        return current != null && ((Leaf) current).key == key ? ((Leaf) current).value : 0;
+    }
+
+    public int Size()
+    {
+        return size;
+    }
+
+    public long getAllocatedBytes()
+    {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return A version of the map with the key set to the value, or without the key if the value is 0.
+     */
+    public PersistentCellMap Put(long key, int value)
+    {
+        long[] allocated = new long[1];
+        int[] sizeChange = new int[1];
+        long hash = GameEngine.Mix64(key);
+        Object newRoot = value == 0
+                ? Remove(root, key, hash, 0, allocated, sizeChange)
+                : Put(root, new Leaf(key, hash, value), 0, allocated, sizeChange);
+        if (newRoot == root)
+        {
+            return this;
+        }
+        if (value != 0)
+        {
+            allocated[0] += LEAF_BYTES;
+        }
+        return new PersistentCellMap(newRoot, size + sizeChange[0], allocated[0]);
+    }
+
+    private static Object Put(Object current, Leaf leaf, int shift, long[] allocated, int[] sizeChange)
+    {
+        if (current == null)
+        {
+            sizeChange[0] = 1;
+            return leaf;
+        }
+        if (current instanceof Leaf)
+        {
+            Leaf existing = (Leaf) current;
+            if (existing.key == leaf.key)
+            {
+                return existing.value == leaf.value ? existing : leaf;
+            }
+            //Two different keys share this slot, so push the existing one down a level and try again.
+            int bit = 1 << ((int) (existing.hash >>> shift) & MASK);
+            allocated[0] += NODE_BYTES + REFERENCE_BYTES;
+            return Put(new Node(bit, new Object[] { existing }), leaf, shift, allocated, sizeChange);
+        }
+
+        Node node = (Node) current;
+        int bit = 1 << ((int) (leaf.hash >>> shift) & MASK);
+        int position = node.Position(bit);
+        Object[] children;
+        if ((node.bitmap & bit) == 0)
+        {
+            children = new Object[node.children.length + 1];
+            System.arraycopy(node.children, 0, children, 0, position);
+            System.arraycopy(node.children, position, children, position + 1, node.children.length - position);
+            children[position] = leaf;
+            sizeChange[0] = 1;
+            allocated[0] += NODE_BYTES + (long) children.length * REFERENCE_BYTES;
+            return new Node(node.bitmap | bit, children);
+        }
+        Object child = node.children[position];
+        Object newChild = Put(child, leaf, shift + BITS, allocated, sizeChange);
+        if (newChild == child)
+        {
+            return node;
+        }
+        children = node.children.clone();
+        children[position] = newChild;
+        allocated[0] += NODE_BYTES + (long) children.length * REFERENCE_BYTES;
+        return new Node(node.bitmap, children);
+    }
+
+    private static Object Remove(Object current, long key, long hash, int shift, long[] allocated, int[] sizeChange)
+    {
+        if (current == null)
+        {
+            return null;
+        }
+        if (current instanceof Leaf)
+        {
+            if (((Leaf) current).key != key)
+            {
+                return current;
+            }
+            sizeChange[0] = -1;
+            return null;
+        }
+
+        Node node = (Node) current;
+        int bit = 1 << ((int) (hash >>> shift) & MASK);
+        if ((node.bitmap & bit) == 0)
+        {
+            return node;
+        }
+        int position = node.Position(bit);
+        Object child = node.children[position];
+        Object newChild = Remove(child, key, hash, shift + BITS, allocated, sizeChange);
+        if (newChild == child)
+        {
+            return node;
+        }
+        if (newChild == null)
+        {
+            if (node.children.length == 1)
+            {
+                return null;
+            }
+            //A node left holding a single leaf is replaced by the leaf, so equal maps have the same shape.
+            if (node.children.length == 2 && node.children[1 - position] instanceof Leaf)
+            {
+                return node.children[1 - position];
+            }
+            Object[] children = new Object[node.children.length - 1];
+            System.arraycopy(node.children, 0, children, 0, position);
+            System.arraycopy(node.children, position + 1, children, position, children.length - position);
+            allocated[0] += NODE_BYTES + (long) children.length * REFERENCE_BYTES;
+            return new Node(node.bitmap & ~bit, children);
+        }
+        if (node.children.length == 1 && newChild instanceof Leaf)
+        {
+            return newChild;
+        }
+        Object[] children = node.children.clone();
+        children[position] = newChild;
+        allocated[0] += NODE_BYTES + (long) children.length * REFERENCE_BYTES;
+        return new Node(node.bitmap, children);
+    }
+
+    /**
+     * Reports every cell whose value differs between this version and a newer one. Subtrees the two versions share
+     * are skipped without being visited.
+     *
+     * @param newer The version being compared against.
+     * @param visitor Told about each cell that differs, along with its value in the newer version.
+     */
+    public void Diff(PersistentCellMap newer, ChangeVisitor visitor)
+    {
+        Diff(root, newer.root, this, newer, visitor);
+    }
+
+    private static void Diff(Object older, Object newer, PersistentCellMap olderMap, PersistentCellMap newerMap,
+                             ChangeVisitor visitor)
+    {
+        if (older == newer)
+        {
+            return;
+        }
+        if (older instanceof Node && newer instanceof Node)
+        {
+            Node a = (Node) older;
+            Node b = (Node) newer;
+            int bits = a.bitmap | b.bitmap;
+            while (bits != 0)
+            {
+                int bit = Integer.lowestOneBit(bits);
+                bits &= ~bit;
+                Object childA = (a.bitmap & bit) != 0 ? a.children[a.Position(bit)] : null;
+                Object childB = (b.bitmap & bit) != 0 ? b.children[b.Position(bit)] : null;
+                Diff(childA, childB, olderMap, newerMap, visitor);
+            }
+            return;
+        }
+        //At least one side is a single leaf or empty. A key always sits in the same place in both tries, so looking
+        //the cells of each side up in the other map finds everything that changed within this part of the trie.
+        ForEach(older, (key, value) -> {
+            int newValue = newerMap.Get(key);
+            if (newValue != value)
+            {
+                visitor.Changed(key, newValue);
+            }
+        });
+        ForEach(newer, (key, value) -> {
+            if (olderMap.Get(key) == 0)
+            {
+                visitor.Changed(key, value);
+            }
+        });
+    }
+
+    /**
+     * Visits every cell in the map.
+     */
+    public void ForEach(ChangeVisitor visitor)
+    {
+        ForEach(root, visitor);
+    }
+
+    private static void ForEach(Object current, ChangeVisitor visitor)
+    {
+        if (current instanceof Leaf)
+        {
+            visitor.Changed(((Leaf) current).key, ((Leaf) current).value);
+        }
+        else if (current instanceof Node)
+        {
+            for (Object child : ((Node) current).children)
+            {
+                ForEach(child, visitor);
+            }
+        }
+    }
+}
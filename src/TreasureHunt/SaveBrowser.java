@@ -0,0 +1,238 @@
+package TreasureHunt;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableRowSorter;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dialog listing the slots of a SaveLibrary. The table is filled from the library index alone, so it opens quickly
+ * however many saves there are, and any column can be clicked to sort by it. The player can save the current game
+ * into a new or existing slot, load a slot or delete one.
+ *
+ * Given a ThumbnailCache, the first column previews each board. A preview is only asked for once its row is drawn, so
+ * only the visible rows are rendered, in parallel on the cache's pool, and each row is redrawn as its preview arrives.
+ */
+public class SaveBrowser extends JDialog
+{
+    static final String[] COLUMNS = { "Preview", "Name", "Board", "Guesses", "Last distance", "Status", "Saved" };
+    //Length in pixels of the longer side of each preview.
+    static final int THUMBNAIL_SIZE = 48;
+
+    /**
+     * Told when the player asks to save to or load from a slot. Both are called on the Event Dispatch Thread.
+     */
+    public interface SlotListener
+    {
+        void SaveToSlot(String name);
+
+        void LoadFromSlot(String name);
+    }
+
+    SaveLibrary library;
+    SlotListener listener;
+    List<SaveSlotInfo> slots = new ArrayList<>();
+    SlotTableModel model = new SlotTableModel();
+    JTable table = new JTable(model);
+    //Previews rendered so far and the slots already asked for, by slot name. Only used on the Event Dispatch Thread.
+    ThumbnailCache thumbnails;
+    Map<String, ImageIcon> previews = new HashMap<>();
+    Set<String> requested = new HashSet<>();
+
+    public SaveBrowser(JFrame owner, SaveLibrary library, SlotListener listener)
+    {
+        this(owner, library, null, listener);
+    }
+
+    /**
+     * @param thumbnails The cache the previews are drawn through, or null to leave the previews blank.
+     */
+    public SaveBrowser(JFrame owner, SaveLibrary library, ThumbnailCache thumbnails, SlotListener listener)
+    {
+        super(owner, "Saved games", true);
+        this.library = library;
+        this.thumbnails = thumbnails;
+        this.listener = listener;
+
+        TableRowSorter<SlotTableModel> sorter = new TableRowSorter<>(model);
+        sorter.setSortable(0, false);
+        table.setAutoCreateRowSorter(false);
+        table.setRowSorter(sorter);
+        table.setRowHeight(THUMBNAIL_SIZE + 4);
+        table.getColumnModel().getColumn(0).setPreferredWidth(THUMBNAIL_SIZE + 8);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.setFillsViewportHeight(true);
+
+        JButton btnSave = new JButton("Save As...");
+        JButton btnLoad = new JButton("Load");
+        JButton btnDelete = new JButton("Delete");
+        JButton btnClose = new JButton("Close");
+        btnSave.addActionListener(e -> SaveAs());
+        btnLoad.addActionListener(e -> LoadSelected());
+        btnDelete.addActionListener(e -> DeleteSelected());
+        btnClose.addActionListener(e -> dispose());
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttons.add(btnSave);
+        buttons.add(btnLoad);
+        buttons.add(btnDelete);
+        buttons.add(btnClose);
+
+        setLayout(new BorderLayout());
+        add(new JScrollPane(table), BorderLayout.CENTER);
+        add(buttons, BorderLayout.SOUTH);
+        setSize(680, 400);
+        setLocationRelativeTo(owner);
+        Refresh();
+    }
+
+    /**
+     * Reloads the list of slots from the library index.
+     */
+    void Refresh()
+    {
+        slots = library.List(SaveSlotInfo.NEWEST_FIRST);
+        model.fireTableDataChanged();
+    }
+
+    /**
+     * @return The preview of a slot, or null while it is still being drawn. The first call for a slot starts drawing
+     * it on the thumbnail pool.
+     */
+    private ImageIcon Preview(String name)
+    {
+        ImageIcon preview = previews.get(name);
+        if (preview != null || thumbnails == null || !requested.add(name))
+        {
+            return preview;
+        }
+        thumbnails.ThumbnailAsync(library.SlotPath(name), THUMBNAIL_SIZE).whenComplete((image, error) ->
+                SwingUtilities.invokeLater(() -> {
+                    if (error != null)
+                    {
+                        System.out.println(error.getMessage());
+                        return;
+                    }
+                    previews.put(name, new ImageIcon(image));
+                    for (int row = 0; row < slots.size(); row++)
+                    {
+                        if (slots.get(row).name.equals(name))
+                        {
+                            model.fireTableRowsUpdated(row, row);
+                        }
+                    }
+                }));
+        return null;
+    }
+
+    private String SelectedName()
+    {
+        int row = table.getSelectedRow();
+        return row < 0 ? null : slots.get(table.convertRowIndexToModel(row)).name;
+    }
+
+    private void SaveAs()
+    {
+        String selected = SelectedName();
+        String name = JOptionPane.showInputDialog(this, "Save name:", selected == null ? "" : selected);
+        if (name == null)
+        {
+            return;
+        }
+        try
+        {
+            SaveLibrary.CheckName(name);
+        }
+        catch(IllegalArgumentException ex)
+        {
+            JOptionPane.showMessageDialog(this, ex.getMessage());
+            return;
+        }
+        listener.SaveToSlot(name);
+        dispose();
+    }
+
+    private void LoadSelected()
+    {
+        String name = SelectedName();
+        if (name != null)
+        {
+            listener.LoadFromSlot(name);
+            dispose();
+        }
+    }
+
+    private void DeleteSelected()
+    {
+        String name = SelectedName();
+        if (name == null || JOptionPane.showConfirmDialog(this, "Delete " + name + "?", "Delete save",
+                JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION)
+        {
+            return;
+        }
+        try
+        {
+            library.Delete(name);
+        }
+        catch(Exception ex)
+        {
+            System.out.println(ex.getMessage());
+        }
+        Refresh();
+    }
+
+    /**
+     * Presents the slot summaries as table rows. Numeric columns report their classes so they sort as numbers.
+     */
+    private class SlotTableModel extends AbstractTableModel
+    {
+        @Override
+        public int getRowCount() {
+            return slots.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            switch (column)
+            {
+                case 0: return Icon.class;
+                case 3: return Integer.class;
+                case 4: return Double.class;
+                case 6: return Date.class;
+                default: return String.class;
+            }
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            SaveSlotInfo info = slots.get(row);
+            switch (column)
+            {
+                case 0: return Preview(info.name);
+                case 1: return info.name;
+                case 2: return info.boardWidth + " x " + info.boardHeight;
+                case 3: return info.guesses;
+                case 4: return info.lastGuessDistance;
+                case 5: return info.won ? "Won" : "In progress";
+                default: return new Date(info.savedAt);
+            }
+        }
+    }
+}
@@ -0,0 +1,470 @@
+package TreasureHunt;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Checks every save in a save directory in the background, so a damaged save is found before the player tries to
+ * load it rather than when they do. Each save is read whole through a channel and decoded, which verifies the
+ * checksum of a binary save and the layout of a CSV one, on a pool with a thread for each processor.
+ *
+ * A save that passes is remembered in a cache file in the directory by its size and modification time, so later scans
+ * skip it without reading it. The CRC32C of its contents is kept too, so a save whose time changed but whose bytes did
+ * not is only hashed again, not decoded. A save that fails is moved into a quarantine directory and, where enough of
+ * it is left to recover a game, replaced by what could be salvaged: the header and every believable cell of a binary
+ * save, or the cells up to the first damaged line of a CSV one.
+ *
+ * A slot saved by the game while the scan is running is written through a temporary file and moved into place, so
+ * it is never read half written. A damaged save is only quarantined if the file moved is still the one that was read,
+ * so a save replaced since is left alone.
+ */
+public class SaveIntegrityScanner
+{
+    static final String CACHE_FILE = "integrity.idx";
+    static final String QUARANTINE_DIRECTORY = "quarantine";
+    //Marks the start of the cache file, the characters "THIC".
+    static final int CACHE_MAGIC = 0x54484943;
+    static final short CACHE_VERSION = 1;
+
+    Path directory;
+    //The last check of each save that passed, by file name.
+    Map<String, CheckedSave> checked = new ConcurrentHashMap<>();
+    ThreadLocal<CsvSaveParser> parsers = ThreadLocal.withInitial(CsvSaveParser::new);
+
+    /**
+     * What a save was like when it last passed its check.
+     */
+    static class CheckedSave
+    {
+        long size;
+        //Modification time in nanoseconds since the epoch.
+        long modified;
+        int checksum;
+    }
+
+    /**
+     * What a scan made of a save.
+     */
+    public enum Verdict
+    {
+        INTACT,
+        CACHED,
+        REPAIRED,
+        QUARANTINED
+    }
+
+    /**
+     * The saves a scan checked and the ones it had to repair or quarantine.
+     */
+    public static class Report
+    {
+        int checked = 0;
+        int cached = 0;
+        //File name and the reason it failed, for every save that was repaired or quarantined.
+        Map<String, String> repaired = new TreeMap<>();
+        Map<String, String> quarantined = new TreeMap<>();
+        long elapsedNanos;
+
+        /**
+         * @return true if any save was repaired or quarantined.
+         */
+        public boolean HasChanges()
+        {
+            return !repaired.isEmpty() || !quarantined.isEmpty();
+        }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder text = new StringBuilder("checked=" + checked + " cached=" + cached + " repaired="
+                    + repaired.size() + " quarantined=" + quarantined.size() + " time="
+                    + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms");
+            repaired.forEach((name, reason) -> text.append("\nrepaired ").append(name).append(": ").append(reason));
+            quarantined.forEach((name, reason) -> text.append("\nquarantined ").append(name).append(": ")
+                    .append(reason));
+            return text.toString();
+        }
+
+        //Default Getters.
+        public int getChecked() {
+            return checked;
+        }
+
+        public int getCached() {
+            return cached;
+        }
+
+        public Map<String, String> getRepaired() {
+            return repaired;
+        }
+
+        public Map<String, String> getQuarantined() {
+            return quarantined;
+        }
+    }
+
+    /**
+     * The result of checking one save.
+     */
+    static class Outcome
+    {
+        String name;
+        Verdict verdict;
+        String reason;
+    }
+
+    /**
+     * scan [directory]
+     */
+    public static void RunFromCommandLine(String[] args) throws Exception
+    {
+        SaveIntegrityScanner scanner = new SaveIntegrityScanner(Paths.get(args.length > 1 ? args[1] : "saves"));
+        System.out.println(scanner.Scan());
+    }
+
+    /**
+     * @param directory The save directory to check. Nothing is read until a scan is started.
+     */
+    public SaveIntegrityScanner(Path directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Starts a scan on a background thread and returns at once.
+     *
+     * @return A future that completes with the report once every save has been checked.
+     */
+    public CompletableFuture<Report> ScanAsync()
+    {
+        CompletableFuture<Report> report = new CompletableFuture<>();
+        Thread scanner = new Thread(() -> {
+            try
+            {
+                report.complete(Scan());
+            }
+            catch(Exception ex)
+            {
+                report.completeExceptionally(ex);
+            }
+        }, "TreasureHunt save scanner");
+        scanner.setDaemon(true);
+        scanner.setPriority(Thread.MIN_PRIORITY);
+        scanner.start();
+        return report;
+    }
+
+    /**
+     * Checks every save in the directory on the calling thread and the check pool, then writes the cache.
+     *
+     * @return What the scan found.
+     */
+    public synchronized Report Scan() throws IOException, InterruptedException
+    {
+        long start = System.nanoTime();
+        Report report = new Report();
+        if (!Files.isDirectory(directory))
+        {
+            return report;
+        }
+        ReadCache();
+
+        List<Path> saves = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.{dat,csv}"))
+        {
+            for (Path file : files)
+            {
+                if (Files.isRegularFile(file))
+                {
+                    saves.add(file);
+                }
+            }
+        }
+
+        ExecutorService checkers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), task -> {
+            Thread thread = new Thread(task, "TreasureHunt save checker");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        List<Future<Outcome>> pending = new ArrayList<>();
+        try
+        {
+            for (Path save : saves)
+            {
+                pending.add(checkers.submit(() -> Check(save)));
+            }
+            for (Future<Outcome> future : pending)
+            {
+                Outcome outcome;
+                try
+                {
+                    outcome = future.get();
+                }
+                catch(ExecutionException ex)
+                {
+                    System.out.println(ex.getCause().getMessage());
+                    continue;
+                }
+                report.checked++;
+                if (outcome.verdict == Verdict.CACHED)
+                {
+                    report.cached++;
+                }
+                else if (outcome.verdict == Verdict.REPAIRED)
+                {
+                    report.repaired.put(outcome.name, outcome.reason);
+                }
+                else if (outcome.verdict == Verdict.QUARANTINED)
+                {
+                    report.quarantined.put(outcome.name, outcome.reason);
+                }
+            }
+        }
+        finally
+        {
+            checkers.shutdownNow();
+        }
+
+        //Saves that have gone since the last scan are forgotten.
+        List<String> present = new ArrayList<>();
+        saves.forEach(save -> present.add(save.getFileName().toString()));
+        checked.keySet().retainAll(present);
+        WriteCache();
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    /**
+     * Checks one save, skipping it if it has not changed since it last passed.
+     */
+    Outcome Check(Path save) throws IOException
+    {
+        Outcome outcome = new Outcome();
+        outcome.name = save.getFileName().toString();
+        BasicFileAttributes attributes = Files.readAttributes(save, BasicFileAttributes.class);
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        CheckedSave previous = checked.get(outcome.name);
+        if (previous != null && previous.size == size && previous.modified == modified)
+        {
+            outcome.verdict = Verdict.CACHED;
+            return outcome;
+        }
+
+        CsvSaveParser parser = parsers.get();
+        int length = parser.Read(save);
+        byte[] bytes = parser.bytes;
+        boolean binary = parser.IsBinary();
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 0, length);
+        CheckedSave passed = new CheckedSave();
+        passed.size = size;
+        passed.modified = modified;
+        passed.checksum = (int) crc.getValue();
+        if (previous != null && previous.size == size && previous.checksum == passed.checksum)
+        {
+            //Touched but not changed, such as by being copied, so it is not decoded again.
+            checked.put(outcome.name, passed);
+            outcome.verdict = Verdict.CACHED;
+            return outcome;
+        }
+
+        try
+        {
+            if (binary)
+            {
+                FileManager.DecodeBinary(ByteBuffer.wrap(bytes, 0, length), FileProgress.NONE, save);
+            }
+            else
+            {
+                parser.Parse(bytes, length, save);
+            }
+        }
+        catch(IOException | RuntimeException ex)
+        {
+            return Repair(save, bytes, length, binary, ex, outcome);
+        }
+
+        checked.put(outcome.name, passed);
+        outcome.verdict = Verdict.INTACT;
+        return outcome;
+    }
+
+    /**
+     * Moves a damaged save into quarantine and, if a game can be salvaged from it, writes that in its place.
+     *
+     * The game may save the slot at any moment, so the save is moved first and the moved file compared with the bytes
+     * that failed. A save replaced before the move is put back, and the salvage only takes the slot if it is still
+     * empty, so a save written by the game is never quarantined or overwritten.
+     */
+    private Outcome Repair(Path save, byte[] bytes, int length, boolean binary, Exception failure, Outcome outcome)
+            throws IOException
+    {
+        checked.remove(outcome.name);
+        outcome.reason = failure.getMessage();
+
+        Path quarantine = directory.resolve(QUARANTINE_DIRECTORY);
+        Files.createDirectories(quarantine);
+        Path moved = quarantine.resolve(outcome.name);
+        if (Files.exists(moved))
+        {
+            moved = quarantine.resolve(outcome.name + "." + System.currentTimeMillis());
+        }
+        Files.move(save, moved, StandardCopyOption.ATOMIC_MOVE);
+
+        byte[] quarantined = Files.readAllBytes(moved);
+        if (!Arrays.equals(quarantined, 0, quarantined.length, bytes, 0, length))
+        {
+            //Saved again since it was read, so it goes back and the next scan checks the new save instead.
+            try
+            {
+                Files.move(moved, save);
+            }
+            catch(FileAlreadyExistsException ex)
+            {
+                //Saved yet again since the move, and the newest save is the one to keep.
+                Files.delete(moved);
+            }
+            outcome.verdict = Verdict.INTACT;
+            return outcome;
+        }
+
+        GameData salvaged;
+        try
+        {
+            salvaged = binary ? FileManager.SalvageBinary(ByteBuffer.wrap(bytes, 0, length), save)
+                    : parsers.get().Salvage(bytes, length, save);
+        }
+        catch(IOException | RuntimeException ex)
+        {
+            salvaged = null;
+        }
+
+        outcome.verdict = Verdict.QUARANTINED;
+        if (salvaged != null)
+        {
+            Path repaired = quarantine.resolve(outcome.name + ".salvaged");
+            try
+            {
+                //Written in the current binary format, which the loader recognises whatever the file is called.
+                FileManager writer = new FileManager();
+                writer.saveFile = repaired.toString();
+                writer.WriteSnapshot(salvaged);
+                Files.move(repaired, save);
+                outcome.verdict = Verdict.REPAIRED;
+                outcome.reason += ", recovered " + salvaged.board.getTouchedCount() + " cells";
+            }
+            catch(FileAlreadyExistsException ex)
+            {
+                //The game saved the slot while the salvage was written, so the salvage is not needed.
+                Files.deleteIfExists(repaired);
+            }
+            catch(Exception ex)
+            {
+                System.out.println(ex.getMessage());
+            }
+        }
+        return outcome;
+    }
+
+    /**
+     * Reads the cache of saves that passed, starting afresh if it is missing or damaged.
+     */
+    private void ReadCache()
+    {
+        checked.clear();
+        Path path = directory.resolve(CACHE_FILE);
+        if (!Files.exists(path))
+        {
+            return;
+        }
+        try
+        {
+            byte[] data = Files.readAllBytes(path);
+            if (data.length < 14)
+            {
+                throw new IOException("Save check cache is too short: " + path);
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(data, 0, data.length - 4);
+            if ((int) crc.getValue() != ByteBuffer.wrap(data, data.length - 4, 4).getInt())
+            {
+                throw new IOException("Save check cache checksum does not match: " + path);
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 4));
+            if (in.readInt() != CACHE_MAGIC || in.readShort() != CACHE_VERSION)
+            {
+                throw new IOException("Unsupported save check cache: " + path);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++)
+            {
+                String name = in.readUTF();
+                CheckedSave save = new CheckedSave();
+                save.size = in.readLong();
+                save.modified = in.readLong();
+                save.checksum = in.readInt();
+                checked.put(name, save);
+            }
+        }
+        catch(IOException ex)
+        {
+            System.out.println(ex.getMessage());
+            checked.clear();
+        }
+    }
+
+    /**
+     * Writes the cache to a temporary file and moves it over the old one, finishing with a CRC32C checksum.
+     */
+    private void WriteCache() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + checked.size() * 48);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(CACHE_MAGIC);
+        out.writeShort(CACHE_VERSION);
+        Map<String, CheckedSave> sorted = new TreeMap<>(checked);
+        out.writeInt(sorted.size());
+        for (Map.Entry<String, CheckedSave> entry : sorted.entrySet())
+        {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue().size);
+            out.writeLong(entry.getValue().modified);
+            out.writeInt(entry.getValue().checksum);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        out.flush();
+
+        Path path = directory.resolve(CACHE_FILE);
+        Path temp = directory.resolve(CACHE_FILE + ".tmp");
+        Files.write(temp, bytes.toByteArray());
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
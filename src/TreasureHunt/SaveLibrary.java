@@ -0,0 +1,392 @@
+package TreasureHunt;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * A directory of named save slots. Each slot is an ordinary binary save written by a FileManager, and a small index
+ * file alongside them holds a SaveSlotInfo for every slot so the save browser can list and sort thousands of saves
+ * without opening any of them. The index is rewritten in full after every change, through a temporary file so it is
+ * never left half written, and rebuilt from the slots themselves if it is missing or damaged.
+ *
+ * Recently loaded games are kept in a least recently used cache bounded by an estimate of their size, so switching
+ * back and forth between saves does not read them from disk each time. The cache holds its own copies of the games.
+ *
+ * The library may be used from the background file worker and the Event Dispatch Thread at once, so every public
+ * method is synchronized.
+ */
+public class SaveLibrary
+{
+    static final String SLOT_EXTENSION = ".dat";
+    static final String INDEX_FILE = "index.idx";
+    //Marks the start of the index file, the characters "THSI".
+    static final int INDEX_MAGIC = 0x54485349;
+    static final short INDEX_VERSION = 1;
+    static final long DEFAULT_CACHE_BYTES = 32L * 1024 * 1024;
+    static final int MAX_NAME_LENGTH = 64;
+
+    Path directory;
+    //Slot summaries by name, kept sorted by name. Names are compared ignoring case, as the file systems of Windows
+    //and macOS compare the file names they become.
+    Map<String, SaveSlotInfo> index = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    long cacheBytes;
+    long cachedBytes = 0;
+    LinkedHashMap<String, GameData> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    public SaveLibrary(Path directory) throws IOException
+    {
+        this(directory, DEFAULT_CACHE_BYTES);
+    }
+
+    /**
+     * Opens the library in the given directory, creating the directory if needed.
+     *
+     * @param directory The directory holding the slots and their index.
+     * @param cacheBytes The estimated size in bytes of loaded games to keep in memory.
+     */
+    public SaveLibrary(Path directory, long cacheBytes) throws IOException
+    {
+        this.directory = directory;
+        this.cacheBytes = cacheBytes;
+        Files.createDirectories(directory);
+        if (!Files.exists(directory.resolve(INDEX_FILE)))
+        {
+            RebuildIndex();
+            return;
+        }
+        try
+        {
+            ReadIndex();
+        }
+        catch(IOException ex)
+        {
+            System.out.println(ex.getMessage());
+            index.clear();
+            RebuildIndex();
+        }
+    }
+
+    /**
+     * @return Every slot in the library in the given order.
+     */
+    public synchronized List<SaveSlotInfo> List(Comparator<SaveSlotInfo> order)
+    {
+        List<SaveSlotInfo> slots = new ArrayList<>(index.values());
+        slots.sort(order);
+        return slots;
+    }
+
+    public synchronized int Size()
+    {
+        return index.size();
+    }
+
+    /**
+     * Saves a game into the named slot, replacing anything already saved there.
+     *
+     * @param name The name of the slot.
+     * @param gameData The game being saved, which is not touched again by the caller.
+     * @param progress Told about progress and asked whether to carry on.
+     */
+    public synchronized void Save(String name, GameData gameData, FileProgress progress) throws IOException
+    {
+        CheckName(name);
+        name = Canonical(name);
+        SlotFile(name).WriteSnapshot(gameData, progress);
+        index.put(name, SaveSlotInfo.FromGame(name, gameData, System.currentTimeMillis()));
+        WriteIndex();
+        Cache(name, Copy(gameData));
+    }
+
+    /**
+     * Loads the game held in the named slot, from the cache if it was loaded or saved recently.
+     *
+     * @param name The name of the slot.
+     * @param progress Told about progress and asked whether to carry on.
+     * @return A copy of the game that the caller is free to change.
+     */
+    public synchronized GameData Load(String name, FileProgress progress) throws IOException
+    {
+        CheckName(name);
+        name = Canonical(name);
+        GameData cached = cache.get(name);
+        if (cached != null)
+        {
+            return Copy(cached);
+        }
+        GameData gameData = SlotFile(name).ReadDataFromFile(SlotPath(name), progress);
+        Cache(name, Copy(gameData));
+        return gameData;
+    }
+
+    /**
+     * Deletes the named slot.
+     */
+    public synchronized void Delete(String name) throws IOException
+    {
+        CheckName(name);
+        name = Canonical(name);
+        Files.deleteIfExists(SlotPath(name));
+        Forget(name);
+        WriteIndex();
+    }
+
+    /**
+     * Brings the index and cache into line with a scan of the directory: slots that were quarantined are dropped and
+     * slots that were repaired are summarised afresh from what was salvaged.
+     *
+     * @param report The report of a SaveIntegrityScanner scan of this library's directory.
+     */
+    public synchronized void ApplyScan(SaveIntegrityScanner.Report report) throws IOException
+    {
+        for (String fileName : report.getQuarantined().keySet())
+        {
+            Forget(SlotName(fileName));
+        }
+        for (String fileName : report.getRepaired().keySet())
+        {
+            String name = SlotName(fileName);
+            Forget(name);
+            if (name != null)
+            {
+                try
+                {
+                    GameData gameData = SlotFile(name).ReadDataFromFile(SlotPath(name));
+                    index.put(name, SaveSlotInfo.FromGame(name, gameData,
+                            Files.getLastModifiedTime(SlotPath(name)).toMillis()));
+                }
+                catch(Exception ex)
+                {
+                    System.out.println(ex.getMessage());
+                }
+            }
+        }
+        WriteIndex();
+    }
+
+    /**
+     * @return The slot held in a file of the directory, or null if the file is not a slot.
+     */
+    private static String SlotName(String fileName)
+    {
+        return fileName.endsWith(SLOT_EXTENSION) ? fileName.substring(0, fileName.length() - SLOT_EXTENSION.length())
+                : null;
+    }
+
+    private void Forget(String name)
+    {
+        if (name == null)
+        {
+            return;
+        }
+        GameData cached = cache.remove(Canonical(name));
+        index.remove(name);
+        if (cached != null)
+        {
+            cachedBytes -= EstimateBytes(cached);
+        }
+    }
+
+    /**
+     * Slot names become file names, so they are kept to letters, digits, spaces, dashes and underscores. Windows
+     * drops spaces from the ends of file names and reserves device names such as CON and NUL whatever their
+     * extension, so those are refused too.
+     */
+    static void CheckName(String name)
+    {
+        if (name == null || name.isEmpty() || name.length() > MAX_NAME_LENGTH
+                || !name.matches("[A-Za-z0-9 _-]+") || !name.trim().equals(name))
+        {
+            throw new IllegalArgumentException("Save names may only use letters, digits, spaces, - and _, and may "
+                    + "not start or end with a space");
+        }
+        if (name.matches("(?i)(CON|PRN|AUX|NUL|COM[1-9]|LPT[1-9])"))
+        {
+            throw new IllegalArgumentException("\"" + name + "\" is reserved by Windows and cannot be a save name");
+        }
+    }
+
+    /**
+     * @return The name of the slot a name refers to: the existing slot whose name differs only in case, if there is
+     * one, so "game" saves into "Game" rather than making a second slot for the same file.
+     */
+    private String Canonical(String name)
+    {
+        SaveSlotInfo existing = index.get(name);
+        return existing == null ? name : existing.name;
+    }
+
+    Path SlotPath(String name)
+    {
+        return directory.resolve(name + SLOT_EXTENSION);
+    }
+
+    private FileManager SlotFile(String name)
+    {
+        FileManager file = new FileManager();
+        file.saveFile = SlotPath(name).toString();
+        return file;
+    }
+
+    /**
+     * Adds a game to the cache, dropping the least recently used games until the cache fits its budget.
+     */
+    private void Cache(String name, GameData gameData)
+    {
+        GameData previous = cache.put(name, gameData);
+        if (previous != null)
+        {
+            cachedBytes -= EstimateBytes(previous);
+        }
+        cachedBytes += EstimateBytes(gameData);
+        Iterator<Map.Entry<String, GameData>> eldest = cache.entrySet().iterator();
+        while (cachedBytes > cacheBytes && eldest.hasNext())
+        {
+            GameData evicted = eldest.next().getValue();
+            cachedBytes -= EstimateBytes(evicted);
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @return A rough size in bytes of a game in memory, dominated by the cell map of its board and its treasures.
+     */
+    static long EstimateBytes(GameData gameData)
+    {
+        long treasureBytes = gameData.treasures == null ? 0 : gameData.treasures.getAllocatedBytes();
+        return 128 + gameData.board.getAllocatedBytes() + treasureBytes;
+    }
+
+    private static GameData Copy(GameData gameData)
+    {
+        GameData copy = new GameData();
+        copy.boardWidth = gameData.boardWidth;
+        copy.boardHeight = gameData.boardHeight;
+        copy.shape = gameData.shape;
+        copy.treasurePosition = gameData.treasurePosition.getSize();
+        copy.treasures = gameData.treasures == null ? null : gameData.treasures.Copy();
+        copy.guessNumber = gameData.guessNumber;
+        copy.lastGuessDistance = gameData.lastGuessDistance;
+        copy.seed = gameData.seed;
+        copy.metric = gameData.metric;
+        copy.board = gameData.board.Copy();
+        return copy;
+    }
+
+    /**
+     * Writes the whole index to a temporary file and moves it over the old one, finishing with a CRC32 checksum.
+     */
+    private void WriteIndex() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + index.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(INDEX_MAGIC);
+        out.writeShort(INDEX_VERSION);
+        out.writeInt(index.size());
+        for (SaveSlotInfo info : index.values())
+        {
+            out.writeUTF(info.name);
+            out.writeInt(info.boardWidth);
+            out.writeInt(info.boardHeight);
+            out.writeInt(info.guesses);
+            out.writeDouble(info.lastGuessDistance);
+            out.writeBoolean(info.won);
+            out.writeLong(info.savedAt);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        out.flush();
+
+        Path path = directory.resolve(INDEX_FILE);
+        Path temp = directory.resolve(INDEX_FILE + ".tmp");
+        Files.write(temp, bytes.toByteArray());
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the index, checking its checksum.
+     */
+    private void ReadIndex() throws IOException
+    {
+        Path path = directory.resolve(INDEX_FILE);
+        byte[] data = Files.readAllBytes(path);
+        if (data.length < 14)
+        {
+            throw new IOException("Save index is too short: " + path);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 4);
+        if ((int) crc.getValue() != ByteBuffer.wrap(data, data.length - 4, 4).getInt())
+        {
+            throw new IOException("Save index checksum does not match: " + path);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 4));
+        if (in.readInt() != INDEX_MAGIC || in.readShort() != INDEX_VERSION)
+        {
+            throw new IOException("Unsupported save index: " + path);
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++)
+        {
+            SaveSlotInfo info = new SaveSlotInfo();
+            info.name = in.readUTF();
+            info.boardWidth = in.readInt();
+            info.boardHeight = in.readInt();
+            info.guesses = in.readInt();
+            info.lastGuessDistance = in.readDouble();
+            info.won = in.readBoolean();
+            info.savedAt = in.readLong();
+            index.put(info.name, info);
+        }
+    }
+
+    /**
+     * Rebuilds the index by reading every slot in the directory. Slots that cannot be read are left out.
+     */
+    private void RebuildIndex() throws IOException
+    {
+        index.clear();
+        try (DirectoryStream<Path> slots = Files.newDirectoryStream(directory, "*" + SLOT_EXTENSION))
+        {
+            for (Path slot : slots)
+            {
+                String fileName = slot.getFileName().toString();
+                String name = fileName.substring(0, fileName.length() - SLOT_EXTENSION.length());
+                try
+                {
+                    CheckName(name);
+                    if (index.containsKey(name))
+                    {
+                        throw new IOException("Skipped " + fileName + ", which differs only in case from slot "
+                                + Canonical(name));
+                    }
+                    GameData gameData = new FileManager().ReadDataFromFile(slot);
+                    index.put(name, SaveSlotInfo.FromGame(name, gameData, Files.getLastModifiedTime(slot).toMillis()));
+                }
+                catch(Exception ex)
+                {
+                    System.out.println(ex.getMessage());
+                }
+            }
+        }
+        WriteIndex();
+    }
+}
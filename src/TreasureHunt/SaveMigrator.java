@@ -0,0 +1,315 @@
+package TreasureHunt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Converts a directory tree of saves collected from players to the current binary format, mirroring the tree under
+ * a target directory with every save renamed to .dat, and optionally adds every game to a ColumnarExport as it goes.
+ * Both CSV saves and binary saves of any earlier version are read.
+ *
+ * One thread walks the tree and hands each save to a pool with a worker thread for each processor, waiting once a
+ * few saves for each worker are queued so the walk never races ahead of the work. Every worker keeps its own
+ * CsvSaveParser, so its read buffer and cell arrays are reused from save to save, and its own part of the export, so
+ * no file is shared between threads. Converted saves are not forced to disk one by one as the game's own saves are:
+ * a save cut short by a crash fails its checksum and is simply converted again on the next run.
+ */
+public class SaveMigrator
+{
+    //Saves queued for each worker before the walk waits.
+    static final int QUEUED_PER_WORKER = 64;
+    //How often the walk prints its progress.
+    static final long PROGRESS_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    Path sourceDirectory;
+    Path targetDirectory;
+    //Null when no export is wanted.
+    Path exportDirectory;
+    int threads;
+
+    LongAdder converted = new LongAdder();
+    LongAdder failed = new LongAdder();
+    LongAdder bytesRead = new LongAdder();
+    //Target directories already created, so each is only created once however many saves it holds.
+    Set<Path> createdDirectories = ConcurrentHashMap.newKeySet();
+    AtomicInteger parts = new AtomicInteger();
+    ConcurrentLinkedQueue<Worker> workers = new ConcurrentLinkedQueue<>();
+    ThreadLocal<Worker> worker = ThreadLocal.withInitial(this::NewWorker);
+
+    /**
+     * What each worker thread keeps from save to save.
+     */
+    static class Worker
+    {
+        CsvSaveParser parser = new CsvSaveParser();
+        ColumnarExport export;
+        IOException exportFailure;
+    }
+
+    /**
+     * The totals of a finished migration.
+     */
+    public static class Result
+    {
+        long converted;
+        long failed;
+        long bytes;
+        long games;
+        long guesses;
+        long elapsedNanos;
+
+        @Override
+        public String toString()
+        {
+            long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+            return "converted=" + converted + " failed=" + failed + " bytes=" + bytes + " games=" + games
+                    + " guesses=" + guesses + " time=" + millis + "ms rate=" + (converted * 1000 / millis) + "/s";
+        }
+
+        //Default Getters.
+        public long getConverted() {
+            return converted;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+    }
+
+    /**
+     * migrate sourceDirectory targetDirectory [exportDirectory] [threads]
+     */
+    public static void RunFromCommandLine(String[] args) throws Exception
+    {
+        if (args.length < 3)
+        {
+            System.out.println("Usage: migrate sourceDirectory targetDirectory [exportDirectory] [threads]");
+            return;
+        }
+        Path export = args.length > 3 && !args[3].equals("-") ? Paths.get(args[3]) : null;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        SaveMigrator migrator = new SaveMigrator(Paths.get(args[1]), Paths.get(args[2]), export, threads);
+        System.out.println(migrator.Run());
+    }
+
+    /**
+     * @param sourceDirectory The tree of saves to convert.
+     * @param targetDirectory Where the converted saves are written, in the same layout as the source.
+     * @param exportDirectory Where the columnar export is written, or null for none.
+     * @param threads The number of worker threads.
+     */
+    public SaveMigrator(Path sourceDirectory, Path targetDirectory, Path exportDirectory, int threads)
+    {
+        this.sourceDirectory = sourceDirectory.toAbsolutePath().normalize();
+        this.targetDirectory = targetDirectory.toAbsolutePath().normalize();
+        this.exportDirectory = exportDirectory == null ? null : exportDirectory.toAbsolutePath().normalize();
+        this.threads = Math.max(1, threads);
+    }
+
+    private Worker NewWorker()
+    {
+        Worker created = new Worker();
+        if (exportDirectory != null)
+        {
+            try
+            {
+                created.export = new ColumnarExport(exportDirectory, parts.getAndIncrement());
+            }
+            catch(IOException ex)
+            {
+                created.exportFailure = ex;
+            }
+        }
+        workers.add(created);
+        return created;
+    }
+
+    /**
+     * Walks the source tree and converts every save in it, then closes the parts of the export. Parts left in the
+     * export directory by an earlier run are removed first.
+     *
+     * @return The totals of the migration.
+     */
+    public Result Run() throws IOException, InterruptedException
+    {
+        long start = System.nanoTime();
+        if (exportDirectory != null)
+        {
+            ColumnarExport.Clear(exportDirectory);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "TreasureHunt save migrator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore queued = new Semaphore(threads * QUEUED_PER_WORKER);
+        long[] nextProgress = {start + PROGRESS_NANOS};
+
+        try
+        {
+            Files.walkFileTree(sourceDirectory, new SimpleFileVisitor<>()
+            {
+                @Override
+                public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes)
+                {
+                    //Never convert the output of this or an earlier run when it sits inside the source tree.
+                    boolean output = directory.equals(targetDirectory) || directory.equals(exportDirectory);
+                    return output ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException
+                {
+                    if (!attributes.isRegularFile() || !IsSave(file))
+                    {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    try
+                    {
+                        queued.acquire();
+                    }
+                    catch(InterruptedException ex)
+                    {
+                        Thread.currentThread().interrupt();
+                        return FileVisitResult.TERMINATE;
+                    }
+                    pool.execute(() -> {
+                        try
+                        {
+                            Convert(file);
+                        }
+                        finally
+                        {
+                            queued.release();
+                        }
+                    });
+                    if (System.nanoTime() > nextProgress[0])
+                    {
+                        nextProgress[0] += PROGRESS_NANOS;
+                        System.out.println("converted=" + converted.sum() + " failed=" + failed.sum());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException ex)
+                {
+                    System.out.println(ex.getMessage());
+                    failed.increment();
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        finally
+        {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+
+        Result result = new Result();
+        for (Worker finished : workers)
+        {
+            if (finished.export != null)
+            {
+                finished.export.Close();
+                result.games += finished.export.getGames();
+                result.guesses += finished.export.getGuesses();
+            }
+        }
+        result.converted = converted.sum();
+        result.failed = failed.sum();
+        result.bytes = bytesRead.sum();
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * @return true for the files the game has ever saved to: CSV saves and binary saves.
+     */
+    static boolean IsSave(Path file)
+    {
+        String name = file.getFileName().toString();
+        return name.regionMatches(true, name.length() - 4, ".csv", 0, 4)
+                || name.regionMatches(true, name.length() - 4, ".dat", 0, 4);
+    }
+
+    /**
+     * Converts one save on the calling worker thread, counting it as converted or failed.
+     */
+    void Convert(Path file)
+    {
+        Worker state = worker.get();
+        try
+        {
+            if (state.exportFailure != null)
+            {
+                throw state.exportFailure;
+            }
+            CsvSaveParser parser = state.parser;
+            int length = parser.Read(file);
+            bytesRead.add(length);
+            GameData gameData = parser.IsBinary()
+                    ? FileManager.DecodeBinary(ByteBuffer.wrap(parser.bytes, 0, length), FileProgress.NONE, file)
+                    : parser.Parse(parser.bytes, length, file);
+
+            Path relative = sourceDirectory.relativize(file);
+            Write(gameData, TargetOf(relative));
+            if (state.export != null)
+            {
+                state.export.Add(gameData, relative.toString());
+            }
+            converted.increment();
+        }
+        catch(Exception ex)
+        {
+            System.out.println(ex.getMessage());
+            failed.increment();
+        }
+    }
+
+    /**
+     * @return Where the converted save of a source save goes: the same place under the target, ending in .dat.
+     */
+    Path TargetOf(Path relative)
+    {
+        String name = relative.getFileName().toString();
+        return targetDirectory.resolve(relative).resolveSibling(name.substring(0, name.length() - 4) + ".dat");
+    }
+
+    private void Write(GameData gameData, Path target) throws IOException
+    {
+        Path parent = target.getParent();
+        if (!createdDirectories.contains(parent))
+        {
+            //Two workers may both create a new directory, which is harmless, but neither writes before it exists.
+            Files.createDirectories(parent);
+            createdDirectories.add(parent);
+        }
+        ByteBuffer buffer = FileManager.EncodeBinary(gameData, FileProgress.NONE);
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+        }
+    }
+}
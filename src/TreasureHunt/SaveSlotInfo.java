@@ -0,0 +1,40 @@
+package TreasureHunt;
+
+import java.util.Comparator;
+
+/**
+ * Summary of a named save slot held in the SaveLibrary index, enough to list and sort saves without opening them.
+ */
+public class SaveSlotInfo
+{
+    public static final Comparator<SaveSlotInfo> BY_NAME = Comparator.comparing(info -> info.name);
+    public static final Comparator<SaveSlotInfo> NEWEST_FIRST =
+            Comparator.comparingLong((SaveSlotInfo info) -> info.savedAt).reversed();
+    public static final Comparator<SaveSlotInfo> BY_GUESSES = Comparator.comparingInt(info -> info.guesses);
+
+    public String name;
+    public int boardWidth;
+    public int boardHeight;
+    //Number of guesses made in the saved game.
+    public int guesses;
+    public double lastGuessDistance;
+    public boolean won;
+    //Time the slot was last saved, in milliseconds since the epoch.
+    public long savedAt;
+
+    /**
+     * Summarises a game about to be saved into the named slot.
+     */
+    static SaveSlotInfo FromGame(String name, GameData gameData, long savedAt)
+    {
+        SaveSlotInfo info = new SaveSlotInfo();
+        info.name = name;
+        info.boardWidth = gameData.boardWidth;
+        info.boardHeight = gameData.boardHeight;
+        info.guesses = Math.max(0, gameData.guessNumber - 1);
+        info.lastGuessDistance = gameData.lastGuessDistance;
+        info.won = TreasureIndex.Of(gameData).getRemaining() == 0;
+        info.savedAt = savedAt;
+        return info;
+    }
+}
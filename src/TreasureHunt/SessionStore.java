@@ -0,0 +1,298 @@
+package TreasureHunt;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded in-memory store of the sessions hosted by the GameServer. Sessions that have not been used for a while are
+ * saved to the session directory through the FileManager and removed from memory by a background sweep. When the
+ * store is full the least recently used session is evicted the same way to make room. An evicted session is loaded
+ * back from disk the next time it is asked for, so players never notice the eviction.
+ *
+ * Sessions are kept in order of use, so the least recently used session is always the first. Evicted sessions are
+ * handed to the sweeper thread to be saved, and can still be found until they are on disk, so a new game seldom waits
+ * for a save. Once more than MAX_UNSAVED sessions are waiting, the threads asking for sessions save them as well, so a
+ * flood of new games cannot outrun the sweeper and hold evicted sessions in memory beyond the bound. A session that
+ * cannot be saved, such as when the session directory is full, is dropped.
+ */
+public class SessionStore
+{
+    int maxSessions;
+    long idleNanos;
+    Path sessionDirectory;
+    //Sessions in memory, least recently used first, and sessions evicted but not yet saved. Both guarded by sessions.
+    LinkedHashMap<Long, GameSession> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    Map<Long, GameSession> saving = new HashMap<>();
+    //Most sessions left waiting for the sweeper before the threads asking for sessions save them themselves.
+    static final int MAX_UNSAVED = 256;
+    AtomicLong nextSessionId = new AtomicLong(1);
+    //Split once per session so every session draws its games from an independent stream.
+    SplittableRandom seeds = new SplittableRandom();
+
+    ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "SessionStore sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param maxSessions The largest number of sessions kept in memory at once.
+     * @param idleSeconds How long a session may go unused before it is saved and evicted.
+     * @param sessionDirectory Where evicted and saved sessions are written.
+     */
+    public SessionStore(int maxSessions, long idleSeconds, Path sessionDirectory) throws IOException
+    {
+        this.maxSessions = maxSessions;
+        this.idleNanos = TimeUnit.SECONDS.toNanos(idleSeconds);
+        this.sessionDirectory = sessionDirectory;
+        Files.createDirectories(sessionDirectory);
+        long sweepPeriod = Math.max(1, idleSeconds / 4);
+        sweeper.scheduleWithFixedDelay(this::EvictIdleSessions, sweepPeriod, sweepPeriod, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Starts a new game, evicting the least recently used session first if the store is full.
+     *
+     * @return The new session.
+     */
+    public GameSession NewSession(int boardWidth, int boardHeight) throws IOException
+    {
+        long sessionId = nextSessionId.getAndIncrement();
+        GameSession session = Admit(new GameSession(sessionId, boardWidth, boardHeight, SplitSeeds()));
+        SaveBacklog();
+        return session;
+    }
+
+    /**
+     * Adds a session to the store unless another thread already added one with the same ID, first evicting the least
+     * recently used sessions if the store is full. The evicted sessions are saved on the sweeper thread. A session
+     * waiting to be saved is taken back out of saving, so it is never missing from both.
+     *
+     * @return The session now in the store.
+     */
+    private GameSession Admit(GameSession session)
+    {
+        List<GameSession> evicted = new ArrayList<>();
+        GameSession current;
+        synchronized (sessions)
+        {
+            saving.remove(session.sessionId, session);
+            current = sessions.get(session.sessionId);
+            if (current == null)
+            {
+                Iterator<GameSession> eldest = sessions.values().iterator();
+                while (sessions.size() >= maxSessions && eldest.hasNext())
+                {
+                    GameSession oldest = eldest.next();
+                    eldest.remove();
+                    saving.put(oldest.sessionId, oldest);
+                    evicted.add(oldest);
+                }
+                sessions.put(session.sessionId, session);
+                current = session;
+            }
+        }
+        for (GameSession oldest : evicted)
+        {
+            sweeper.execute(() -> Evict(oldest));
+        }
+        return current;
+    }
+
+    /**
+     * Finds a session, loading it back from disk if it was evicted.
+     *
+     * @return The session, or null if no such session exists.
+     */
+    public GameSession GetSession(long sessionId) throws IOException
+    {
+        GameSession session;
+        GameSession unsaved;
+        synchronized (sessions)
+        {
+            session = sessions.get(sessionId);
+            unsaved = saving.get(sessionId);
+        }
+        if (session == null && unsaved != null)
+        {
+            session = Revive(unsaved);
+        }
+        if (session == null && Files.exists(SessionPath(sessionId)))
+        {
+            GameData gameData = SessionFile(sessionId).ReadDataFromFile(SessionPath(sessionId));
+            session = Admit(new GameSession(sessionId, gameData, SplitSeeds()));
+        }
+        if (session != null)
+        {
+            session.Touch();
+        }
+        SaveBacklog();
+        return session;
+    }
+
+    /**
+     * Saves a session to its file in the session directory.
+     */
+    public void Save(GameSession session) throws IOException
+    {
+        SessionFile(session.sessionId).WriteSnapshot(session.Snapshot());
+    }
+
+    /**
+     * Replaces a session's game with the copy last saved to disk.
+     */
+    public void Load(GameSession session) throws IOException
+    {
+        Path path = SessionPath(session.sessionId);
+        if (!Files.exists(path))
+        {
+            throw new IOException("Session " + session.sessionId + " has not been saved");
+        }
+        session.Restore(SessionFile(session.sessionId).ReadDataFromFile(path));
+    }
+
+    /**
+     * SplittableRandom is not thread safe, so splitting it is guarded.
+     */
+    private synchronized SplittableRandom SplitSeeds()
+    {
+        return seeds.split();
+    }
+
+    public int Size()
+    {
+        synchronized (sessions)
+        {
+            return sessions.size();
+        }
+    }
+
+    /**
+     * Saves and removes every session that has been idle for longer than the idle limit. Sessions are in order of
+     * use, so the sweep stops at the first one that is not idle.
+     */
+    void EvictIdleSessions()
+    {
+        long now = System.nanoTime();
+        List<GameSession> idle = new ArrayList<>();
+        synchronized (sessions)
+        {
+            Iterator<GameSession> eldest = sessions.values().iterator();
+            while (eldest.hasNext())
+            {
+                GameSession session = eldest.next();
+                if (now - session.lastUsed <= idleNanos)
+                {
+                    break;
+                }
+                eldest.remove();
+                saving.put(session.sessionId, session);
+                idle.add(session);
+            }
+        }
+        for (GameSession session : idle)
+        {
+            Evict(session);
+        }
+    }
+
+    /**
+     * Saves a session already moved from sessions to saving, then forgets it. A session that cannot be saved is
+     * dropped rather than kept, so a full or read-only session directory can never fill the store.
+     */
+    private void Evict(GameSession session)
+    {
+        synchronized (session)
+        {
+            synchronized (sessions)
+            {
+                //The session was asked for again while it waited to be saved, and is back in use.
+                if (saving.get(session.sessionId) != session)
+                {
+                    return;
+                }
+            }
+            try
+            {
+                Save(session);
+            }
+            catch(IOException ex)
+            {
+                System.out.println("Session " + session.sessionId + " could not be saved and was dropped: "
+                        + ex.getMessage());
+            }
+            session.evicted = true;
+            synchronized (sessions)
+            {
+                saving.remove(session.sessionId, session);
+            }
+        }
+    }
+
+    /**
+     * Saves evicted sessions on the calling thread until no more than MAX_UNSAVED are left waiting for the sweeper.
+     * The caller must not hold the lock of any session, as it may be the one saved.
+     */
+    private void SaveBacklog()
+    {
+        while (true)
+        {
+            GameSession unsaved;
+            synchronized (sessions)
+            {
+                if (saving.size() <= MAX_UNSAVED)
+                {
+                    return;
+                }
+                unsaved = saving.values().iterator().next();
+            }
+            Evict(unsaved);
+        }
+    }
+
+    /**
+     * Puts a session that was evicted but not yet saved back in use.
+     *
+     * @return The session, or null if it was saved in the meantime and must be loaded from disk.
+     */
+    private GameSession Revive(GameSession session)
+    {
+        synchronized (session)
+        {
+            if (session.evicted)
+            {
+                return null;
+            }
+            return Admit(session);
+        }
+    }
+
+    private Path SessionPath(long sessionId)
+    {
+        return sessionDirectory.resolve("session-" + sessionId + ".dat");
+    }
+
+    private FileManager SessionFile(long sessionId)
+    {
+        FileManager file = new FileManager();
+        file.saveFile = SessionPath(sessionId).toString();
+        return file;
+    }
+
+    public void Close()
+    {
+        sweeper.shutdown();
+    }
+}
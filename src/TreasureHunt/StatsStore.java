@@ -0,0 +1,372 @@
+package TreasureHunt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Local record of every finished game. Each game is appended to the stats file as a fixed size record and added to
+ * in-memory indexes kept for each board size: the fewest guess games, a rolling average of recent games and a count of
+ * games by number of guesses held in a Fenwick tree, from which any percentile is found in a few array reads. Queries
+ * therefore take microseconds however many games have been recorded.
+ *
+ * The file is read on a background thread when the store is opened, so opening the game window does not wait for it.
+ * Games can be recorded while it is loading, and queries made before it has finished wait for it.
+ */
+public class StatsStore
+{
+    //Marks the start of the stats file, the characters "THST".
+    static final int MAGIC = 0x54485354;
+    static final short VERSION = 1;
+    static final int FILE_HEADER_SIZE = 8;
+    //Width, height, guesses, reserved, finish time and seed.
+    static final int RECORD_SIZE = 4 + 4 + 4 + 4 + 8 + 8;
+    //Number of fewest guess games kept for each board size.
+    static final int TOP_COUNT = 10;
+    //Number of recent games the rolling average covers.
+    static final int ROLLING_COUNT = 100;
+
+    /**
+     * A finished game as held in the fewest guess lists.
+     */
+    public static class FinishedGame
+    {
+        public int guesses;
+        public long finishedAt;
+        public long seed;
+
+        FinishedGame(int guesses, long finishedAt, long seed)
+        {
+            this.guesses = guesses;
+            this.finishedAt = finishedAt;
+            this.seed = seed;
+        }
+
+        @Override
+        public String toString()
+        {
+            return guesses + " guesses (game " + seed + ")";
+        }
+    }
+
+    /**
+     * Indexes of the games finished on one board size.
+     */
+    public static class BoardStats
+    {
+        long games = 0;
+        long totalGuesses = 0;
+        //Fewest guess games, best first.
+        FinishedGame[] top = new FinishedGame[TOP_COUNT];
+        int topCount = 0;
+        //Guesses of the most recent games in a ring, with their sum.
+        int[] recent = new int[ROLLING_COUNT];
+        int recentCount = 0;
+        int recentNext = 0;
+        long recentSum = 0;
+        //Fenwick tree of game counts by number of guesses, 1 based and sized to a power of two.
+        long[] guessCounts = new long[128];
+
+        void Add(int guesses, long finishedAt, long seed)
+        {
+            games++;
+            totalGuesses += guesses;
+
+            //Insert into the fewest guess list if it beats the worst entry, keeping earlier games ahead on ties.
+            if (topCount < TOP_COUNT || guesses < top[topCount - 1].guesses)
+            {
+                int position = Math.min(topCount, TOP_COUNT - 1);
+                while (position > 0 && top[position - 1].guesses > guesses)
+                {
+                    top[position] = top[position - 1];
+                    position--;
+                }
+                top[position] = new FinishedGame(guesses, finishedAt, seed);
+                topCount = Math.min(topCount + 1, TOP_COUNT);
+            }
+
+            if (recentCount == ROLLING_COUNT)
+            {
+                recentSum -= recent[recentNext];
+            }
+            else
+            {
+                recentCount++;
+            }
+            recent[recentNext] = guesses;
+            recentSum += guesses;
+            recentNext = (recentNext + 1) % ROLLING_COUNT;
+
+            //The tree is 1 based, every game takes at least one guess.
+            int slot = Math.max(1, guesses);
+            while (slot >= guessCounts.length)
+            {
+                GrowCounts();
+            }
+            for (int i = slot; i < guessCounts.length; i += i & -i)
+            {
+                guessCounts[i]++;
+            }
+        }
+
+        /**
+         * Doubles the Fenwick tree. In a power of two sized tree every existing node keeps its value, and the new top
+         * node covers the whole of the old tree.
+         */
+        private void GrowCounts()
+        {
+            int oldLength = guessCounts.length;
+            long total = 0;
+            for (int i = oldLength - 1; i > 0; i -= i & -i)
+            {
+                total += guessCounts[i];
+            }
+            guessCounts = Arrays.copyOf(guessCounts, oldLength * 2);
+            guessCounts[oldLength] = total;
+        }
+
+        /**
+         * @return An independent copy of these statistics. The finished games are shared, as they never change.
+         */
+        BoardStats Copy()
+        {
+            BoardStats copy = new BoardStats();
+            copy.games = games;
+            copy.totalGuesses = totalGuesses;
+            copy.top = top.clone();
+            copy.topCount = topCount;
+            copy.recent = recent.clone();
+            copy.recentCount = recentCount;
+            copy.recentNext = recentNext;
+            copy.recentSum = recentSum;
+            copy.guessCounts = guessCounts.clone();
+            return copy;
+        }
+
+        public long getGames() {
+            return games;
+        }
+
+        public double AverageGuesses()
+        {
+            return games == 0 ? 0 : (double) totalGuesses / games;
+        }
+
+        public double RollingAverageGuesses()
+        {
+            return recentCount == 0 ? 0 : (double) recentSum / recentCount;
+        }
+
+        /**
+         * @return The fewest guess games on this board size, best first.
+         */
+        public FinishedGame[] Top()
+        {
+            return Arrays.copyOf(top, topCount);
+        }
+
+        /**
+         * Finds the smallest number of guesses that at least the given fraction of games were finished within, by
+         * walking down the Fenwick tree.
+         *
+         * @param fraction The percentile as a fraction, such as 0.5 for the median.
+         * @return The number of guesses, or 0 if no games have been recorded.
+         */
+        public int Percentile(double fraction)
+        {
+            if (games == 0)
+            {
+                return 0;
+            }
+            long wanted = Math.max(1, (long) Math.ceil(fraction * games));
+            int position = 0;
+            for (int step = Integer.highestOneBit(guessCounts.length - 1); step > 0; step >>= 1)
+            {
+                int next = position + step;
+                if (next < guessCounts.length && guessCounts[next] < wanted)
+                {
+                    position = next;
+                    wanted -= guessCounts[next];
+                }
+            }
+            return position + 1;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "games=" + games + " average=" + String.format("%.2f", AverageGuesses())
+                    + " recent=" + String.format("%.2f", RollingAverageGuesses())
+                    + " p50=" + Percentile(0.5) + " p90=" + Percentile(0.9) + " p99=" + Percentile(0.99)
+                    + " best=" + Arrays.toString(Top());
+        }
+    }
+
+    Path path;
+    FileChannel channel;
+    Map<Long, BoardStats> boards = new HashMap<>();
+    //Set once the existing records have been read. Until then new records are only written to the file.
+    boolean loaded = false;
+    IOException loadFailure;
+
+    /**
+     * Opens the stats file, creating it if needed, and starts reading it on a background thread.
+     *
+     * @param path The stats file.
+     */
+    public StatsStore(Path path) throws IOException
+    {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (channel.size() < FILE_HEADER_SIZE)
+        {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            header.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD_SIZE).flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        //Drop a record torn by a crash so new records line up.
+        long records = (channel.size() - FILE_HEADER_SIZE) / RECORD_SIZE;
+        channel.truncate(FILE_HEADER_SIZE + records * RECORD_SIZE);
+
+        Thread loader = new Thread(this::Load, "StatsStore loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Reads the existing records in large blocks without holding the lock, then takes the lock to read any records
+     * appended in the meantime before marking the store loaded.
+     */
+    private void Load()
+    {
+        try
+        {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            channel.read(header, 0);
+            if (header.getInt(0) != MAGIC || header.getShort(4) != VERSION)
+            {
+                throw new IOException("Unsupported stats file: " + path);
+            }
+            long position = ReadRecords(FILE_HEADER_SIZE, channel.size());
+            synchronized (this)
+            {
+                ReadRecords(position, channel.size());
+                loaded = true;
+                notifyAll();
+            }
+        }
+        catch(IOException ex)
+        {
+            synchronized (this)
+            {
+                loadFailure = ex;
+                notifyAll();
+            }
+        }
+    }
+
+    private long ReadRecords(long position, long end) throws IOException
+    {
+        ByteBuffer block = ByteBuffer.allocate(RECORD_SIZE * 4096);
+        while (position < end)
+        {
+            block.clear();
+            block.limit((int) Math.min(block.capacity(), end - position));
+            int read = channel.read(block, position);
+            if (read <= 0)
+            {
+                break;
+            }
+            block.flip();
+            while (block.remaining() >= RECORD_SIZE)
+            {
+                Index(block);
+                position += RECORD_SIZE;
+            }
+        }
+        return position;
+    }
+
+    private synchronized void Index(ByteBuffer record)
+    {
+        int width = record.getInt();
+        int height = record.getInt();
+        int guesses = record.getInt();
+        record.getInt();
+        long finishedAt = record.getLong();
+        long seed = record.getLong();
+        boards.computeIfAbsent(BoardState.Key(width, height), key -> new BoardStats())
+                .Add(guesses, finishedAt, seed);
+    }
+
+    /**
+     * Appends a finished game to the stats file and, once the store has loaded, to the indexes.
+     *
+     * @param boardWidth The number of cells along the X-axis of the board.
+     * @param boardHeight The number of cells along the Y-axis of the board.
+     * @param guesses The number of guesses the game took, including the one that found the treasure.
+     * @param seed The seed of the game.
+     */
+    public synchronized void Record(int boardWidth, int boardHeight, int guesses, long seed) throws IOException
+    {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putInt(boardWidth).putInt(boardHeight).putInt(guesses).putInt(0)
+                .putLong(System.currentTimeMillis()).putLong(seed).flip();
+        long position = channel.size();
+        while (record.hasRemaining())
+        {
+            position += channel.write(record, position);
+        }
+        channel.force(false);
+        if (loaded)
+        {
+            record.flip();
+            Index(record);
+        }
+    }
+
+    /**
+     * @return A snapshot of the statistics for a board size, or null if no game has been finished on it. The snapshot
+     * can be read on any thread while games go on being recorded. Waits for the store to finish loading.
+     */
+    public synchronized BoardStats Stats(int boardWidth, int boardHeight) throws IOException, InterruptedException
+    {
+        AwaitLoaded();
+        BoardStats stats = boards.get(BoardState.Key(boardWidth, boardHeight));
+        return stats == null ? null : stats.Copy();
+    }
+
+    public synchronized boolean IsLoaded()
+    {
+        return loaded;
+    }
+
+    private void AwaitLoaded() throws IOException, InterruptedException
+    {
+        while (!loaded)
+        {
+            if (loadFailure != null)
+            {
+                throw loadFailure;
+            }
+            wait();
+        }
+    }
+
+    /**
+     * Forces recorded games to disk and closes the file.
+     */
+    public synchronized void Close() throws IOException
+    {
+        channel.force(false);
+        channel.close();
+    }
+}
@@ -0,0 +1,292 @@
+package TreasureHunt;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps rendered save thumbnails as PNG files in a directory on disk, named by a hash of the save's contents. A save
+ * that changes hashes differently, so its old thumbnail is simply never asked for again and a fresh one is rendered,
+ * and no thumbnail can ever show a stale board. The directory is bounded in size: the least recently used thumbnails
+ * are deleted once it grows past its budget, which can be set in megabytes with the
+ * treasurehunt.thumbnails.budgetMB system property.
+ *
+ * Thumbnails are rendered on a pool with a thread for each processor, so a large save directory is worked through in
+ * parallel. The hash of each save is remembered alongside its size and modification time, so a save that has not
+ * changed is not read again just to be hashed.
+ */
+public class ThumbnailCache
+{
+    static final String THUMBNAIL_EXTENSION = ".png";
+    static final long DEFAULT_BUDGET_MB = 8;
+    //Hex digits of the SHA-256 content hash kept in each thumbnail's name.
+    static final int HASH_LENGTH = 32;
+
+    Path directory;
+    long budgetBytes;
+    long storedBytes = 0;
+    //Size of every thumbnail file by name, least recently used first.
+    LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    //Content hash of each save seen so far, reused while its size and modification time are unchanged.
+    Map<Path, HashedSave> hashes = new HashMap<>();
+
+    ExecutorService renderers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), task -> {
+        Thread thread = new Thread(task, "TreasureHunt thumbnail renderer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The content hash of a save as it was when last hashed.
+     */
+    static class HashedSave
+    {
+        long size;
+        FileTime modified;
+        String hash;
+    }
+
+    public ThumbnailCache(Path directory) throws IOException
+    {
+        this(directory, Long.getLong("treasurehunt.thumbnails.budgetMB", DEFAULT_BUDGET_MB) * 1024 * 1024);
+    }
+
+    /**
+     * Opens the cache in the given directory, creating it if needed, and picks up the thumbnails already there
+     * oldest first.
+     *
+     * @param directory The directory the thumbnails are kept in.
+     * @param budgetBytes The most bytes of thumbnails to keep.
+     */
+    public ThumbnailCache(Path directory, long budgetBytes) throws IOException
+    {
+        this.directory = directory;
+        this.budgetBytes = budgetBytes;
+        Files.createDirectories(directory);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + THUMBNAIL_EXTENSION))
+        {
+            stream.forEach(files::add);
+        }
+        files.sort((a, b) -> LastModified(a).compareTo(LastModified(b)));
+        for (Path file : files)
+        {
+            long size = Files.size(file);
+            entries.put(file.getFileName().toString(), size);
+            storedBytes += size;
+        }
+        Evict();
+    }
+
+    private static FileTime LastModified(Path file)
+    {
+        try
+        {
+            return Files.getLastModifiedTime(file);
+        }
+        catch(IOException ex)
+        {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /**
+     * Fetches the thumbnail of a save on the render pool, rendering and storing it if the save has not been drawn
+     * at this size before.
+     *
+     * @param save The save file.
+     * @param size The length in pixels of the longer side of the thumbnail.
+     * @return A future that completes with the thumbnail.
+     */
+    public CompletableFuture<BufferedImage> ThumbnailAsync(Path save, int size)
+    {
+        return CompletableFuture.supplyAsync(() -> {
+            try
+            {
+                return Thumbnail(save, size);
+            }
+            catch(Exception ex)
+            {
+                throw new CompletionException(ex);
+            }
+        }, renderers);
+    }
+
+    /**
+     * Fetches the thumbnail of a save on the calling thread, rendering and storing it if needed.
+     *
+     * @param save The save file.
+     * @param size The length in pixels of the longer side of the thumbnail.
+     * @return The thumbnail.
+     */
+    public BufferedImage Thumbnail(Path save, int size) throws IOException
+    {
+        String name = ContentHash(save) + "-" + size + THUMBNAIL_EXTENSION;
+        boolean stored;
+        synchronized (this)
+        {
+            //Looking the thumbnail up also marks it as the most recently used.
+            stored = entries.get(name) != null;
+        }
+        if (stored)
+        {
+            BufferedImage image = ReadThumbnail(directory.resolve(name));
+            if (image != null)
+            {
+                return image;
+            }
+            //Evicted by another thread or damaged since, so it is forgotten and drawn again.
+            synchronized (this)
+            {
+                Long bytes = entries.remove(name);
+                storedBytes -= bytes == null ? 0 : bytes;
+            }
+        }
+
+        GameData gameData = new FileManager().ReadDataFromFile(save, FileProgress.NONE);
+        BufferedImage image = ThumbnailRenderer.Render(gameData, size);
+        Store(name, image);
+        return image;
+    }
+
+    /**
+     * Reads a stored thumbnail and marks it as recently used, or returns null if it has gone or cannot be read.
+     */
+    private BufferedImage ReadThumbnail(Path file)
+    {
+        try
+        {
+            BufferedImage image = ImageIO.read(file.toFile());
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return image;
+        }
+        catch(IOException ex)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Writes a thumbnail through a temporary file, so a half written image is never picked up, and evicts the least
+     * recently used thumbnails until the directory fits its budget again.
+     */
+    private void Store(String name, BufferedImage image) throws IOException
+    {
+        Path file = directory.resolve(name);
+        Path temp = Files.createTempFile(directory, name, ".tmp");
+        try
+        {
+            ImageIO.write(image, "png", temp.toFile());
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+        long size = Files.size(file);
+        synchronized (this)
+        {
+            Long previous = entries.put(name, size);
+            storedBytes += size - (previous == null ? 0 : previous);
+            Evict();
+        }
+    }
+
+    private void Evict()
+    {
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (storedBytes > budgetBytes && eldest.hasNext())
+        {
+            Map.Entry<String, Long> entry = eldest.next();
+            try
+            {
+                Files.deleteIfExists(directory.resolve(entry.getKey()));
+            }
+            catch(IOException ex)
+            {
+                System.out.println(ex.getMessage());
+            }
+            storedBytes -= entry.getValue();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @return The SHA-256 hash of the save's contents as hex, read again only if the file's size or modification
+     * time have changed since it was last hashed.
+     */
+    String ContentHash(Path save) throws IOException
+    {
+        Path key = save.toAbsolutePath();
+        long size = Files.size(save);
+        FileTime modified = Files.getLastModifiedTime(save);
+        synchronized (this)
+        {
+            HashedSave hashed = hashes.get(key);
+            if (hashed != null && hashed.size == size && hashed.modified.equals(modified))
+            {
+                return hashed.hash;
+            }
+        }
+
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch(NoSuchAlgorithmException ex)
+        {
+            throw new IOException(ex);
+        }
+        try (InputStream in = new DigestInputStream(Files.newInputStream(save), digest))
+        {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        HashedSave hashed = new HashedSave();
+        hashed.size = size;
+        hashed.modified = modified;
+        hashed.hash = HexFormat.of().formatHex(digest.digest()).substring(0, HASH_LENGTH);
+        synchronized (this)
+        {
+            hashes.put(key, hashed);
+        }
+        return hashed.hash;
+    }
+
+    public synchronized long getStoredBytes() {
+        return storedBytes;
+    }
+
+    public synchronized int getStoredCount() {
+        return entries.size();
+    }
+
+    /**
+     * Stops the render pool. Thumbnails still being rendered are abandoned.
+     */
+    public void Close()
+    {
+        renderers.shutdownNow();
+    }
+}
@@ -0,0 +1,91 @@
+package TreasureHunt;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Draws a saved board as a small picture for the save browser. The pixels are written straight into the image's
+ * buffer rather than through a Graphics, so rendering needs no display and works with java.awt.headless set. Only the
+ * touched cells are visited, so a huge sparse board costs no more to draw than a small one. A board with more than two
+ * axes is drawn with every slice laid over one another.
+ */
+public class ThumbnailRenderer
+{
+    static final int BORDER = 0xFF808080;
+
+    /**
+     * Renders a board so that its longer side is the given number of pixels. When several cells fall on one pixel the
+     * most telling state is shown: a found treasure, then a hot guess, then a cold one.
+     *
+     * @param gameData The saved game to draw.
+     * @param size The length in pixels of the longer side of the image.
+     * @return The rendered image.
+     */
+    public static BufferedImage Render(GameData gameData, int size)
+    {
+        int boardWidth = gameData.boardWidth;
+        int boardHeight = gameData.boardHeight;
+        double scale = (double) size / Math.max(boardWidth, boardHeight);
+        int width = Math.max(1, (int) Math.round(boardWidth * scale));
+        int height = Math.max(1, (int) Math.round(boardHeight * scale));
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        Arrays.fill(pixels, BoardPanel.ColourForState(CellState.UNTOUCHED).getRGB());
+        byte[] shown = new byte[pixels.length];
+
+        BoardState board = gameData.board;
+        BoardShape shape = board.getShape();
+        for (long key : board.TouchedCells())
+        {
+            int x = shape.XOf(key);
+            int y = shape.YOf(key);
+            CellState state = CellState.FromByte(board.GetStateAt(key));
+            byte priority = Priority(state);
+            int colour = BoardPanel.ColourForState(state).getRGB();
+            //Each cell covers at least one pixel, and a block of them on boards smaller than the image.
+            int left = (int) ((long) x * width / boardWidth);
+            int right = Math.max(left + 1, (int) ((long) (x + 1) * width / boardWidth));
+            int top = (int) ((long) y * height / boardHeight);
+            int bottom = Math.max(top + 1, (int) ((long) (y + 1) * height / boardHeight));
+            for (int py = top; py < bottom; py++)
+            {
+                for (int px = left; px < right; px++)
+                {
+                    int pixel = py * width + px;
+                    if (priority > shown[pixel])
+                    {
+                        shown[pixel] = priority;
+                        pixels[pixel] = colour;
+                    }
+                }
+            }
+        }
+        DrawBorder(pixels, width, height);
+        return image;
+    }
+
+    private static byte Priority(CellState state)
+    {
+        if (state == CellState.TREASURE)
+        {
+            return 3;
+        }
+        return (byte) (state == CellState.HOT ? 2 : state == CellState.COLD ? 1 : 0);
+    }
+
+    private static void DrawBorder(int[] pixels, int width, int height)
+    {
+        for (int x = 0; x < width; x++)
+        {
+            pixels[x] = BORDER;
+            pixels[(height - 1) * width + x] = BORDER;
+        }
+        for (int y = 0; y < height; y++)
+        {
+            pixels[y * width] = BORDER;
+            pixels[y * width + width - 1] = BORDER;
+        }
+    }
+}
@@ -0,0 +1,436 @@
+package TreasureHunt;
+
+import java.util.Arrays;
+
+/**
+ * Holds every treasure hidden on a board and answers which treasure still to be found is nearest to a cell, without
+ * looking at every treasure. The board is divided into square buckets sized so each holds about two treasures, and a
+ * nearest query searches rings of buckets outwards from the cell, stopping once no bucket further out could hold
+ * anything closer than the best treasure seen so far.
+ *
+ * The treasure ids in each bucket are kept in one shared array, bucket after bucket, with the treasures still hidden
+ * at the front of each bucket's range. Finding a treasure swaps it behind them, so removing and restoring treasures,
+ * as undo does, takes constant time and never allocates.
+ *
+ * On a board with more than two axes the buckets still divide up X and Y only, and each treasure in a bucket is
+ * measured along every axis. A cell is never nearer along all the axes than it is along X and Y alone, so the rings
+ * can stop at the same point.
+ */
+public class TreasureIndex
+{
+    //Treasures aimed for in each bucket.
+    static final int TREASURES_PER_BUCKET = 2;
+
+    BoardShape shape;
+    int boardWidth;
+    int boardHeight;
+    int[] xs;
+    int[] ys;
+    //The packed cell of each treasure, see BoardShape.
+    long[] cells;
+    boolean[] found;
+    int remaining;
+
+    //Cells along each side of a bucket.
+    int bucketSize;
+    int bucketColumns;
+    int bucketRows;
+    //The ids of bucket b are held in entries from bucketStart[b] to bucketStart[b + 1], the first bucketLive[b] of
+    //which are still hidden.
+    int[] bucketStart;
+    int[] bucketLive;
+    int[] entries;
+    //Position of each treasure's id in entries.
+    int[] slots;
+
+    /**
+     * Indexes the given treasures, none of which have been found yet. No two treasures may share a cell.
+     *
+     * @param boardWidth The number of cells along the X-axis.
+     * @param boardHeight The number of cells along the Y-axis.
+     * @param xs The X coordinate of each treasure.
+     * @param ys The Y coordinate of each treasure.
+     */
+    public TreasureIndex(int boardWidth, int boardHeight, int[] xs, int[] ys)
+    {
+        this(BoardShape.Plane(boardWidth, boardHeight), PlaneCells(boardWidth, boardHeight, xs, ys));
+    }
+
+    private static long[] PlaneCells(int boardWidth, int boardHeight, int[] xs, int[] ys)
+    {
+        if (xs.length != ys.length)
+        {
+            throw new IllegalArgumentException("The treasure coordinates differ in length: " + xs.length + " X and "
+                    + ys.length + " Y");
+        }
+        long[] cells = new long[xs.length];
+        for (int id = 0; id < xs.length; id++)
+        {
+            if (xs[id] < 0 || xs[id] >= boardWidth || ys[id] < 0 || ys[id] >= boardHeight)
+            {
+                throw new IllegalArgumentException("Treasure " + xs[id] + "," + ys[id] + " is off the board");
+            }
+            cells[id] = BoardState.Key(xs[id], ys[id]);
+        }
+        return cells;
+    }
+
+    /**
+     * Indexes the given treasures on a board of any number of axes, none of which have been found yet. No two
+     * treasures may share a cell.
+     *
+     * @param shape The size of the board along each axis.
+     * @param cells The packed cell of each treasure.
+     */
+    public TreasureIndex(BoardShape shape, long[] cells)
+    {
+        if (cells.length == 0)
+        {
+            throw new IllegalArgumentException("A board needs at least one treasure");
+        }
+        this.shape = shape;
+        this.cells = cells;
+        boardWidth = shape.getWidth();
+        boardHeight = shape.getHeight();
+        int count = cells.length;
+        xs = new int[count];
+        ys = new int[count];
+        found = new boolean[count];
+
+        double cellsPerBucket = (double) boardWidth * boardHeight * TREASURES_PER_BUCKET / count;
+        bucketSize = (int) Math.max(1, Math.min(Math.max(boardWidth, boardHeight),
+                Math.ceil(Math.sqrt(cellsPerBucket))));
+        bucketColumns = (boardWidth + bucketSize - 1) / bucketSize;
+        bucketRows = (boardHeight + bucketSize - 1) / bucketSize;
+        bucketStart = new int[bucketColumns * bucketRows + 1];
+        bucketLive = new int[bucketColumns * bucketRows];
+        entries = new int[count];
+        slots = new int[count];
+        Place(cells);
+    }
+
+    /**
+     * Hides the treasures in the given cells instead, none of them found, reusing every array of the index so a new
+     * game with as many treasures as the last does not allocate. No two treasures may share a cell.
+     *
+     * @param newCells The packed cell of each treasure, copied into the index.
+     */
+    public void Place(long[] newCells)
+    {
+        int count = xs.length;
+        if (newCells.length != count)
+        {
+            throw new IllegalArgumentException("An index of " + count + " treasures cannot hold " + newCells.length);
+        }
+        for (long cell : newCells)
+        {
+            if (!shape.Contains(cell))
+            {
+                throw new IllegalArgumentException("Treasure " + shape.Describe(cell) + " is off the board");
+            }
+        }
+        System.arraycopy(newCells, 0, cells, 0, count);
+        for (int id = 0; id < count; id++)
+        {
+            xs[id] = shape.XOf(cells[id]);
+            ys[id] = shape.YOf(cells[id]);
+            found[id] = false;
+        }
+        remaining = count;
+
+        //Counting sort of the ids by bucket, with bucketLive counting each bucket's ids a second time as they land.
+        Arrays.fill(bucketLive, 0);
+        for (int id = 0; id < count; id++)
+        {
+            bucketLive[BucketOf(id)]++;
+        }
+        for (int b = 0; b < bucketLive.length; b++)
+        {
+            bucketStart[b + 1] = bucketStart[b] + bucketLive[b];
+        }
+        Arrays.fill(bucketLive, 0);
+        for (int id = 0; id < count; id++)
+        {
+            int b = BucketOf(id);
+            int slot = bucketStart[b] + bucketLive[b]++;
+            entries[slot] = id;
+            slots[id] = slot;
+        }
+    }
+
+    /**
+     * @return An index holding a single treasure, as every game had before boards could hold several.
+     */
+    public static TreasureIndex Single(int boardWidth, int boardHeight, int x, int y)
+    {
+        return new TreasureIndex(boardWidth, boardHeight, new int[] {x}, new int[] {y});
+    }
+
+    /**
+     * @return The treasures of a saved game. A game without an index has its single treasure made from its treasure
+     * position, found if its cell on the board shows the treasure.
+     */
+    public static TreasureIndex Of(GameData gameData)
+    {
+        if (gameData.treasures != null)
+        {
+            return gameData.treasures;
+        }
+        TreasureIndex single = Single(gameData.boardWidth, gameData.boardHeight, gameData.treasurePosition.width,
+                gameData.treasurePosition.height);
+        if (gameData.board != null)
+        {
+            single.MarkFoundFromBoard(gameData.board);
+        }
+        return single;
+    }
+
+    private int BucketOf(int id)
+    {
+        return (xs[id] / bucketSize) * bucketRows + ys[id] / bucketSize;
+    }
+
+    /**
+     * @return The id of the hidden treasure in the given cell of a flat board, or -1 if there is none.
+     */
+    public int FindAt(int x, int y)
+    {
+        return FindAt(shape.Key(x, y));
+    }
+
+    /**
+     * @return The id of the hidden treasure in the given packed cell, or -1 if there is none.
+     */
+    public int FindAt(long cell)
+    {
+        int b = (shape.XOf(cell) / bucketSize) * bucketRows + shape.YOf(cell) / bucketSize;
+        int end = bucketStart[b] + bucketLive[b];
+        for (int slot = bucketStart[b]; slot < end; slot++)
+        {
+            int id = entries[slot];
+            if (cells[id] == cell)
+            {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Marks a treasure as found, leaving it out of later nearest queries.
+     *
+     * @return false if the treasure had already been found.
+     */
+    public boolean Remove(int id)
+    {
+        if (found[id])
+        {
+            return false;
+        }
+        int b = BucketOf(id);
+        Swap(slots[id], bucketStart[b] + bucketLive[b] - 1);
+        bucketLive[b]--;
+        found[id] = true;
+        remaining--;
+        return true;
+    }
+
+    /**
+     * Hides a found treasure again, such as when the guess that found it is undone.
+     */
+    public void Restore(int id)
+    {
+        if (!found[id])
+        {
+            return;
+        }
+        int b = BucketOf(id);
+        Swap(slots[id], bucketStart[b] + bucketLive[b]);
+        bucketLive[b]++;
+        found[id] = false;
+        remaining++;
+    }
+
+    private void Swap(int first, int second)
+    {
+        int a = entries[first];
+        int b = entries[second];
+        entries[first] = b;
+        entries[second] = a;
+        slots[b] = first;
+        slots[a] = second;
+    }
+
+    /**
+     * Brings which treasures have been found into line with a board, where a found treasure's cell is in the
+     * TREASURE state. Used after the board has been moved to another point of its history.
+     */
+    public void MarkFoundFromBoard(BoardState board)
+    {
+        for (int id = 0; id < xs.length; id++)
+        {
+            if (board.GetStateAt(cells[id]) == CellState.TREASURE.ordinal())
+            {
+                Remove(id);
+            }
+            else
+            {
+                Restore(id);
+            }
+        }
+    }
+
+    /**
+     * Finds the measure of the distance from a cell of a flat board to the nearest treasure still hidden.
+     *
+     * @param x The X coordinate of the cell.
+     * @param y The Y coordinate of the cell.
+     * @param metric The metric the distances are measured with.
+     * @return The measure of the nearest hidden treasure, or Long.MAX_VALUE if every treasure has been found.
+     */
+    public long NearestMeasure(int x, int y, DistanceMetric metric)
+    {
+        return NearestMeasure(shape.Key(x, y), metric);
+    }
+
+    /**
+     * Finds the measure of the distance from a packed cell to the nearest treasure still hidden, along every axis.
+     *
+     * @param cell The packed cell.
+     * @param metric The metric the distances are measured with.
+     * @return The measure of the nearest hidden treasure, or Long.MAX_VALUE if every treasure has been found.
+     */
+    public long NearestMeasure(long cell, DistanceMetric metric)
+    {
+        int x = shape.XOf(cell);
+        int y = shape.YOf(cell);
+        if (remaining == 0)
+        {
+            return Long.MAX_VALUE;
+        }
+        boolean wraps = metric == DistanceMetric.TOROIDAL;
+        int bucketX = x / bucketSize;
+        int bucketY = y / bucketSize;
+        //Range of bucket offsets along each axis. A board that wraps reaches each bucket by its shorter way round.
+        int lowX = wraps ? -((bucketColumns - 1) / 2) : -bucketX;
+        int highX = wraps ? bucketColumns / 2 : bucketColumns - 1 - bucketX;
+        int lowY = wraps ? -((bucketRows - 1) / 2) : -bucketY;
+        int highY = wraps ? bucketRows / 2 : bucketRows - 1 - bucketY;
+        int lastRing = Math.max(Math.max(-lowX, highX), Math.max(-lowY, highY));
+
+        long best = Long.MAX_VALUE;
+        for (int ring = 0; ring <= lastRing; ring++)
+        {
+            //Every cell in this ring or beyond is at least this far away along one axis. On a wrapping board the one
+            //narrower bucket at the edge may lie between, so the bound allows one bucket less.
+            long nearest = Math.max(0, (long) (ring - (wraps ? 2 : 1)) * bucketSize + (wraps ? 2 : 1));
+            if (ring > 0 && best <= (metric.SquaresTerms() ? nearest * nearest : nearest))
+            {
+                break;
+            }
+            for (int dx = Math.max(-ring, lowX); dx <= Math.min(ring, highX); dx++)
+            {
+                int column = Math.floorMod(bucketX + dx, bucketColumns);
+                if (dx == ring || dx == -ring)
+                {
+                    for (int dy = Math.max(-ring, lowY); dy <= Math.min(ring, highY); dy++)
+                    {
+                        best = Math.min(best, NearestInBucket(column, bucketY + dy, x, y, cell, metric));
+                    }
+                }
+                else
+                {
+                    if (-ring >= lowY)
+                    {
+                        best = Math.min(best, NearestInBucket(column, bucketY - ring, x, y, cell, metric));
+                    }
+                    if (ring <= highY)
+                    {
+                        best = Math.min(best, NearestInBucket(column, bucketY + ring, x, y, cell, metric));
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private long NearestInBucket(int column, int row, int x, int y, long cell, DistanceMetric metric)
+    {
+        int b = column * bucketRows + Math.floorMod(row, bucketRows);
+        long best = Long.MAX_VALUE;
+        int end = bucketStart[b] + bucketLive[b];
+        boolean flat = shape.IsFlat();
+        for (int slot = bucketStart[b]; slot < end; slot++)
+        {
+            int id = entries[slot];
+            long measure = metric.Measure(x, y, xs[id], ys[id], boardWidth, boardHeight);
+            if (!flat)
+            {
+                measure = metric.Combine(measure, shape.SliceTerm(metric, cell, cells[id]));
+            }
+            best = Math.min(best, measure);
+        }
+        return best;
+    }
+
+    /**
+     * @return An independent copy of the index, including which treasures have been found.
+     */
+    public TreasureIndex Copy()
+    {
+        TreasureIndex copy = new TreasureIndex(shape, cells.clone());
+        for (int id = 0; id < found.length; id++)
+        {
+            if (found[id])
+            {
+                copy.Remove(id);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * @return An estimate of the memory held by the index, in bytes.
+     */
+    public long getAllocatedBytes()
+    {
+        return 64 + xs.length * 25L + bucketStart.length * 8L;
+    }
+
+    //Default Getters.
+    public int getCount() {
+        return xs.length;
+    }
+
+    public int getRemaining() {
+        return remaining;
+    }
+
+    public int getX(int id) {
+        return xs[id];
+    }
+
+    public int getY(int id) {
+        return ys[id];
+    }
+
+    public long getCell(int id) {
+        return cells[id];
+    }
+
+    public BoardShape getShape() {
+        return shape;
+    }
+
+    public boolean IsFound(int id) {
+        return found[id];
+    }
+
+    public int getBoardWidth() {
+        return boardWidth;
+    }
+
+    public int getBoardHeight() {
+        return boardHeight;
+    }
+}